@@ -54,8 +54,12 @@ CREATE TABLE document_vectors (
                                   file_md5 VARCHAR(32) NOT NULL COMMENT '关联的文件MD5值',
                                   chunk_id INT NOT NULL COMMENT '文本分块序号',
                                   text_content TEXT COMMENT '文本内容',
+                                  parent_id INT COMMENT '所属父文本块序号',
+                                  start_offset INT COMMENT '分块在原文中的起始字符偏移',
+                                  end_offset INT COMMENT '分块在原文中的结束字符偏移',
                                   model_version VARCHAR(32) COMMENT '向量模型版本',
                                   user_id VARCHAR(64) NOT NULL COMMENT '上传用户ID',
                                   org_tag VARCHAR(50) COMMENT '文件所属组织标签',
-                                  is_public BOOLEAN NOT NULL DEFAULT FALSE COMMENT '文件是否公开'
+                                  is_public BOOLEAN NOT NULL DEFAULT FALSE COMMENT '文件是否公开',
+                                  INDEX idx_file_chunk (file_md5, chunk_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='文档向量存储表';
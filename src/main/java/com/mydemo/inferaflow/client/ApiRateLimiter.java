@@ -0,0 +1,391 @@
+package com.mydemo.inferaflow.client;
+
+import com.mydemo.inferaflow.config.RateLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 外部模型 API 的客户端限流器，每个 API 端点一个实例
+ * 1. 请求数与 token 两个令牌桶，按配置速率连续补充；
+ * 2. AIMD 并发窗口：调用成功且未超过延迟阈值时窗口加性增长（每个窗口约 +1），收到 429 或延迟突增时乘性收缩；
+ * 3. 两级优先级：交互请求（查询向量、对话）总是先于批量请求（入库向量化）获得许可；
+ *    批量请求最多占用 bulkShare 比例的窗口且至少为交互请求保留一个并发，token 桶同样只允许批量请求用到 bulkShare 比例。
+ * 收到 429 时按 Retry-After（缺省为 throttlePauseMs）暂停发放许可，期间请求在队列中等待而不是继续打到服务端
+ */
+public class ApiRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiRateLimiter.class);
+
+    /**
+     * 请求优先级
+     */
+    public enum Priority {
+        /** 交互请求：查询向量、对话生成 */
+        INTERACTIVE,
+        /** 批量请求：入库向量化 */
+        BULK
+    }
+
+    private final String name;
+    private final RateLimitProperties.Endpoint config;
+    private final ScheduledExecutorService scheduler;
+    private final Counter throttledCounter;
+
+    private final Deque<Waiter> interactiveQueue = new ArrayDeque<>();
+    private final Deque<Waiter> bulkQueue = new ArrayDeque<>();
+
+    // 以下状态均在 synchronized(this) 内读写
+    private double limit;
+    private int inFlight;
+    private double requestBucket;
+    private double tokenBucket;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos;
+    private long lastDecreaseNanos;
+    private boolean retryScheduled;
+
+    public ApiRateLimiter(String name, RateLimitProperties.Endpoint config, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.config = config;
+        this.limit = Math.max(config.getMinConcurrency(), Math.min(config.getInitialConcurrency(), config.getMaxConcurrency()));
+        this.requestBucket = requestCapacity();
+        this.tokenBucket = config.getTokensPerMinute();
+        this.lastDecreaseNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(config.getDecreaseCooldownMs());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limiter-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.throttledCounter = Counter.builder("api.ratelimit.throttled")
+                .description("服务端返回 429 的次数")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+        Gauge.builder("api.ratelimit.concurrency.limit", this, ApiRateLimiter::currentLimit)
+                .tag("endpoint", name)
+                .register(meterRegistry);
+        Gauge.builder("api.ratelimit.inflight", this, ApiRateLimiter::currentInFlight)
+                .tag("endpoint", name)
+                .register(meterRegistry);
+        Gauge.builder("api.ratelimit.queue", this, limiter -> limiter.queued(Priority.INTERACTIVE))
+                .tag("endpoint", name)
+                .tag("priority", "interactive")
+                .register(meterRegistry);
+        Gauge.builder("api.ratelimit.queue", this, limiter -> limiter.queued(Priority.BULK))
+                .tag("endpoint", name)
+                .tag("priority", "bulk")
+                .register(meterRegistry);
+        logger.info("API 限流器初始化 - 端点: {}, 启用: {}, 每秒请求: {}, 每分钟 token: {}, 并发窗口: {}",
+                name, config.isEnabled(), config.getRequestsPerSecond(), config.getTokensPerMinute(), limit);
+    }
+
+    /**
+     * 在获得许可后执行单次调用，调用结束（成功、失败或取消）时归还许可
+     *
+     * @param priority 请求优先级
+     * @param tokens   估算的 token 数
+     * @param call     实际调用，每次订阅都会重新排队获取许可，因此可以在外层重试
+     */
+    public <T> Mono<T> execute(Priority priority, long tokens, Supplier<Mono<T>> call) {
+        if (!config.isEnabled()) {
+            return Mono.defer(call);
+        }
+        return acquire(priority, tokens).flatMap(permit -> Mono.defer(call)
+                .doOnNext(value -> permit.responded())
+                .doOnError(permit::fail)
+                .doFinally(signal -> release(permit)));
+    }
+
+    /**
+     * 在获得许可后执行流式调用，许可保持到流结束；延迟按首个响应计算
+     */
+    public <T> Flux<T> executeMany(Priority priority, long tokens, Supplier<Flux<T>> call) {
+        if (!config.isEnabled()) {
+            return Flux.defer(call);
+        }
+        return acquire(priority, tokens).flatMapMany(permit -> Flux.defer(call)
+                .doOnNext(value -> permit.responded())
+                .doOnError(permit::fail)
+                .doFinally(signal -> release(permit)));
+    }
+
+    /**
+     * 停止定时重试线程，由 Spring 在容器关闭时调用
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public synchronized double currentLimit() {
+        return limit;
+    }
+
+    public synchronized int currentInFlight() {
+        return inFlight;
+    }
+
+    private synchronized int queued(Priority priority) {
+        return queue(priority).size();
+    }
+
+    /**
+     * 排队获取许可；交互请求超过 queueTimeoutMs、批量请求超过 bulkQueueTimeoutMs 未获得许可时失败
+     */
+    Mono<Permit> acquire(Priority priority, long tokens) {
+        Mono<Permit> permit = Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, priority, Math.max(0L, tokens));
+            synchronized (this) {
+                queue(priority).addLast(waiter);
+            }
+            sink.onCancel(() -> cancel(waiter));
+            dispatch();
+        });
+        long timeoutMs = priority == Priority.INTERACTIVE ? config.getQueueTimeoutMs() : config.getBulkQueueTimeoutMs();
+        return permit.timeout(Duration.ofMillis(timeoutMs),
+                Mono.error(() -> new RuntimeException(name + " API 限流排队超时（" + priority + "）")));
+    }
+
+    /**
+     * 按优先级发放许可：交互队列非空时批量请求不出队；受令牌桶或暂停限制时定时重试，受并发窗口限制时等待归还
+     */
+    private void dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        long retryNanos = 0;
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            while (true) {
+                boolean interactive = !interactiveQueue.isEmpty();
+                Waiter next = interactive ? interactiveQueue.peekFirst() : bulkQueue.peekFirst();
+                if (next == null) {
+                    break;
+                }
+                int window = interactive ? Math.max(1, (int) limit) : bulkWindow();
+                if (!interactive && window == 0 && inFlight == 0) {
+                    // 没有交互流量时窗口无法靠成功调用恢复，暂停与收缩冷却结束后把窗口恢复到 2 再试探
+                    long recoverNanos = Math.max(pausedUntilNanos,
+                            lastDecreaseNanos + TimeUnit.MILLISECONDS.toNanos(config.getDecreaseCooldownMs())) - now;
+                    if (recoverNanos <= 0) {
+                        limit = Math.min(config.getMaxConcurrency(), 2.0d);
+                        window = bulkWindow();
+                    } else if (!retryScheduled) {
+                        retryScheduled = true;
+                        retryNanos = recoverNanos;
+                    }
+                }
+                if (inFlight >= window) {
+                    break;
+                }
+                long wait = waitNanos(now, next.tokens, next.priority);
+                if (wait > 0) {
+                    if (!retryScheduled) {
+                        retryScheduled = true;
+                        retryNanos = wait;
+                    }
+                    break;
+                }
+                consume(next.tokens);
+                inFlight++;
+                queue(next.priority).pollFirst();
+                next.permit = new Permit();
+                granted.add(next);
+            }
+        }
+        if (retryNanos > 0) {
+            scheduler.schedule(() -> {
+                synchronized (this) {
+                    retryScheduled = false;
+                }
+                dispatch();
+            }, retryNanos, TimeUnit.NANOSECONDS);
+        }
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    private void cancel(Waiter waiter) {
+        Permit granted;
+        synchronized (this) {
+            if (queue(waiter.priority).remove(waiter)) {
+                return;
+            }
+            granted = waiter.permit;
+        }
+        // 许可已发放但调用方已取消
+        if (granted != null) {
+            release(granted);
+        }
+    }
+
+    private void release(Permit permit) {
+        if (!permit.released.compareAndSet(false, true)) {
+            return;
+        }
+        long now = System.nanoTime();
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(
+                (permit.firstResponseNanos > 0 ? permit.firstResponseNanos : now) - permit.startNanos);
+        synchronized (this) {
+            inFlight--;
+            if (permit.throttled) {
+                throttledCounter.increment();
+                long pauseMs = permit.retryAfterMs > 0 ? permit.retryAfterMs : config.getThrottlePauseMs();
+                pausedUntilNanos = Math.max(pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(pauseMs));
+                decrease(now, "429");
+            } else if (permit.timedOut || (!permit.failed && latencyMs > config.getLatencyThresholdMs())) {
+                decrease(now, "延迟 " + latencyMs + "ms");
+            } else if (!permit.failed) {
+                limit = Math.min(config.getMaxConcurrency(), limit + 1.0d / limit);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * 批量请求可用的并发数：不超过 bulkShare 比例，且至少为交互请求保留一个并发，窗口为 1 时批量请求暂停；
+     * 窗口不小于 2 且 bulkShare > 0 时至少为 1，避免比例向下取整为 0 时批量请求在交互流量持续时一直饿死；
+     * 并发上限配置为 1 时无法保留，批量请求只靠队列优先级让位
+     */
+    private int bulkWindow() {
+        if (config.getMaxConcurrency() <= 1) {
+            return 1;
+        }
+        int available = (int) limit - 1;
+        if (available < 1 || config.getBulkShare() <= 0) {
+            return 0;
+        }
+        return Math.min(Math.max(1, (int) Math.floor(limit * config.getBulkShare())), available);
+    }
+
+    private void decrease(long now, String reason) {
+        if (now - lastDecreaseNanos < TimeUnit.MILLISECONDS.toNanos(config.getDecreaseCooldownMs())) {
+            return;
+        }
+        double previous = limit;
+        limit = Math.max(config.getMinConcurrency(), limit * config.getDecreaseFactor());
+        lastDecreaseNanos = now;
+        logger.warn("{} API 触发限流收缩（{}），并发窗口: {} -> {}", name, reason,
+                String.format("%.1f", previous), String.format("%.1f", limit));
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (now - lastRefillNanos) / 1e9d;
+        lastRefillNanos = now;
+        if (config.getRequestsPerSecond() > 0) {
+            requestBucket = Math.min(requestCapacity(), requestBucket + elapsedSeconds * config.getRequestsPerSecond());
+        }
+        if (config.getTokensPerMinute() > 0) {
+            tokenBucket = Math.min(config.getTokensPerMinute(),
+                    tokenBucket + elapsedSeconds * config.getTokensPerMinute() / 60d);
+        }
+    }
+
+    /**
+     * 距离可以发放下一个许可的等待时间（纳秒），0 表示可以立即发放
+     */
+    private long waitNanos(long now, long tokens, Priority priority) {
+        long wait = Math.max(0L, pausedUntilNanos - now);
+        double rps = config.getRequestsPerSecond();
+        if (rps > 0 && requestBucket < 1) {
+            wait = Math.max(wait, (long) ((1 - requestBucket) / rps * 1e9d));
+        }
+        long tpm = config.getTokensPerMinute();
+        if (tpm > 0) {
+            // 单次请求超过桶容量时按容量计，避免永远无法发放
+            // 批量请求不能动用为交互请求保留的 (1 - bulkShare) 部分 token
+            double reserved = priority == Priority.BULK ? tpm * (1 - config.getBulkShare()) : 0d;
+            double need = Math.min(tokens, tpm - reserved);
+            if (tokenBucket - reserved < need) {
+                wait = Math.max(wait, (long) ((need + reserved - tokenBucket) / (tpm / 60d) * 1e9d));
+            }
+        }
+        return wait;
+    }
+
+    private void consume(long tokens) {
+        if (config.getRequestsPerSecond() > 0) {
+            requestBucket -= 1;
+        }
+        if (config.getTokensPerMinute() > 0) {
+            tokenBucket -= Math.min(tokens, config.getTokensPerMinute());
+        }
+    }
+
+    private double requestCapacity() {
+        return Math.max(1d, config.getRequestsPerSecond());
+    }
+
+    private Deque<Waiter> queue(Priority priority) {
+        return priority == Priority.INTERACTIVE ? interactiveQueue : bulkQueue;
+    }
+
+    private static class Waiter {
+        private final MonoSink<Permit> sink;
+        private final Priority priority;
+        private final long tokens;
+        private Permit permit;
+
+        Waiter(MonoSink<Permit> sink, Priority priority, long tokens) {
+            this.sink = sink;
+            this.priority = priority;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * 已发放的许可，记录调用结果供 AIMD 调整窗口
+     */
+    static class Permit {
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long firstResponseNanos;
+        private volatile boolean failed;
+        private volatile boolean throttled;
+        private volatile boolean timedOut;
+        private volatile long retryAfterMs;
+
+        void responded() {
+            if (firstResponseNanos == 0) {
+                firstResponseNanos = System.nanoTime();
+            }
+        }
+
+        void fail(Throwable error) {
+            failed = true;
+            // 调用超时同样视为延迟突增
+            timedOut = error instanceof TimeoutException;
+            if (error instanceof WebClientResponseException response && response.getStatusCode().value() == 429) {
+                throttled = true;
+                retryAfterMs = parseRetryAfter(response.getHeaders().getFirst("Retry-After"));
+            }
+        }
+
+        private static long parseRetryAfter(String value) {
+            if (value == null) {
+                return 0;
+            }
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                // HTTP 日期格式的 Retry-After 使用默认暂停时长
+                return 0;
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.mydemo.inferaflow.client;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
@@ -29,6 +30,7 @@ public class DeepSeekClient {
     private final String apiKey;
     private final String model;
     private final AiProperties aiProperties;
+    private final ApiRateLimiter rateLimiter;
     private static final Logger logger = LoggerFactory.getLogger(DeepSeekClient.class);
     
     public DeepSeekClient(@Value("${deepseek.api.url}") String apiUrl,
@@ -39,7 +41,8 @@ public class DeepSeekClient {
                          @Value("${deepseek.api.proxy.port:7890}") int proxyPort,
                          @Value("${deepseek.api.connect-timeout-ms:30000}") int connectTimeoutMs,
                          @Value("${deepseek.api.response-timeout-ms:120000}") long responseTimeoutMs,
-                         AiProperties aiProperties) {
+                         AiProperties aiProperties,
+                         @Qualifier("deepseekRateLimiter") ApiRateLimiter rateLimiter) {
         HttpClient httpClient = HttpClient.create()
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
                 .responseTimeout(Duration.ofMillis(responseTimeoutMs));
@@ -65,6 +68,7 @@ public class DeepSeekClient {
         this.apiKey = apiKey;
         this.model = model;
         this.aiProperties = aiProperties;
+        this.rateLimiter = rateLimiter;
     }
     
     public void streamResponse(String userMessage, 
@@ -76,13 +80,14 @@ public class DeepSeekClient {
         
         Map<String, Object> request = buildRequest(userMessage, context, history);
         
-        webClient.post()
-                .uri("/chat/completions")
-                .accept(MediaType.TEXT_EVENT_STREAM)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(request)
-                .retrieve()
-                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+        // 对话始终为交互优先级，许可保持到流结束
+        rateLimiter.executeMany(ApiRateLimiter.Priority.INTERACTIVE, estimateTokens(request), () -> webClient.post()
+                        .uri("/chat/completions")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(request)
+                        .retrieve()
+                        .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {}))
                 .map(ServerSentEvent::data)
                 .filter(data -> data != null && !data.isBlank())
                 .subscribe(
@@ -92,6 +97,20 @@ public class DeepSeekClient {
                 );
     }
     
+    /**
+     * 估算请求 token 数：消息字符数加上最大输出 tokens
+     */
+    @SuppressWarnings("unchecked")
+    private long estimateTokens(Map<String, Object> request) {
+        long tokens = 0;
+        for (Map<String, String> message : (List<Map<String, String>>) request.get("messages")) {
+            String content = message.get("content");
+            tokens += content != null ? content.length() : 0;
+        }
+        Object maxTokens = request.get("max_tokens");
+        return tokens + (maxTokens instanceof Integer value ? value : 0);
+    }
+    
     private Map<String, Object> buildRequest(String userMessage, 
                                            String context,
                                            List<Map<String, String>> history) {
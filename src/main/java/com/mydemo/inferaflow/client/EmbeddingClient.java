@@ -1,13 +1,16 @@
 package com.mydemo.inferaflow.client;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydemo.inferaflow.utils.EmbeddingResponseParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import jakarta.annotation.PostConstruct;
@@ -36,19 +39,31 @@ public class EmbeddingClient {
     @Value("${embedding.api.key}")
     private String apiKey;
 
+    @Value("${embedding.api.timeout-seconds:30}")
+    private long timeoutSeconds;
+
+    @Value("${embedding.api.concurrency:4}")
+    private int concurrency;
+
+    @Value("${embedding.api.encoding-format:float}")
+    private String encodingFormat;
+
     private static final Logger logger = LoggerFactory.getLogger(EmbeddingClient.class);
     private final WebClient webClient;
     private final ObjectMapper objectMapper;
+    private final ApiRateLimiter rateLimiter;
 
-    public EmbeddingClient(WebClient embeddingWebClient, ObjectMapper objectMapper) {
+    public EmbeddingClient(WebClient embeddingWebClient, ObjectMapper objectMapper,
+                           @Qualifier("embeddingRateLimiter") ApiRateLimiter rateLimiter) {
         this.webClient = embeddingWebClient;
         this.objectMapper = objectMapper;
+        this.rateLimiter = rateLimiter;
     }
 
     @PostConstruct
     public void init() {
-        logger.info("EmbeddingClient 初始化 - 模型: {}, 批次大小: {}, 维度: {}, API地址: {}",
-                modelId, batchSize, dimension, apiUrl);
+        logger.info("EmbeddingClient 初始化 - 模型: {}, 批次大小: {}, 并发批次: {}, 维度: {}, 编码格式: {}, API地址: {}",
+                modelId, batchSize, concurrency, dimension, encodingFormat, apiUrl);
 
         // 验证API key格式
         if (apiKey == null || apiKey.trim().isEmpty() || apiKey.startsWith("sk-") == false) {
@@ -58,24 +73,23 @@ public class EmbeddingClient {
     }
 
     /**
-     * 调用通义千问 API 生成向量
+     * 调用通义千问 API 生成向量（交互优先级）
      * @param texts 输入文本列表
      * @return 对应的向量列表
      */
     public List<float[]> embed(List<String> texts) {
+        return embed(texts, ApiRateLimiter.Priority.INTERACTIVE);
+    }
+
+    /**
+     * 以指定优先级调用通义千问 API 生成向量，入库向量化使用 BULK，让位于查询向量
+     * @param texts 输入文本列表
+     * @param priority 限流优先级
+     * @return 对应的向量列表
+     */
+    public List<float[]> embed(List<String> texts, ApiRateLimiter.Priority priority) {
         try {
-            logger.info("开始生成向量，文本数量: {}", texts.size());
-
-            List<float[]> all = new ArrayList<>(texts.size());
-            for (int start = 0; start < texts.size(); start += batchSize) {
-                int end = Math.min(start + batchSize, texts.size());
-                List<String> sub = texts.subList(start, end);
-                logger.debug("调用向量 API, 批次: {}-{} (size={})", start, end - 1, sub.size());
-                String response = callApiOnce(sub);
-                all.addAll(parseVectors(response));
-            }
-            logger.info("成功生成向量，总数量: {}", all.size());
-            return all;
+            return embedAsync(texts, priority).block();
         } catch (WebClientResponseException e) {
             // 提供详细的API响应错误信息
             logger.error("API调用失败 - 状态码: {}, 响应: {}, 请求头: {}",
@@ -94,47 +108,106 @@ public class EmbeddingClient {
         }
     }
 
-    private String callApiOnce(List<String> batch) {
+    /**
+     * 非阻塞地生成向量
+     * 输入按 batch-size 切分，最多 concurrency 个批次同时在途；结果按输入顺序拼接，每个批次独立重试与超时，
+     * 整体（含限流排队与重试）另有按批次轮数放大的总超时
+     * @param texts 输入文本列表
+     * @return 与输入顺序一致的向量列表
+     */
+    public Mono<List<float[]>> embedAsync(List<String> texts) {
+        return embedAsync(texts, ApiRateLimiter.Priority.INTERACTIVE);
+    }
+
+    /**
+     * 以指定优先级非阻塞地生成向量，见 {@link #embedAsync(List)}
+     */
+    public Mono<List<float[]>> embedAsync(List<String> texts, ApiRateLimiter.Priority priority) {
+        if (texts.isEmpty()) {
+            return Mono.just(new ArrayList<>());
+        }
+        int batches = (texts.size() + batchSize - 1) / batchSize;
+        int parallelism = Math.max(1, concurrency);
+        // 每轮并发批次允许一次调用加一次排队或重试的时间
+        int rounds = (batches + parallelism - 1) / parallelism;
+        Duration deadline = Duration.ofSeconds(timeoutSeconds).multipliedBy(2L * rounds);
+        logger.info("开始生成向量，文本数量: {}, 批次数: {}", texts.size(), batches);
+        // flatMapSequential 并发订阅各批次，但按批次顺序发出结果，保证向量与输入一一对应
+        return Flux.range(0, batches)
+                .flatMapSequential(index -> {
+                    int start = index * batchSize;
+                    int end = Math.min(start + batchSize, texts.size());
+                    List<String> sub = texts.subList(start, end);
+                    logger.debug("调用向量 API, 批次: {}-{} (size={})", start, end - 1, sub.size());
+                    return callApi(sub, priority).map(this::parseBatch);
+                }, parallelism)
+                .<List<float[]>>collect(() -> new ArrayList<>(texts.size()), List::addAll)
+                .map(all -> {
+                    logger.info("成功生成向量，总数量: {}", all.size());
+                    return all;
+                })
+                // 超时后取消订阅，未发出的批次随之退出限流队列
+                .timeout(deadline, Mono.error(() -> new RuntimeException(
+                        "向量生成超时: " + deadline.getSeconds() + "s, 批次数: " + batches)));
+    }
+
+    private Mono<byte[]> callApi(List<String> batch, ApiRateLimiter.Priority priority) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", modelId);
         requestBody.put("input", batch);
         requestBody.put("dimension", dimension);  // 直接在根级别设置dimension
-        requestBody.put("encoding_format", "float");  // 添加编码格式
+        requestBody.put("encoding_format", encodingFormat);  // float 或 base64（小端序 float32）
 
         logger.debug("发送嵌入请求 - 模型: {}, 维度: {}, 批次大小: {}, 文本预览: {}",
                 modelId, dimension, batch.size(),
                 batch.isEmpty() ? "空" : batch.get(0).substring(0, Math.min(50, batch.get(0).length())) + "...");
 
-        return webClient.post()
-                .uri("/embeddings")
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(String.class)
-                .retryWhen(Retry.fixedDelay(3, Duration.ofSeconds(1))
-                        .filter(e -> e instanceof WebClientResponseException)
+        // 按输入字符数估算 token，用于 token 令牌桶
+        long estimatedTokens = batch.stream().mapToLong(String::length).sum();
+        // 每次尝试（含重试）都重新经过限流器排队，429 后限流器暂停发放许可并收缩并发窗口
+        return rateLimiter.execute(priority, estimatedTokens, () -> webClient.post()
+                        .uri("/embeddings")
+                        .bodyValue(requestBody)
+                        .retrieve()
+                        .bodyToMono(byte[].class)
+                        // 单次调用的耗时上限，不包含限流排队时间
+                        .timeout(Duration.ofSeconds(timeoutSeconds)))
+                .retryWhen(Retry.backoff(3, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(10))
+                        .filter(EmbeddingClient::isRetryable)
+                        // 重试耗尽时抛出最后一次的原始异常，调用方仍能拿到服务端状态码
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure())
                         .doBeforeRetry(signal -> logger.warn("重试API调用 - 尝试: {}, 错误: {}",
-                                signal.totalRetries() + 1, signal.failure().getMessage())))
-                .block(Duration.ofSeconds(30));
+                                signal.totalRetries() + 1, signal.failure().getMessage())));
     }
 
-    private List<float[]> parseVectors(String response) throws Exception {
-        JsonNode jsonNode = objectMapper.readTree(response);
-        JsonNode data = jsonNode.get("data");  // 兼容模式下使用data字段
-        if (data == null || !data.isArray()) {
-            throw new RuntimeException("API 响应格式错误: data 字段不存在或不是数组");
+    /**
+     * 只重试 429 与 5xx，其余 4xx（如参数错误、鉴权失败）重试也不会成功
+     */
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status >= 500;
         }
-        
-        List<float[]> vectors = new ArrayList<>();
-        for (JsonNode item : data) {
-            JsonNode embedding = item.get("embedding");
-            if (embedding != null && embedding.isArray()) {
-                float[] vector = new float[embedding.size()];
-                for (int i = 0; i < embedding.size(); i++) {
-                    vector[i] = (float) embedding.get(i).asDouble();
-                }
-                vectors.add(vector);
-            }
+        return false;
+    }
+
+    private List<float[]> parseBatch(byte[] response) {
+        try {
+            // 流式解析，直接写入 float[]，不构建 JsonNode 树
+            return EmbeddingResponseParser.parse(objectMapper.getFactory(), response, dimension);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("解析向量 API 响应失败: " + e.getMessage(), e);
         }
-        return vectors;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    public int getDimension() {
+        return dimension;
     }
 }
@@ -1,6 +1,8 @@
 package com.mydemo.inferaflow.config;
 
 import co.elastic.clients.transport.endpoints.BooleanResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
@@ -24,11 +26,21 @@ public class EsIndexInitializer implements CommandLineRunner {
     @Autowired
     private ElasticsearchClient esClient;
 
+    @Autowired
+    private SearchProperties searchProperties;
+
     @Value("classpath:es-mappings/knowledge_base.json") // 加载 JSON 文件
     private org.springframework.core.io.Resource mappingResource;
 
+    @Value("classpath:es-mappings/knowledge_files.json")
+    private org.springframework.core.io.Resource fileMappingResource;
+
     @Override
     public void run(String... args) throws Exception {
+        if (searchProperties.getStore().getType() != SearchProperties.StoreType.ELASTICSEARCH) {
+            logger.info("检索存储类型为 {}，跳过 Elasticsearch 索引初始化", searchProperties.getStore().getType());
+            return;
+        }
         try {
             initializeIndex();
         } catch (Exception exception) {
@@ -62,7 +74,36 @@ public class EsIndexInitializer implements CommandLineRunner {
             createIndex();
         } else {
             logger.info("索引 'knowledge_base' 已存在");
+            ensureAclMapping();
+        }
+        ensureFileIndex();
+    }
+
+    /**
+     * 创建文件级质心索引 knowledge_files（两阶段检索与相关文档推荐使用）
+     */
+    private void ensureFileIndex() throws Exception {
+        if (esClient.indices().exists(ExistsRequest.of(e -> e.index("knowledge_files"))).value()) {
+            return;
         }
+        String mappingJson = new String(Files.readAllBytes(fileMappingResource.getFile().toPath()), StandardCharsets.UTF_8);
+        esClient.indices().create(CreateIndexRequest.of(c -> c
+                .index("knowledge_files")
+                .withJson(new StringReader(mappingJson))
+        ));
+        logger.info("索引 'knowledge_files' 已创建");
+    }
+
+    /**
+     * 为已存在的索引补充 acl 字段映射（新增字段映射不需要重建索引）
+     * 存量文档的 acl 值需通过 ElasticsearchService.backfillAcl 回填
+     */
+    private void ensureAclMapping() throws Exception {
+        esClient.indices().putMapping(p -> p
+                .index("knowledge_base")
+                .properties("acl", pr -> pr.keyword(k -> k))
+        );
+        logger.info("索引 'knowledge_base' 已确认 acl 字段映射");
     }
 
     /**
@@ -70,15 +111,80 @@ public class EsIndexInitializer implements CommandLineRunner {
      * @throws Exception
      */
     private void createIndex() throws Exception {
-        // 读取 JSON 文件内容
-        String mappingJson = new String(Files.readAllBytes(mappingResource.getFile().toPath()), StandardCharsets.UTF_8);
+        createIndex("knowledge_base");
+    }
+
+    /**
+     * 按当前配置创建知识库索引，索引迁移时也用于创建新版本索引
+     *
+     * @param indexName 索引名称
+     */
+    public void createIndex(String indexName) throws Exception {
+        String mappingJson = buildMappingJson();
 
         // 创建索引并应用映射
         CreateIndexRequest createIndexRequest = CreateIndexRequest.of(c -> c
-                .index("knowledge_base") // 索引名称
+                .index(indexName) // 索引名称
                 .withJson(new StringReader(mappingJson)) // 使用 JSON 文件定义映射
         );
         esClient.indices().create(createIndexRequest);
-        logger.info("索引 'knowledge_base' 已创建");
+        logger.info("索引 '{}' 已创建，向量索引类型: {}", indexName, searchProperties.getIndex().getVectorIndexType());
+    }
+
+    /**
+     * 读取 JSON 映射文件并应用索引相关配置
+     */
+    private String buildMappingJson() throws Exception {
+        String mappingJson = new String(Files.readAllBytes(mappingResource.getFile().toPath()), StandardCharsets.UTF_8);
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode root = (ObjectNode) objectMapper.readTree(mappingJson);
+        ObjectNode mappings = (ObjectNode) root.get("mappings");
+        if (searchProperties.getIndex().isExcludeVectorSource()) {
+            excludeVectorFromSource(mappings);
+        }
+        applyVectorIndexType(mappings);
+        if (searchProperties.getMatryoshka().isEnabled()) {
+            applyShortVector(mappings);
+        }
+        return objectMapper.writeValueAsString(root);
+    }
+
+    /**
+     * 在映射中加入 _source.excludes: ["vector"]，向量仍然建入 HNSW 索引，仅不再存储在 _source 中
+     */
+    private void excludeVectorFromSource(ObjectNode mappings) {
+        mappings.putObject("_source").putArray("excludes").add("vector");
+        logger.info("索引 'knowledge_base' 将 vector 排除出 _source 存储");
+    }
+
+    /**
+     * 设置 vector 字段的 index_options；量化索引只压缩 HNSW 图，原始 float 向量仍保留在磁盘上，可用于精确重排
+     */
+    private void applyVectorIndexType(ObjectNode mappings) {
+        SearchProperties.VectorIndexType type = searchProperties.getIndex().getVectorIndexType();
+        if (type == SearchProperties.VectorIndexType.HNSW) {
+            return;
+        }
+        ObjectNode vector = (ObjectNode) mappings.get("properties").get("vector");
+        vector.putObject("index_options").put("type", type.name().toLowerCase());
+    }
+
+    /**
+     * 两级检索：新增短前缀向量字段建 HNSW 图，完整向量不再建图，仅以 doc values 保留用于精确重排
+     */
+    private void applyShortVector(ObjectNode mappings) {
+        ObjectNode properties = (ObjectNode) mappings.get("properties");
+        ObjectNode vector = (ObjectNode) properties.get("vector");
+        ObjectNode vectorShort = properties.putObject("vectorShort");
+        vectorShort.put("type", "dense_vector");
+        vectorShort.put("dims", searchProperties.getMatryoshka().getDimension());
+        vectorShort.put("index", true);
+        vectorShort.put("similarity", "cosine");
+        if (vector.has("index_options")) {
+            vectorShort.set("index_options", vector.remove("index_options"));
+        }
+        vector.put("index", false);
+        vector.remove("similarity");
+        logger.info("索引将使用 {} 维前缀向量建图，完整向量仅用于重排", searchProperties.getMatryoshka().getDimension());
     }
 }
\ No newline at end of file
@@ -64,6 +64,9 @@ public class OrgTagAuthorizationFilter extends OncePerRequestFilter {
                 path.matches(".*/documents/uploads.*") ||
                 path.matches(".*/documents/accessible.*") ||
                 path.matches(".*/search/hybrid.*") ||
+                path.matches(".*/search/batch.*") ||
+                path.matches(".*/search/related.*") ||
+                path.matches(".*/search/suggest.*") ||
                 (path.matches(".*/documents/[a-fA-F0-9]{32}.*") && "DELETE".equals(request.getMethod()))) {
                 
                 String operation = "未知操作";
@@ -81,6 +84,12 @@ public class OrgTagAuthorizationFilter extends OncePerRequestFilter {
                     operation = "获取可访问文档";
                 } else if (path.contains("/search/hybrid")) {
                     operation = "混合检索";
+                } else if (path.contains("/search/batch")) {
+                    operation = "批量检索";
+                } else if (path.contains("/search/related")) {
+                    operation = "相关文档推荐";
+                } else if (path.contains("/search/suggest")) {
+                    operation = "输入联想";
                 } else if ("DELETE".equals(request.getMethod()) && path.matches(".*/documents/[a-fA-F0-9]{32}.*")) {
                     operation = "删除文档";
                 }
@@ -0,0 +1,47 @@
+package com.mydemo.inferaflow.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 外部模型 API 的客户端限流配置，DeepSeek 与向量 API 分别配置
+ */
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+@Data
+public class RateLimitProperties {
+
+    private Endpoint deepseek = new Endpoint();
+    private Endpoint embedding = new Endpoint();
+
+    @Data
+    public static class Endpoint {
+        /** 是否启用限流 */
+        private boolean enabled = true;
+        /** 每秒请求数上限，同时作为突发容量；为 0 时不限制 */
+        private double requestsPerSecond = 10;
+        /** 每分钟 token 上限（按输入字符数估算）；为 0 时不限制 */
+        private long tokensPerMinute = 0;
+        /** 并发窗口初始值 */
+        private int initialConcurrency = 4;
+        /** 并发窗口下限 */
+        private int minConcurrency = 1;
+        /** 并发窗口上限 */
+        private int maxConcurrency = 16;
+        /** 单次调用（流式调用为首个响应）超过该耗时视为延迟突增，收缩并发窗口 */
+        private long latencyThresholdMs = 5000;
+        /** 收到 429 或延迟突增时并发窗口的乘性收缩系数 */
+        private double decreaseFactor = 0.5;
+        /** 两次收缩之间的最短间隔（毫秒），避免同一波 429 把窗口连续压到下限 */
+        private long decreaseCooldownMs = 1000;
+        /** 未返回 Retry-After 时，429 后暂停发放许可的时长（毫秒） */
+        private long throttlePauseMs = 1000;
+        /** 批量（入库）请求最多占用的并发窗口比例，其余留给交互请求 */
+        private double bulkShare = 0.75;
+        /** 排队等待许可的超时时间（毫秒） */
+        private long queueTimeoutMs = 30000;
+        /** 批量请求排队等待许可的超时时间（毫秒），批量请求让位于交互请求，因此允许更长的等待 */
+        private long bulkQueueTimeoutMs = 600000;
+    }
+}
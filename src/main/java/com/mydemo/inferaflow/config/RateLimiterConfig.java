@@ -0,0 +1,24 @@
+package com.mydemo.inferaflow.config;
+
+import com.mydemo.inferaflow.client.ApiRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 外部模型 API 限流器配置
+ * DeepSeek 与向量 API 的配额相互独立，各自使用一个限流器
+ */
+@Configuration
+public class RateLimiterConfig {
+
+    @Bean(name = "deepseekRateLimiter", destroyMethod = "shutdown")
+    public ApiRateLimiter deepseekRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        return new ApiRateLimiter("deepseek", properties.getDeepseek(), meterRegistry);
+    }
+
+    @Bean(name = "embeddingRateLimiter", destroyMethod = "shutdown")
+    public ApiRateLimiter embeddingRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        return new ApiRateLimiter("embedding", properties.getEmbedding(), meterRegistry);
+    }
+}
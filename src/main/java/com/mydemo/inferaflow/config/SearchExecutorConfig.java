@@ -0,0 +1,38 @@
+package com.mydemo.inferaflow.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 检索线程池配置
+ * 用于并行执行 BM25 与 KNN 等相互独立的检索分支
+ */
+@Configuration
+public class SearchExecutorConfig {
+
+    @Value("${search.executor.core-pool-size:8}")
+    private int corePoolSize;
+
+    @Value("${search.executor.max-pool-size:32}")
+    private int maxPoolSize;
+
+    @Value("${search.executor.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Bean(name = "searchExecutor")
+    public ThreadPoolTaskExecutor searchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("search-");
+        // 队列满时由调用线程执行，退化为串行而不是直接拒绝
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,223 @@
+package com.mydemo.inferaflow.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 检索相关配置，包含 KNN 召回窗口、混合检索模式与融合策略等参数。
+ */
+@Component
+@ConfigurationProperties(prefix = "search")
+@Data
+public class SearchProperties {
+
+    private Store store = new Store();
+    private Knn knn = new Knn();
+    private Hybrid hybrid = new Hybrid();
+    private Acl acl = new Acl();
+    private Result result = new Result();
+    private Index index = new Index();
+    private Deadline deadline = new Deadline();
+    private ExactKnn exactKnn = new ExactKnn();
+    private Matryoshka matryoshka = new Matryoshka();
+    private TwoStage twoStage = new TwoStage();
+    private Diversity diversity = new Diversity();
+    private ContextWindow contextWindow = new ContextWindow();
+    private AdaptiveRecall adaptiveRecall = new AdaptiveRecall();
+    private Suggest suggest = new Suggest();
+    private Profile profile = new Profile();
+
+    public enum StoreType {
+        /** Elasticsearch knowledge_base 索引 */
+        ELASTICSEARCH,
+        /** 进程内 Lucene 索引 */
+        LUCENE
+    }
+
+    public enum VectorIndexType {
+        /** float32 HNSW，每个 2048 维向量约 8KB */
+        HNSW,
+        /** int8 标量量化 HNSW（ES 8.12+），图内存约为 float32 的 1/4 */
+        INT8_HNSW,
+        /** 二值量化 BBQ HNSW（ES 8.16+），图内存约为 float32 的 1/32 */
+        BBQ_HNSW
+    }
+
+    public enum HybridMode {
+        /** KNN 召回 + 必须命中关键词 + BM25 rescore */
+        RESCORE,
+        /** BM25 与 KNN 两路独立召回后在进程内融合 */
+        FUSION
+    }
+
+    public enum FusionStrategy {
+        /** Reciprocal Rank Fusion */
+        RRF,
+        /** 分数 min-max 归一化后加权求和 */
+        WEIGHTED
+    }
+
+    @Data
+    public static class Store {
+        /** 检索存储类型 */
+        private StoreType type = StoreType.ELASTICSEARCH;
+    }
+
+    @Data
+    public static class Knn {
+        /** 召回窗口倍数，k = topK * recallMultiplier */
+        private int recallMultiplier = 30;
+        /** 是否根据权限过滤的选择性自适应调整 numCandidates */
+        private boolean adaptiveCandidates = false;
+        /** numCandidates 上限（ES 限制为 10000） */
+        private int maxNumCandidates = 10000;
+        /** 过滤命中文档数估算结果的缓存时间（秒） */
+        private long selectivityCacheTtlSeconds = 60;
+        /** 量化索引下 KNN 召回的过采样倍数，召回后按原始 float 向量精确重排 */
+        private double quantizedOversample = 3.0d;
+    }
+
+    @Data
+    public static class Hybrid {
+        /** 混合检索模式 */
+        private HybridMode mode = HybridMode.RESCORE;
+        /** 融合模式下的融合策略 */
+        private FusionStrategy fusionStrategy = FusionStrategy.RRF;
+        /** RRF 常数 k */
+        private int rrfRankConstant = 60;
+        /** BM25 分支权重 */
+        private double lexicalWeight = 1.0d;
+        /** KNN 分支权重 */
+        private double vectorWeight = 1.0d;
+        /** 融合模式下每路召回的候选数量，不小于 topK */
+        private int fusionWindowSize = 50;
+    }
+
+    @Data
+    public static class Acl {
+        /** 是否使用 acl 字段上的单个 terms 查询做权限过滤，开启前需完成存量文档回填 */
+        private boolean principalFilterEnabled = false;
+    }
+
+    @Data
+    public static class Result {
+        /** 是否以高亮片段代替完整 textContent 返回 */
+        private boolean snippetEnabled = false;
+        /** 片段最大字符数 */
+        private int snippetFragmentSize = 300;
+    }
+
+    @Data
+    public static class Index {
+        /** 创建索引时是否将 vector 排除出 _source（减少磁盘与 refresh/merge I/O，但无法再基于 _source 重建向量） */
+        private boolean excludeVectorSource = false;
+        /** vector 字段的索引类型，仅在创建索引或迁移时生效 */
+        private VectorIndexType vectorIndexType = VectorIndexType.HNSW;
+    }
+
+    @Data
+    public static class Deadline {
+        /** 是否启用检索延迟预算 */
+        private boolean enabled = true;
+        /** 单次检索总预算（毫秒） */
+        private long totalMs = 3000;
+        /** 查询向量生成预算（毫秒），超出后降级为纯 BM25 */
+        private long embedMs = 800;
+        /** ES 查询预算（毫秒），作为请求 timeout 参数下发 */
+        private long esMs = 1500;
+    }
+
+    @Data
+    public static class ExactKnn {
+        /** 是否启用小范围用户的精确向量检索（堆外向量段 + SIMD 暴力计算） */
+        private boolean enabled = false;
+        /** 权限范围内分块数不超过该值时走精确检索 */
+        private int maxChunks = 20000;
+        /** 堆外向量段的总内存上限（MB），超出后按 LRU 淘汰 */
+        private long maxMemoryMb = 512;
+        /** 加载向量段时每页拉取的分块数 */
+        private int loadPageSize = 500;
+        /** 向量段写入后的过期时间（秒），兜底代数校验之外的陈旧数据 */
+        private long segmentTtlSeconds = 600;
+        /** 检索等待向量段加载的最长时间（毫秒），超时后本次回退到 ES KNN，加载在后台继续 */
+        private long loadWaitMs = 200;
+    }
+
+    @Data
+    public static class Matryoshka {
+        /** 是否启用两级向量检索：短前缀向量建 HNSW 召回，完整向量精确重排 */
+        private boolean enabled = false;
+        /** 前缀向量维度，需不大于嵌入维度 */
+        private int dimension = 256;
+        /** 前缀向量召回的过采样倍数 */
+        private double oversample = 4.0d;
+    }
+
+    @Data
+    public static class TwoStage {
+        /** 是否启用两阶段检索：先按文件质心召回候选文件，再在候选文件内做分块 KNN */
+        private boolean enabled = false;
+        /** 第一阶段召回的候选文件数量 */
+        private int fileCandidates = 20;
+    }
+
+    @Data
+    public static class Diversity {
+        /** 对话检索是否使用多样化重排 */
+        private boolean enabled = false;
+        /** MMR 相关性权重，1 为纯相关性排序，0 为纯多样性 */
+        private double lambda = 0.7d;
+        /** MMR 候选池大小 */
+        private int candidatePool = 30;
+        /** 默认折叠字段（fileMd5/userId/orgTag），为空时不折叠 */
+        private String collapseField = "";
+    }
+
+    @Data
+    public static class ContextWindow {
+        /** 是否将命中分块扩展为同一父块内的相邻分块后再放入对话上下文 */
+        private boolean enabled = false;
+        /** 命中分块前后各扩展的分块数量 */
+        private int neighbors = 1;
+        /** 每个命中扩展后的最大字符数 */
+        private int maxChars = 1500;
+    }
+
+    @Data
+    public static class AdaptiveRecall {
+        /** 是否启用自适应召回窗口：先用小窗口召回，分数区分度不足或结果不足时再逐步放大，上限为 knn.recall-multiplier 对应的窗口 */
+        private boolean enabled = false;
+        /** 初始召回窗口倍数，k = topK * initialMultiplier */
+        private int initialMultiplier = 4;
+        /** 每次放大窗口的倍数 */
+        private double growthFactor = 3.0d;
+        /** 第 topK 与第 topK+1 名的相对分差低于该值时视为区分度不足 */
+        private double minRelativeGap = 0.02d;
+        /** 最多放大次数 */
+        private int maxWidenings = 2;
+    }
+
+    @Data
+    public static class Suggest {
+        /** 触发建议的最短输入长度 */
+        private int minPrefixLength = 2;
+        /** 单次返回建议数量上限 */
+        private int maxSize = 10;
+        /** 建议片段长度（字符） */
+        private int fragmentSize = 40;
+        /** ES 分片级超时（毫秒），超时返回已收集到的建议 */
+        private long timeoutMs = 50;
+    }
+
+    /**
+     * 检索诊断配置：管理员 profile 请求与慢查询日志
+     */
+    @Data
+    public static class Profile {
+        /** 慢查询阈值（毫秒），端到端耗时超过该值的检索按采样率写入慢查询日志 */
+        private long slowThresholdMs = 1000;
+        /** 慢查询采样率 0~1，为 0 时关闭慢查询日志 */
+        private double slowSampleRate = 0.1;
+    }
+}
@@ -8,6 +8,10 @@ import com.mydemo.inferaflow.model.OrganizationTag;
 import com.mydemo.inferaflow.model.User;
 import com.mydemo.inferaflow.repository.OrganizationTagRepository;
 import com.mydemo.inferaflow.repository.UserRepository;
+import com.mydemo.inferaflow.service.ElasticsearchService;
+import com.mydemo.inferaflow.service.FileCentroidService;
+import com.mydemo.inferaflow.service.IndexMigrationService;
+import com.mydemo.inferaflow.service.RecallEvaluationService;
 import com.mydemo.inferaflow.service.UserService;
 import com.mydemo.inferaflow.utils.JwtUtils;
 import com.mydemo.inferaflow.utils.LogUtils;
@@ -50,6 +54,18 @@ public class AdminController {
     @Autowired
     private MinioMigrationUtil migrationUtil;
 
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @Autowired
+    private IndexMigrationService indexMigrationService;
+
+    @Autowired
+    private RecallEvaluationService recallEvaluationService;
+
+    @Autowired
+    private FileCentroidService fileCentroidService;
+
     /**
      * 获取所有用户列表
      */
@@ -131,6 +147,138 @@ public class AdminController {
         }
     }
 
+    /**
+     * 为存量知识库分块回填 acl 权限主体字段
+     * 开启 search.acl.principal-filter-enabled 前需先执行一次
+     */
+    @PostMapping("/knowledge/acl-backfill")
+    public ResponseEntity<?> backfillKnowledgeAcl(@RequestHeader("Authorization") String token) {
+        LogUtils.PerformanceMonitor monitor = LogUtils.startPerformanceMonitor("ADMIN_ACL_BACKFILL");
+        String adminUsername = null;
+        try {
+            adminUsername = jwtUtils.extractUsernameFromToken(token.replace("Bearer ", ""));
+            validateAdmin(adminUsername);
+
+            LogUtils.logBusiness("ADMIN_ACL_BACKFILL", adminUsername, "开始回填知识库 acl 字段");
+            long updated = elasticsearchService.backfillAcl();
+            LogUtils.logBusiness("ADMIN_ACL_BACKFILL", adminUsername, "acl 字段回填完成，更新文档数量: %d", updated);
+            monitor.end("acl 字段回填成功");
+
+            return ResponseEntity.ok(Map.of("code", 200, "message", "ACL backfill successful", "data", Map.of("updated", updated)));
+        } catch (CustomException e) {
+            monitor.end("acl 字段回填失败: " + e.getMessage());
+            return ResponseEntity.status(e.getStatus())
+                    .body(Map.of("code", e.getStatus().value(), "message", e.getMessage()));
+        } catch (Exception e) {
+            LogUtils.logBusinessError("ADMIN_ACL_BACKFILL", adminUsername, "acl 字段回填失败", e);
+            monitor.end("acl 字段回填失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("code", 500, "message", "ACL backfill failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 为存量文件回填文件质心（由已有分块向量均值池化，不调用向量 API）
+     * 开启 search.two-stage.enabled 前需先执行一次，质心覆盖全部文件前两阶段检索不限定候选文件
+     */
+    @PostMapping("/knowledge/centroid-backfill")
+    public ResponseEntity<?> backfillFileCentroids(@RequestHeader("Authorization") String token) {
+        LogUtils.PerformanceMonitor monitor = LogUtils.startPerformanceMonitor("ADMIN_CENTROID_BACKFILL");
+        String adminUsername = null;
+        try {
+            adminUsername = jwtUtils.extractUsernameFromToken(token.replace("Bearer ", ""));
+            validateAdmin(adminUsername);
+
+            LogUtils.logBusiness("ADMIN_CENTROID_BACKFILL", adminUsername, "开始回填文件质心");
+            long created = fileCentroidService.backfill();
+            LogUtils.logBusiness("ADMIN_CENTROID_BACKFILL", adminUsername, "文件质心回填完成，回填文件数量: %d", created);
+            monitor.end("文件质心回填成功");
+
+            return ResponseEntity.ok(Map.of("code", 200, "message", "Centroid backfill successful", "data", Map.of("created", created)));
+        } catch (CustomException e) {
+            monitor.end("文件质心回填失败: " + e.getMessage());
+            return ResponseEntity.status(e.getStatus())
+                    .body(Map.of("code", e.getStatus().value(), "message", e.getMessage()));
+        } catch (Exception e) {
+            LogUtils.logBusinessError("ADMIN_CENTROID_BACKFILL", adminUsername, "文件质心回填失败", e);
+            monitor.end("文件质心回填失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("code", 500, "message", "Centroid backfill failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 按当前索引配置（如量化向量索引类型）重建知识库索引
+     * 通过 reindex 复制已有向量并切换 knowledge_base 别名，不重新调用向量 API
+     */
+    @PostMapping("/knowledge/reindex")
+    public ResponseEntity<?> reindexKnowledge(@RequestHeader("Authorization") String token) {
+        LogUtils.PerformanceMonitor monitor = LogUtils.startPerformanceMonitor("ADMIN_KNOWLEDGE_REINDEX");
+        String adminUsername = null;
+        try {
+            adminUsername = jwtUtils.extractUsernameFromToken(token.replace("Bearer ", ""));
+            validateAdmin(adminUsername);
+
+            LogUtils.logBusiness("ADMIN_KNOWLEDGE_REINDEX", adminUsername, "开始迁移知识库索引");
+            Map<String, Object> result = indexMigrationService.migrate();
+            LogUtils.logBusiness("ADMIN_KNOWLEDGE_REINDEX", adminUsername, "知识库索引迁移完成: %s", result);
+            monitor.end("知识库索引迁移成功");
+
+            return ResponseEntity.ok(Map.of("code", 200, "message", "Reindex successful", "data", result));
+        } catch (CustomException e) {
+            monitor.end("知识库索引迁移失败: " + e.getMessage());
+            return ResponseEntity.status(e.getStatus())
+                    .body(Map.of("code", e.getStatus().value(), "message", e.getMessage()));
+        } catch (Exception e) {
+            LogUtils.logBusinessError("ADMIN_KNOWLEDGE_REINDEX", adminUsername, "知识库索引迁移失败", e);
+            monitor.end("知识库索引迁移失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("code", 500, "message", "Reindex failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 评估当前向量索引配置的 recall@k，以完整向量暴力检索结果为基准
+     */
+    @PostMapping("/knowledge/recall-eval")
+    public ResponseEntity<?> evaluateVectorRecall(
+            @RequestHeader("Authorization") String token,
+            @RequestBody RecallEvalRequest request) {
+        LogUtils.PerformanceMonitor monitor = LogUtils.startPerformanceMonitor("ADMIN_RECALL_EVAL");
+        String adminUsername = null;
+        try {
+            adminUsername = jwtUtils.extractUsernameFromToken(token.replace("Bearer ", ""));
+            validateAdmin(adminUsername);
+
+            if (request.getQueries() == null || request.getQueries().isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of("code", 400, "message", "queries must not be empty"));
+            }
+            if (request.getQueries().size() > RecallEvaluationService.MAX_QUERIES) {
+                return ResponseEntity.badRequest().body(Map.of("code", 400,
+                        "message", "queries must not exceed " + RecallEvaluationService.MAX_QUERIES));
+            }
+            if (request.getK() < 1 || request.getK() > RecallEvaluationService.MAX_K) {
+                return ResponseEntity.badRequest().body(Map.of("code", 400,
+                        "message", "k must be between 1 and " + RecallEvaluationService.MAX_K));
+            }
+            Map<String, Object> result = recallEvaluationService.evaluate(request.getQueries(), request.getK());
+            LogUtils.logBusiness("ADMIN_RECALL_EVAL", adminUsername, "向量召回率评估完成, recall@%d: %s",
+                    request.getK(), result.get("meanRecall"));
+            monitor.end("向量召回率评估成功");
+
+            return ResponseEntity.ok(Map.of("code", 200, "message", "Recall evaluation successful", "data", result));
+        } catch (CustomException e) {
+            monitor.end("向量召回率评估失败: " + e.getMessage());
+            return ResponseEntity.status(e.getStatus())
+                    .body(Map.of("code", e.getStatus().value(), "message", e.getMessage()));
+        } catch (Exception e) {
+            LogUtils.logBusinessError("ADMIN_RECALL_EVAL", adminUsername, "向量召回率评估失败", e);
+            monitor.end("向量召回率评估失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("code", 500, "message", "Recall evaluation failed: " + e.getMessage()));
+        }
+    }
+
     /**
      * 获取系统状态
      */
@@ -922,3 +1070,30 @@ class OrgTagUpdateRequest {
         this.parentTag = parentTag;
     }
 }
+
+/**
+ * 向量召回率评估请求体
+ */
+class RecallEvalRequest {
+    private List<String> queries;
+    private int k = 10;
+
+    public RecallEvalRequest() {
+    }
+
+    public List<String> getQueries() {
+        return queries;
+    }
+
+    public void setQueries(List<String> queries) {
+        this.queries = queries;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public void setK(int k) {
+        this.k = k;
+    }
+}
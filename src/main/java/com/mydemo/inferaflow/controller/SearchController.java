@@ -1,10 +1,20 @@
 package com.mydemo.inferaflow.controller;
 
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.service.FileCentroidService;
 import com.mydemo.inferaflow.service.HybridSearchService;
+import com.mydemo.inferaflow.service.SuggestService;
 import com.mydemo.inferaflow.utils.LogUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
+import com.mydemo.inferaflow.entity.BatchSearchRequest;
+import com.mydemo.inferaflow.entity.BatchSearchResult;
+import com.mydemo.inferaflow.entity.DiversityOptions;
+import com.mydemo.inferaflow.entity.RelatedFile;
+import com.mydemo.inferaflow.entity.SearchOutcome;
 import com.mydemo.inferaflow.entity.SearchResult;
+import com.mydemo.inferaflow.entity.Suggestion;
 
 import java.util.List;
 import java.util.Map;
@@ -16,9 +26,21 @@ import java.util.Collections;
 @RequestMapping("/api/v1/search")
 public class SearchController {
 
+    // 相关文档推荐的最大返回数量，(topK + 1) * 10 需不超过 ES 的 num_candidates 上限 10000
+    private static final int MAX_RELATED_TOP_K = 100;
+
     @Autowired
     private HybridSearchService hybridSearchService;
 
+    @Autowired
+    private FileCentroidService fileCentroidService;
+
+    @Autowired
+    private SuggestService suggestService;
+
+    @Value("${search.batch.max-queries:100}")
+    private int maxBatchQueries;
+
     /**
      * 混合检索接口
      * 
@@ -27,6 +49,14 @@ public class SearchController {
      * Parameters:
      *   - query: 搜索查询字符串（必需）
      *   - topK: 返回结果数量（可选，默认10）
+     *   - mode: 混合检索模式 rescore/fusion（可选，默认使用 search.hybrid.mode 配置）
+     *   - diversify: 是否对结果做多样化重排（可选，默认false）
+     *   - lambda: MMR 相关性权重 0~1（可选，默认使用 search.diversity.lambda 配置）
+     *   - collapse: 折叠字段 fileMd5/userId/orgTag（可选，默认使用 search.diversity.collapse-field 配置）
+     *   - profile: 是否返回诊断信息（可选，默认false，仅管理员可用）
+     *
+     * 响应中的 partial 为 true 表示检索超出延迟预算或部分阶段失败，返回的是降级结果（如纯 BM25）
+     * profile=true 时不经过结果缓存，响应额外包含 timings（各阶段耗时，毫秒）与 profile（各召回分支的 ES profile 输出）
      * 
      * 示例: /api/v1/search/hybrid?query=人工智能的发展&topK=10
      * 
@@ -46,16 +76,40 @@ public class SearchController {
     @GetMapping("/hybrid")
     public Map<String, Object> hybridSearch(@RequestParam String query,
                                             @RequestParam(defaultValue = "10") int topK,
-                                            @RequestAttribute(value = "userId", required = false) String userId) {
+                                            @RequestParam(required = false) String mode,
+                                            @RequestParam(defaultValue = "false") boolean diversify,
+                                            @RequestParam(required = false) Double lambda,
+                                            @RequestParam(required = false) String collapse,
+                                            @RequestParam(defaultValue = "false") boolean profile,
+                                            @RequestAttribute(value = "userId", required = false) String userId,
+                                            @RequestAttribute(value = "role", required = false) String role) {
+        if (profile && (userId == null || !"ADMIN".equals(role))) {
+            Map<String, Object> errorBody = new HashMap<>(4);
+            errorBody.put("code", 403);
+            errorBody.put("message", "仅管理员可以使用检索诊断");
+            errorBody.put("data", Collections.emptyList());
+            return errorBody;
+        }
         LogUtils.PerformanceMonitor monitor = LogUtils.startPerformanceMonitor("HYBRID_SEARCH");
         try {
             LogUtils.logBusiness("HYBRID_SEARCH", userId != null ? userId : "anonymous", 
                     "开始混合检索: query=%s, topK=%d", query, topK);
             
             List<SearchResult> results;
-            if (userId != null) {
-                // 如果有用户ID，使用带权限的搜索
-                results = hybridSearchService.searchWithPermission(query, userId, topK);
+            boolean partial = false;
+            SearchOutcome profiled = null;
+            if (profile) {
+                // 诊断请求不经过结果缓存，也不做多样化重排，只关注检索本身的耗时构成
+                profiled = hybridSearchService.profileSearchOutcome(query, userId, topK, parseMode(mode));
+                results = profiled.getResults();
+                partial = profiled.isPartial();
+            } else if (userId != null) {
+                // 如果有用户ID，使用带权限的搜索（受延迟预算约束，超出预算时返回部分结果）
+                SearchOutcome outcome = diversify
+                        ? hybridSearchService.searchDiverseOutcome(query, userId, topK, new DiversityOptions(lambda, collapse, null))
+                        : hybridSearchService.searchWithPermissionOutcome(query, userId, topK, parseMode(mode));
+                results = outcome.getResults();
+                partial = outcome.isPartial();
             } else {
                 // 如果没有用户ID，使用普通搜索（仅公开内容）
                 results = hybridSearchService.search(query, topK);
@@ -72,6 +126,11 @@ public class SearchController {
             responseBody.put("code", 200);
             responseBody.put("message", "success");
             responseBody.put("data", results);
+            responseBody.put("partial", partial);
+            if (profiled != null) {
+                responseBody.put("timings", profiled.getTimings());
+                responseBody.put("profile", profiled.getEsProfiles());
+            }
             
             return responseBody;
         } catch (Exception e) {
@@ -87,4 +146,168 @@ public class SearchController {
             return errorBody;
         }
     }
+
+    /**
+     * 批量混合检索接口
+     *
+     * URL: /api/v1/search/batch
+     * Method: POST
+     * Body:
+     * {
+     *   "queries": ["人工智能的发展", "机器学习算法"],
+     *   "topK": 10,
+     *   "mode": "fusion"
+     * }
+     *
+     * 权限只解析一次，查询向量批量生成，ES 通过一次 _msearch 执行
+     * Response data 与 queries 顺序一致，每项包含 query、results、took（ES 耗时，毫秒）、error
+     */
+    @PostMapping("/batch")
+    public Map<String, Object> batchSearch(@RequestBody BatchSearchRequest request,
+                                           @RequestAttribute(value = "userId", required = false) String userId) {
+        LogUtils.PerformanceMonitor monitor = LogUtils.startPerformanceMonitor("BATCH_SEARCH");
+        Map<String, Object> responseBody = new HashMap<>(4);
+        List<String> queries = request.getQueries();
+        if (userId == null) {
+            responseBody.put("code", 401);
+            responseBody.put("message", "未登录用户不能使用批量检索");
+            responseBody.put("data", Collections.emptyList());
+            return responseBody;
+        }
+        if (queries == null || queries.isEmpty() || queries.size() > maxBatchQueries) {
+            responseBody.put("code", 400);
+            responseBody.put("message", "queries 数量必须在 1 到 " + maxBatchQueries + " 之间");
+            responseBody.put("data", Collections.emptyList());
+            return responseBody;
+        }
+        if (request.getTopK() <= 0) {
+            responseBody.put("code", 400);
+            responseBody.put("message", "topK 必须大于 0");
+            responseBody.put("data", Collections.emptyList());
+            return responseBody;
+        }
+
+        try {
+            LogUtils.logBusiness("BATCH_SEARCH", userId, "开始批量检索: 查询数量=%d, topK=%d",
+                    queries.size(), request.getTopK());
+
+            List<BatchSearchResult> results = hybridSearchService.batchSearchWithPermission(
+                    queries, userId, request.getTopK(), parseMode(request.getMode()));
+
+            LogUtils.logUserOperation(userId, "BATCH_SEARCH", "search_query", "SUCCESS");
+            monitor.end("批量检索成功");
+
+            responseBody.put("code", 200);
+            responseBody.put("message", "success");
+            responseBody.put("data", results);
+            return responseBody;
+        } catch (Exception e) {
+            LogUtils.logBusinessError("BATCH_SEARCH", userId, "批量检索失败: 查询数量=%d", e, queries.size());
+            monitor.end("批量检索失败: " + e.getMessage());
+
+            responseBody.put("code", 500);
+            responseBody.put("message", e.getMessage());
+            responseBody.put("data", Collections.emptyList());
+            return responseBody;
+        }
+    }
+
+    /**
+     * 相关文档推荐接口
+     *
+     * URL: /api/v1/search/related
+     * Method: GET
+     * Parameters:
+     *   - fileMd5: 源文件指纹（必需）
+     *   - topK: 返回文件数量（可选，默认5，不超过100）
+     *
+     * 基于 knowledge_files 中的文件质心检索，结果只包含用户有权访问的文件；源文件不可见时返回空列表
+     * Response data 每项包含 fileMd5、fileName、score、userId、orgTag、public
+     */
+    @GetMapping("/related")
+    public Map<String, Object> relatedFiles(@RequestParam String fileMd5,
+                                            @RequestParam(defaultValue = "5") int topK,
+                                            @RequestAttribute(value = "userId", required = false) String userId) {
+        LogUtils.PerformanceMonitor monitor = LogUtils.startPerformanceMonitor("RELATED_FILES");
+        Map<String, Object> responseBody = new HashMap<>(4);
+        if (userId == null) {
+            responseBody.put("code", 401);
+            responseBody.put("message", "未登录用户不能使用相关文档推荐");
+            responseBody.put("data", Collections.emptyList());
+            return responseBody;
+        }
+
+        try {
+            List<RelatedFile> results = fileCentroidService.related(fileMd5, userId,
+                    Math.min(Math.max(1, topK), MAX_RELATED_TOP_K));
+
+            LogUtils.logUserOperation(userId, "RELATED_FILES", fileMd5, "SUCCESS");
+            monitor.end("相关文档推荐成功");
+
+            responseBody.put("code", 200);
+            responseBody.put("message", "success");
+            responseBody.put("data", results);
+            return responseBody;
+        } catch (Exception e) {
+            LogUtils.logBusinessError("RELATED_FILES", userId, "相关文档推荐失败: fileMd5=%s", e, fileMd5);
+            monitor.end("相关文档推荐失败: " + e.getMessage());
+
+            responseBody.put("code", 500);
+            responseBody.put("message", e.getMessage());
+            responseBody.put("data", Collections.emptyList());
+            return responseBody;
+        }
+    }
+
+    /**
+     * 输入联想接口
+     *
+     * URL: /api/v1/search/suggest
+     * Method: GET
+     * Parameters:
+     *   - prefix: 用户当前输入（必需，短于 search.suggest.min-prefix-length 时返回空列表）
+     *   - size: 返回建议数量（可选，默认5，不超过 search.suggest.max-size）
+     *
+     * 只做前缀匹配与权限过滤，不调用向量 API，供前端在每次输入时调用
+     * Response data 每项包含 text（命中片段）、fileMd5
+     */
+    @GetMapping("/suggest")
+    public Map<String, Object> suggest(@RequestParam String prefix,
+                                       @RequestParam(defaultValue = "5") int size,
+                                       @RequestAttribute(value = "userId", required = false) String userId) {
+        Map<String, Object> responseBody = new HashMap<>(4);
+        if (userId == null) {
+            responseBody.put("code", 401);
+            responseBody.put("message", "未登录用户不能使用输入联想");
+            responseBody.put("data", Collections.emptyList());
+            return responseBody;
+        }
+
+        try {
+            // 高频接口，不记录业务日志与性能监控
+            List<Suggestion> suggestions = suggestService.suggest(prefix, userId, size);
+            responseBody.put("code", 200);
+            responseBody.put("message", "success");
+            responseBody.put("data", suggestions);
+            return responseBody;
+        } catch (Exception e) {
+            LogUtils.logBusinessError("SEARCH_SUGGEST", userId, "输入联想失败: prefix=%s", e, prefix);
+            responseBody.put("code", 500);
+            responseBody.put("message", e.getMessage());
+            responseBody.put("data", Collections.emptyList());
+            return responseBody;
+        }
+    }
+
+    private SearchProperties.HybridMode parseMode(String mode) {
+        if (mode == null || mode.isBlank()) {
+            return null;
+        }
+        try {
+            return SearchProperties.HybridMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            // 非法取值时使用默认模式
+            return null;
+        }
+    }
 }
@@ -0,0 +1,12 @@
+package com.mydemo.inferaflow.entity;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchSearchRequest {
+    private List<String> queries; // 查询列表
+    private int topK = 10;        // 每个查询返回的前 K 个结果
+    private String mode;          // 混合检索模式 rescore/fusion（可选）
+}
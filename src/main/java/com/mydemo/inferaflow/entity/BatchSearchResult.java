@@ -0,0 +1,20 @@
+package com.mydemo.inferaflow.entity;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchSearchResult {
+    private String query;               // 查询字符串
+    private List<SearchResult> results; // 检索结果
+    private Long took;                  // ES 执行耗时（毫秒）
+    private String error;               // 单个查询失败时的错误信息
+
+    public BatchSearchResult(String query, List<SearchResult> results, Long took, String error) {
+        this.query = query;
+        this.results = results;
+        this.took = took;
+        this.error = error;
+    }
+}
@@ -0,0 +1,17 @@
+package com.mydemo.inferaflow.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 单次检索的多样化参数，字段为 null 时使用 search.diversity 配置
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiversityOptions {
+    private Double lambda;          // MMR 相关性权重，1 为纯相关性排序
+    private String collapseField;   // 折叠字段（fileMd5/userId/orgTag），空字符串表示不折叠
+    private Integer candidatePool;  // MMR 候选池大小
+}
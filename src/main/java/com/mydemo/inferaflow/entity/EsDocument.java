@@ -1,8 +1,11 @@
 package com.mydemo.inferaflow.entity;
 
 
+import com.mydemo.inferaflow.utils.AclPrincipalUtils;
 import lombok.Data;
 
+import java.util.List;
+
 /**
  * Elasticsearch存储的文档实体类
  * 包含文档内容和权限信息
@@ -14,11 +17,16 @@ public class EsDocument {
     private String fileMd5;        // 文件指纹
     private Integer chunkId;       // 文本分块序号
     private String textContent;    // 文本内容
+    private Integer parentId;      // 所属父文本块序号
+    private Integer startOffset;   // 原文起始字符偏移
+    private Integer endOffset;     // 原文结束字符偏移
     private float[] vector;        // 向量数据（768维）
+    private float[] vectorShort;   // Matryoshka 前缀向量（截断后重新归一化），仅在启用两级检索时写入
     private String modelVersion;   // 向量生成模型版本
     private String userId;         // 上传用户ID
     private String orgTag;         // 组织标签
     private boolean isPublic;      // 是否公开
+    private List<String> acl;      // 反规范化的权限主体（u:<用户ID>、org:<标签>、public）
 
     /**
      * 默认构造函数，用于Jackson反序列化
@@ -41,6 +49,7 @@ public class EsDocument {
         this.userId = userId;
         this.orgTag = orgTag;
         this.isPublic = isPublic;
+        this.acl = AclPrincipalUtils.documentPrincipals(userId, orgTag, isPublic);
     }
     
 
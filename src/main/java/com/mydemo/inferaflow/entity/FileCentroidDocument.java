@@ -0,0 +1,41 @@
+package com.mydemo.inferaflow.entity;
+
+import com.mydemo.inferaflow.utils.AclPrincipalUtils;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * knowledge_files 索引中的文件级文档
+ * 质心为文件所有分块向量归一化后的均值（再归一化），权限字段与分块保持一致
+ */
+@Data
+public class FileCentroidDocument {
+
+    private String fileMd5;        // 文件指纹，同时作为文档 id
+    private float[] centroid;      // 文件质心向量
+    private int chunkCount;        // 参与计算的分块数量
+    private String modelVersion;   // 向量生成模型版本
+    private String userId;         // 上传用户ID
+    private String orgTag;         // 组织标签
+    private boolean isPublic;      // 是否公开
+    private List<String> acl;      // 反规范化的权限主体
+
+    /**
+     * 默认构造函数，用于Jackson反序列化
+     */
+    public FileCentroidDocument() {
+    }
+
+    public FileCentroidDocument(String fileMd5, float[] centroid, int chunkCount, String modelVersion,
+                                String userId, String orgTag, boolean isPublic) {
+        this.fileMd5 = fileMd5;
+        this.centroid = centroid;
+        this.chunkCount = chunkCount;
+        this.modelVersion = modelVersion;
+        this.userId = userId;
+        this.orgTag = orgTag;
+        this.isPublic = isPublic;
+        this.acl = AclPrincipalUtils.documentPrincipals(userId, orgTag, isPublic);
+    }
+}
@@ -0,0 +1,26 @@
+package com.mydemo.inferaflow.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 入库向量化结果，包含内容向量缓存的命中情况
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestEmbeddings {
+    private List<float[]> vectors;  // 与输入分块顺序一致的向量
+    private int cacheHits;          // 命中内容向量缓存的分块数
+    private int embedded;           // 实际发送到向量 API 的文本数（已去重）
+
+    /**
+     * 缓存命中率
+     */
+    public double hitRate() {
+        return vectors == null || vectors.isEmpty() ? 0.0d : (double) cacheHits / vectors.size();
+    }
+}
@@ -0,0 +1,47 @@
+package com.mydemo.inferaflow.entity;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+
+import java.util.List;
+
+/**
+ * 用户权限上下文（不可变）
+ * 一次解析出检索和文档列表所需的全部权限信息：数据库ID、用户名、有效组织标签以及预编译的 ES 过滤条件
+ */
+public final class PermissionContext {
+
+    private final String userDbId;          // 用户数据库ID
+    private final String username;          // 用户名
+    private final List<String> effectiveTags; // 有效组织标签（包含层级关系）
+    private final List<String> principals;  // ACL 主体集合（u:<用户ID>、public、org:<标签>）
+    private final Query filter;             // 预编译的 ES 权限过滤条件
+
+    public PermissionContext(String userDbId, String username, List<String> effectiveTags,
+                             List<String> principals, Query filter) {
+        this.userDbId = userDbId;
+        this.username = username;
+        this.effectiveTags = List.copyOf(effectiveTags);
+        this.principals = List.copyOf(principals);
+        this.filter = filter;
+    }
+
+    public String getUserDbId() {
+        return userDbId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public List<String> getEffectiveTags() {
+        return effectiveTags;
+    }
+
+    public List<String> getPrincipals() {
+        return principals;
+    }
+
+    public Query getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,20 @@
+package com.mydemo.inferaflow.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 相关文档推荐结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RelatedFile {
+    private String fileMd5;   // 文件指纹
+    private String fileName;  // 文件名
+    private Double score;     // 质心相似度
+    private String userId;    // 上传用户ID
+    private String orgTag;    // 组织标签
+    private boolean isPublic; // 是否公开
+}
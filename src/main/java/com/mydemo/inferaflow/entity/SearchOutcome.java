@@ -0,0 +1,65 @@
+package com.mydemo.inferaflow.entity;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带权限检索的完整结果
+ * 除检索结果外，还包含是否为降级/部分结果以及各阶段耗时
+ */
+@Data
+public class SearchOutcome {
+    private List<SearchResult> results = Collections.emptyList(); // 检索结果
+    private boolean partial;                                      // 是否为部分结果（某阶段超出预算或失败后降级）
+    private String degradedReason;                                // 首个降级原因
+    private Map<String, Long> timings = new LinkedHashMap<>();    // 各阶段耗时（毫秒）
+    private boolean profiling;                                    // 是否开启 ES profile（仅管理员诊断使用，不经过结果缓存）
+    private Map<String, List<Object>> esProfiles = new LinkedHashMap<>(); // 各召回分支的 ES profile 输出，按请求顺序
+    private boolean cacheHit;                                     // 是否来自检索结果缓存（此时不带各阶段耗时）
+
+    /**
+     * 标记为部分结果，保留首个降级原因
+     */
+    public synchronized void markPartial(String reason) {
+        if (!partial) {
+            partial = true;
+            degradedReason = reason;
+        }
+    }
+
+    /**
+     * 记录阶段耗时
+     */
+    public synchronized void recordTiming(String stage, long millis) {
+        timings.put(stage, millis);
+    }
+
+    /**
+     * 浅拷贝：结果列表与耗时各自复制，调用方修改拷贝不影响缓存中的实例
+     *
+     * @param cacheHit 是否为缓存命中；命中时不带原始检索的各阶段耗时
+     */
+    public synchronized SearchOutcome copy(boolean cacheHit) {
+        SearchOutcome copy = new SearchOutcome();
+        copy.results = new ArrayList<>(results);
+        copy.partial = partial;
+        copy.degradedReason = degradedReason;
+        copy.cacheHit = cacheHit;
+        if (!cacheHit) {
+            copy.timings.putAll(timings);
+        }
+        return copy;
+    }
+
+    /**
+     * 记录某个召回分支的 ES profile 输出，自适应召回的多轮请求按顺序追加
+     */
+    public synchronized void addEsProfile(String leg, Object profile) {
+        esProfiles.computeIfAbsent(leg, k -> new ArrayList<>()).add(profile);
+    }
+}
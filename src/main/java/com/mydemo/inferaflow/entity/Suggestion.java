@@ -0,0 +1,16 @@
+package com.mydemo.inferaflow.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 输入联想建议
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Suggestion {
+    private String text;     // 命中输入前缀的文本片段
+    private String fileMd5;  // 片段所在文件指纹
+}
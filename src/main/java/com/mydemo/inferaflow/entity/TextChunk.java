@@ -11,10 +11,20 @@ public class TextChunk {
     // Getters/Setters
     private int chunkId;       // 分块序号
     private String content;    // 分块内容
+    private Integer parentId;  // 所属父文本块序号
+    private Integer startOffset; // 原文起始字符偏移
+    private Integer endOffset;   // 原文结束字符偏移
 
     // 构造方法
     public TextChunk(int chunkId, String content) {
         this.chunkId = chunkId;
         this.content = content;
     }
+
+    public TextChunk(int chunkId, String content, Integer parentId, Integer startOffset, Integer endOffset) {
+        this(chunkId, content);
+        this.parentId = parentId;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+    }
 }
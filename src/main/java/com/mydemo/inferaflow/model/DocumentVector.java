@@ -11,7 +11,9 @@ import java.sql.Blob;
  */
 @Data
 @Entity
-@Table(name = "document_vectors")
+@Table(name = "document_vectors", indexes = {
+        @Index(name = "idx_file_chunk", columnList = "fileMd5, chunkId")
+})
 public class DocumentVector {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -26,6 +28,21 @@ public class DocumentVector {
     @Lob
     private String textContent;
 
+    /**
+     * 所属父文本块序号（从 1 开始），解析时按约 1MB 切分的父块
+     */
+    @Column(name = "parent_id")
+    private Integer parentId;
+
+    /**
+     * 分块在原文中的起止字符偏移（左闭右开）
+     */
+    @Column(name = "start_offset")
+    private Integer startOffset;
+
+    @Column(name = "end_offset")
+    private Integer endOffset;
+
     @Column(length = 32)
     private String modelVersion;
     
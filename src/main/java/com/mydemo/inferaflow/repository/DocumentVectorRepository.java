@@ -10,6 +10,8 @@ import java.util.List;
 
 public interface DocumentVectorRepository extends JpaRepository<DocumentVector, Long> {
     List<DocumentVector> findByFileMd5(String fileMd5); // 查询某文件的所有分块
+
+    List<DocumentVector> findByFileMd5AndChunkIdBetweenOrderByChunkIdAsc(String fileMd5, Integer from, Integer to); // 查询相邻分块
     
     /**
      * 删除指定文件MD5的所有文档向量记录
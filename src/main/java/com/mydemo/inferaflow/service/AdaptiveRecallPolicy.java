@@ -0,0 +1,148 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.entity.SearchResult;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 自适应 KNN 召回窗口策略
+ * 每次检索从较小的窗口开始，仅在以下情况放大窗口后重试，直到达到固定窗口（topK * recallMultiplier）或放大次数上限：
+ * 1. 第 topK 名与第 topK+1 名的相对分差过小，边界处排序不可靠，ANN 近似误差容易改变结果；
+ * 2. 权限过滤后返回的结果不足 topK 条。
+ * 分差按 KNN 向量分计算，反映 ANN 边界的不确定性；用户可见的分块数不超过当前窗口时放大无意义，直接接受。
+ * 每轮决策与最终窗口导出为指标，用于按数据权衡召回成本与质量
+ */
+@Service
+public class AdaptiveRecallPolicy {
+
+    /**
+     * 单轮召回后的决策
+     */
+    public enum Decision {
+        /** 结果可接受，停止放大 */
+        ACCEPTED,
+        /** 边界分差过小，放大窗口 */
+        FLAT_GAP,
+        /** 过滤后结果不足，放大窗口 */
+        UNDERFILLED,
+        /** 需要放大但已达到上限 */
+        EXHAUSTED
+    }
+
+    @Autowired
+    private SearchProperties searchProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public boolean isEnabled() {
+        return searchProperties.getAdaptiveRecall().isEnabled();
+    }
+
+    /**
+     * 初始召回窗口
+     *
+     * @param topK 需要的结果数量
+     * @param maxK 固定窗口（放大上限）
+     */
+    public int initialK(int topK, int maxK) {
+        if (!isEnabled()) {
+            return maxK;
+        }
+        return Math.min(maxK, Math.max(topK + 1, topK * searchProperties.getAdaptiveRecall().getInitialMultiplier()));
+    }
+
+    /**
+     * 根据本轮结果决定是否需要放大窗口
+     *
+     * @param topK    需要的结果数量
+     * @param k       本轮召回窗口
+     * @param maxK    固定窗口（放大上限）
+     * @param round   已放大次数
+     * @param results 本轮结果（按分数降序，最多 topK + 1 条）
+     */
+    public Decision evaluate(int topK, int k, int maxK, int round, List<SearchResult> results) {
+        return evaluate(topK, k, maxK, round, results, -1L);
+    }
+
+    /**
+     * 根据本轮结果决定是否需要放大窗口
+     *
+     * @param visibleCount 用户可见的分块数，不超过本轮窗口时窗口已覆盖全部可见分块，不再放大；-1 表示未知
+     */
+    public Decision evaluate(int topK, int k, int maxK, int round, List<SearchResult> results, long visibleCount) {
+        if (visibleCount >= 0 && visibleCount <= k) {
+            return Decision.ACCEPTED;
+        }
+        Decision decision = classify(results, topK);
+        if (decision == Decision.ACCEPTED) {
+            return decision;
+        }
+        boolean canWiden = k < maxK && round < searchProperties.getAdaptiveRecall().getMaxWidenings();
+        return canWiden ? decision : Decision.EXHAUSTED;
+    }
+
+    /**
+     * 放大后的召回窗口
+     */
+    public int widen(int k, int maxK) {
+        return Math.min(maxK, (int) Math.ceil(k * Math.max(1.5d, searchProperties.getAdaptiveRecall().getGrowthFactor())));
+    }
+
+    /**
+     * 记录单次检索的召回决策
+     *
+     * @param path     检索路径（vector / rescore）
+     * @param decision 最后一轮的决策
+     * @param rounds   放大次数
+     * @param k        最终召回窗口
+     * @param maxK     固定窗口
+     */
+    public void record(String path, Decision decision, int rounds, int k, int maxK) {
+        meterRegistry.counter("search.knn.recall.decisions",
+                "path", path, "decision", decision.name().toLowerCase()).increment();
+        DistributionSummary.builder("search.knn.recall.window")
+                .description("最终 KNN 召回窗口 k")
+                .tag("path", path)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry)
+                .record(k);
+        // 最终窗口占固定窗口的比例，反映相对固定策略节省的 ANN 成本
+        DistributionSummary.builder("search.knn.recall.window_ratio")
+                .tag("path", path)
+                .register(meterRegistry)
+                .record(maxK > 0 ? (double) k / maxK : 1.0d);
+        DistributionSummary.builder("search.knn.recall.widenings")
+                .tag("path", path)
+                .register(meterRegistry)
+                .record(rounds);
+    }
+
+    private Decision classify(List<SearchResult> results, int topK) {
+        if (!isEnabled() || topK <= 0) {
+            return Decision.ACCEPTED;
+        }
+        if (results.size() < topK) {
+            return Decision.UNDERFILLED;
+        }
+        if (results.size() > topK) {
+            double boundary = scoreAt(results, topK - 1);
+            double next = scoreAt(results, topK);
+            double relativeGap = boundary > 0 ? (boundary - next) / boundary : 0.0d;
+            if (relativeGap < searchProperties.getAdaptiveRecall().getMinRelativeGap()) {
+                return Decision.FLAT_GAP;
+            }
+        }
+        return Decision.ACCEPTED;
+    }
+
+    private static double scoreAt(List<SearchResult> results, int index) {
+        Double score = results.get(index).getScore();
+        return score != null ? score : 0.0d;
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mydemo.inferaflow.client.DeepSeekClient;
+import com.mydemo.inferaflow.config.SearchProperties;
 import com.mydemo.inferaflow.entity.SearchResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +36,8 @@ public class ChatHandler {
     private final RedisTemplate<String, String> redisTemplate;
     private final HybridSearchService searchService;
     private final DeepSeekClient deepSeekClient;
+    private final SearchProperties searchProperties;
+    private final ChunkWindowService chunkWindowService;
     private final ObjectMapper objectMapper;
     
     // 用于存储每个会话的完整响应
@@ -48,10 +51,14 @@ public class ChatHandler {
 
     public ChatHandler(RedisTemplate<String, String> redisTemplate,
                       HybridSearchService searchService,
-                      DeepSeekClient deepSeekClient) {
+                      DeepSeekClient deepSeekClient,
+                      SearchProperties searchProperties,
+                      ChunkWindowService chunkWindowService) {
         this.redisTemplate = redisTemplate;
         this.searchService = searchService;
         this.deepSeekClient = deepSeekClient;
+        this.searchProperties = searchProperties;
+        this.chunkWindowService = chunkWindowService;
         this.objectMapper = new ObjectMapper();
     }
 
@@ -74,7 +81,10 @@ public class ChatHandler {
             logger.debug("获取到 {} 条历史对话", history.size());
             
             // 3. 执行带权限过滤的混合搜索
-            List<SearchResult> searchResults = searchService.searchWithPermission(userMessage, userId, 5);
+            // 启用多样化时从更大的候选池中选出彼此不重复的分块，避免上下文被同一文件的相似分块占满
+            List<SearchResult> searchResults = searchProperties.getDiversity().isEnabled()
+                    ? searchService.searchDiverse(userMessage, userId, 5, null)
+                    : searchService.searchWithPermission(userMessage, userId, 5);
             logger.debug("搜索结果数量: {}", searchResults.size());
             
             // 4. 构建上下文
@@ -222,11 +232,20 @@ public class ChatHandler {
         // 创建当前会话的引用映射
         Map<Integer, String> referenceMapping = new HashMap<>();
 
-        final int MAX_SNIPPET_LEN = 300; // 单段最长字符数，超出截断
+        // 启用上下文窗口时命中分块扩展为同一父块内的相邻分块，单段上限随之放宽
+        boolean expand = chunkWindowService.isEnabled();
+        List<String> windows = expand ? chunkWindowService.expand(searchResults) : null;
+        final int MAX_SNIPPET_LEN = expand ? searchProperties.getContextWindow().getMaxChars() : 300; // 单段最长字符数，超出截断
         StringBuilder context = new StringBuilder();
+        int reference = 0;
         for (int i = 0; i < searchResults.size(); i++) {
             SearchResult result = searchResults.get(i);
-            String snippet = result.getTextContent();
+            String snippet = expand ? windows.get(i) : result.getTextContent();
+            if (snippet == null) {
+                // 命中分块已包含在前面命中的上下文窗口中
+                continue;
+            }
+            reference++;
             if (snippet.length() > MAX_SNIPPET_LEN) {
                 snippet = snippet.substring(0, MAX_SNIPPET_LEN) + "…";
             }
@@ -235,14 +254,14 @@ public class ChatHandler {
 
             // 格式：[1] (test1.txt | MD5:abc123def456) 文件内容...
             // 这样AI和用户都能通过MD5区分同名文件
-            context.append(String.format("[%d] (%s | MD5:%s) %s\n", i + 1, fileLabel, fileMd5, snippet));
+            context.append(String.format("[%d] (%s | MD5:%s) %s\n", reference, fileLabel, fileMd5, snippet));
 
             // 保存引用编号到MD5的映射
             if (fileMd5 != null) {
-                referenceMapping.put(i + 1, fileMd5);
+                referenceMapping.put(reference, fileMd5);
                 // 详细日志：记录每个引用编号的映射关系
                 logger.info("引用映射: sessionId={}, 引用编号#{}，文件名={}, MD5={}",
-                    sessionId, i + 1, fileLabel, fileMd5);
+                    sessionId, reference, fileLabel, fileMd5);
             }
         }
 
@@ -0,0 +1,106 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.entity.SearchResult;
+import com.mydemo.inferaflow.model.DocumentVector;
+import com.mydemo.inferaflow.repository.DocumentVectorRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 分块上下文窗口服务（small-to-big）
+ * 检索与向量化只针对小的子分块；构建对话上下文时，将命中分块扩展为同一父块内的相邻分块。
+ * 相邻分块按 (fileMd5, chunkId) 范围从 document_vectors 读取，不经过 ES，也不需要额外的向量
+ */
+@Service
+public class ChunkWindowService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkWindowService.class);
+
+    @Autowired
+    private DocumentVectorRepository documentVectorRepository;
+
+    @Autowired
+    private SearchProperties searchProperties;
+
+    public boolean isEnabled() {
+        return searchProperties.getContextWindow().isEnabled();
+    }
+
+    /**
+     * 将命中分块扩展为上下文窗口
+     * 只扩展同一父块内的相邻分块，窗口由近到远交替加入直到达到字符上限；
+     * 同一文件中已被前面命中的窗口使用过的分块不再重复加入，命中分块本身已被使用时该命中整体并入前面的窗口
+     *
+     * @param hits 检索结果（按排名顺序）
+     * @return 与 hits 一一对应的扩展文本，读取失败时为原始分块文本，已包含在前面窗口中的命中为 null
+     */
+    public List<String> expand(List<SearchResult> hits) {
+        SearchProperties.ContextWindow config = searchProperties.getContextWindow();
+        Map<String, Set<Integer>> usedChunks = new HashMap<>();
+        List<String> windows = new ArrayList<>(hits.size());
+        for (SearchResult hit : hits) {
+            Set<Integer> used = usedChunks.computeIfAbsent(hit.getFileMd5(), k -> new HashSet<>());
+            if (hit.getChunkId() != null && used.contains(hit.getChunkId())) {
+                windows.add(null);
+                continue;
+            }
+            try {
+                windows.add(expand(hit, config, used));
+            } catch (Exception e) {
+                logger.warn("扩展上下文窗口失败，使用命中分块原文，fileMd5: {}, chunkId: {}: {}",
+                        hit.getFileMd5(), hit.getChunkId(), e.getMessage());
+                windows.add(hit.getTextContent());
+            }
+        }
+        return windows;
+    }
+
+    private String expand(SearchResult hit, SearchProperties.ContextWindow config, Set<Integer> used) {
+        int chunkId = hit.getChunkId();
+        Map<Integer, DocumentVector> rows = documentVectorRepository
+                .findByFileMd5AndChunkIdBetweenOrderByChunkIdAsc(hit.getFileMd5(),
+                        chunkId - config.getNeighbors(), chunkId + config.getNeighbors())
+                .stream()
+                .collect(Collectors.toMap(DocumentVector::getChunkId, row -> row, (a, b) -> a));
+        DocumentVector center = rows.get(chunkId);
+        if (center == null || center.getTextContent() == null) {
+            return hit.getTextContent();
+        }
+
+        // 命中分块本身始终保留（使用完整原文，而不是高亮片段）
+        TreeMap<Integer, String> window = new TreeMap<>();
+        window.put(chunkId, center.getTextContent());
+        used.add(chunkId);
+        int length = center.getTextContent().length();
+        for (int distance = 1; distance <= config.getNeighbors(); distance++) {
+            for (int neighborId : new int[]{chunkId - distance, chunkId + distance}) {
+                DocumentVector neighbor = rows.get(neighborId);
+                // 旧数据没有父块信息，parentId 均为 null 时视为同一父块
+                if (neighbor == null || neighbor.getTextContent() == null || used.contains(neighborId)
+                        || !Objects.equals(neighbor.getParentId(), center.getParentId())) {
+                    continue;
+                }
+                if (length + neighbor.getTextContent().length() > config.getMaxChars()) {
+                    continue;
+                }
+                window.put(neighborId, neighbor.getTextContent());
+                used.add(neighborId);
+                length += neighbor.getTextContent().length();
+            }
+        }
+        return String.join("\n", window.values());
+    }
+}
@@ -1,10 +1,8 @@
 package com.mydemo.inferaflow.service;
 
 import com.mydemo.inferaflow.model.FileUpload;
-import com.mydemo.inferaflow.model.User;
 import com.mydemo.inferaflow.repository.DocumentVectorRepository;
 import com.mydemo.inferaflow.repository.FileUploadRepository;
-import com.mydemo.inferaflow.repository.UserRepository;
 import io.minio.GetObjectArgs;
 import io.minio.GetPresignedObjectUrlArgs;
 import io.minio.MinioClient;
@@ -48,13 +46,13 @@ public class DocumentService {
     private MinioClient minioClient;
 
     @Autowired
-    private ElasticsearchService elasticsearchService;
+    private RetrievalStore retrievalStore;
 
     @Autowired
-    private OrgTagCacheService orgTagCacheService;
+    private FileCentroidService fileCentroidService;
 
     @Autowired
-    private UserRepository userRepository;
+    private PermissionContextService permissionContextService;
 
     /**
      * 删除文档及其相关数据
@@ -77,7 +75,8 @@ public class DocumentService {
             
             // 1. 删除Elasticsearch中的数据
             try {
-                elasticsearchService.deleteByFileMd5(fileMd5);
+                retrievalStore.deleteByFileMd5(fileMd5);
+                fileCentroidService.delete(fileMd5);
                 logger.info("成功从Elasticsearch删除文档: {}", fileMd5);
             } catch (Exception e) {
                 logger.error("从Elasticsearch删除文档时出错: {}", fileMd5, e);
@@ -144,11 +143,8 @@ public class DocumentService {
         logger.info("获取用户可访问文件列表: userId={}", userId);
         
         try {
-            // 获取用户有效的组织标签（包含层级关系）
-            User user = userRepository.findByUsername(userId)
-                .orElseThrow(() -> new RuntimeException("用户不存在: " + userId));
-            
-            List<String> userEffectiveTags = orgTagCacheService.getUserEffectiveOrgTags(user.getUsername());
+            // 获取用户有效的组织标签（包含层级关系），与检索共用权限上下文缓存
+            List<String> userEffectiveTags = permissionContextService.getContext(userId).getEffectiveTags();
             logger.debug("用户有效组织标签: {}", userEffectiveTags);
             
             // 使用有效标签查询文件
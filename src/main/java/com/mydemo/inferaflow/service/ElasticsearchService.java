@@ -3,26 +3,57 @@ package com.mydemo.inferaflow.service;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch.core.BulkRequest;
 import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.Refresh;
 import co.elastic.clients.elasticsearch.core.DeleteByQueryRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.UpdateByQueryResponse;
 import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
 import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.mydemo.inferaflow.config.SearchProperties;
 import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.SearchResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 // Elasticsearch操作封装服务
 @Service
-public class ElasticsearchService {
+public class ElasticsearchService implements RetrievalStore {
 
     private static final Logger logger = LoggerFactory.getLogger(ElasticsearchService.class);
 
+    // SearchResult 需要的 _source 字段，不包含向量
+    private static final List<String> SOURCE_FIELDS =
+            List.of("fileMd5", "chunkId", "textContent", "userId", "orgTag", "public");
+
+    // 与 AclPrincipalUtils 的主体格式一致：u:<用户ID>、org:<标签>、public
+    private static final String ACL_BACKFILL_SCRIPT =
+            "List acl = new ArrayList();" +
+            "if (ctx._source.userId != null) { acl.add('u:' + ctx._source.userId); }" +
+            "if (ctx._source.orgTag != null) { acl.add('org:' + ctx._source.orgTag); }" +
+            "if (ctx._source['public'] == true) { acl.add('public'); }" +
+            "ctx._source.acl = acl;";
+
     @Autowired
     private ElasticsearchClient esClient;
 
+    @Autowired
+    private SearchProperties searchProperties;
+
+    @Autowired
+    private IndexGenerationService indexGenerationService;
+
+    @Autowired
+    private KnnQueryPlanner knnQueryPlanner;
+
     /**
      * 批量索引文档到Elasticsearch中
      * 通过接收一个EsDocument对象列表，将这些文档批量索引到名为"knowledge_base"的索引中
@@ -30,6 +61,7 @@ public class ElasticsearchService {
      *
      * @param documents 文档列表，每个文档都将被索引到Elasticsearch中
      */
+    @Override
     public void bulkIndex(List<EsDocument> documents) {
         try {
             logger.info("开始批量索引文档到Elasticsearch，文档数量: {}", documents.size());
@@ -44,7 +76,8 @@ public class ElasticsearchService {
                     .toList();
 
             // 创建BulkRequest对象，并将批量操作列表添加到请求中
-            BulkRequest request = BulkRequest.of(b -> b.operations(bulkOperations));
+            // 等待刷新后再返回，保证递增代数之后的检索能读到新文档，否则刷新窗口内的旧结果会以新代数写入结果缓存
+            BulkRequest request = BulkRequest.of(b -> b.operations(bulkOperations).refresh(Refresh.WaitFor));
             
             // 执行批量索引操作
             BulkResponse response = esClient.bulk(request);
@@ -61,6 +94,11 @@ public class ElasticsearchService {
             } else {
                 logger.info("批量索引成功完成，文档数量: {}", documents.size());
             }
+            // 递增写入文档涉及的权限主体代数，使相关检索结果缓存失效
+            indexGenerationService.bump(documents.stream()
+                    .filter(doc -> doc.getAcl() != null)
+                    .flatMap(doc -> doc.getAcl().stream())
+                    .collect(Collectors.toSet()));
         } catch (Exception e) {
             logger.error("批量索引失败，文档数量: {}", documents.size(), e);
             // 如果发生异常，抛出运行时异常，表明批量索引失败
@@ -68,19 +106,118 @@ public class ElasticsearchService {
         }
     }
 
+    /**
+     * 为缺少 acl 字段的存量文档回填权限主体
+     * 规则与 AclPrincipalUtils.documentPrincipals 保持一致
+     *
+     * @return 更新的文档数量
+     */
+    public long backfillAcl() {
+        // update_by_query 基于 _source 重建文档，向量不在 _source 中时会被丢弃
+        if (searchProperties.getIndex().isExcludeVectorSource()) {
+            throw new IllegalStateException("vector 已排除出 _source，无法原地回填 acl，请重新向量化文件");
+        }
+        try {
+            logger.info("开始回填存量文档的 acl 字段");
+            UpdateByQueryResponse response = esClient.updateByQuery(u -> u
+                    .index("knowledge_base")
+                    .query(q -> q.bool(b -> b.mustNot(mn -> mn.exists(e -> e.field("acl")))))
+                    .script(s -> s.inline(i -> i
+                            .lang("painless")
+                            .source(ACL_BACKFILL_SCRIPT)
+                    ))
+                    .conflicts(Conflicts.Proceed)
+                    .refresh(true)
+            );
+            long updated = response.updated() != null ? response.updated() : 0L;
+            logger.info("acl 字段回填完成，更新文档数量: {}, 版本冲突: {}", updated, response.versionConflicts());
+            return updated;
+        } catch (Exception e) {
+            logger.error("acl 字段回填失败", e);
+            throw new RuntimeException("acl 字段回填失败", e);
+        }
+    }
+
     /**
      * 根据file_md5删除文档
      * @param fileMd5 文件指纹
      */
+    @Override
     public void deleteByFileMd5(String fileMd5) {
         try {
             DeleteByQueryRequest request = DeleteByQueryRequest.of(d -> d
                     .index("knowledge_base")
                     .query(q -> q.term(t -> t.field("fileMd5").value(fileMd5)))
+                    // 删除结果可见后再递增代数，原因同 bulkIndex
+                    .refresh(true)
             );
             esClient.deleteByQuery(request);
+            // 删除时不再持有文档权限信息，递增全局代数
+            indexGenerationService.bumpGlobal();
         } catch (Exception e) {
             throw new RuntimeException("删除文档失败", e);
         }
     }
+
+    @Override
+    public List<SearchResult> lexicalSearch(String query, PermissionContext context, int size) {
+        try {
+            SearchResponse<EsDocument> response = esClient.search(s -> s
+                    .index("knowledge_base")
+                    .query(q -> q.bool(b -> b
+                            .must(m -> m.match(ma -> ma.field("textContent").query(query)))
+                            .filter(context.getFilter())
+                    ))
+                    .source(src -> src.filter(f -> f.includes(SOURCE_FIELDS)))
+                    .size(size),
+                    EsDocument.class
+            );
+            return toSearchResults(response);
+        } catch (Exception e) {
+            throw new RuntimeException("BM25 召回失败", e);
+        }
+    }
+
+    @Override
+    public List<SearchResult> vectorSearch(float[] queryVector, PermissionContext context, int k, int numCandidates) {
+        List<Float> vector = new ArrayList<>(queryVector.length);
+        for (float v : queryVector) {
+            vector.add(v);
+        }
+        int recallK = knnQueryPlanner.recallK(k);
+        try {
+            SearchResponse<EsDocument> response = esClient.search(s -> {
+                        s.index("knowledge_base")
+                                .knn(kn -> kn
+                                        .field(knnQueryPlanner.field())
+                                        .queryVector(knnQueryPlanner.queryVector(vector))
+                                        .k(recallK)
+                                        .numCandidates(Math.max(recallK, numCandidates))
+                                        .filter(context.getFilter())
+                                )
+                                .source(src -> src.filter(f -> f.includes(SOURCE_FIELDS)))
+                                .size(k);
+                        if (knnQueryPlanner.needsExactRescore()) {
+                            s.rescore(knnQueryPlanner.exactRescore(vector, recallK));
+                        }
+                        return s;
+                    }, EsDocument.class
+            );
+            return toSearchResults(response);
+        } catch (Exception e) {
+            throw new RuntimeException("KNN 召回失败", e);
+        }
+    }
+
+    private List<SearchResult> toSearchResults(SearchResponse<EsDocument> response) {
+        List<SearchResult> results = new ArrayList<>(response.hits().hits().size());
+        for (Hit<EsDocument> hit : response.hits().hits()) {
+            EsDocument source = hit.source();
+            if (source != null) {
+                results.add(new SearchResult(source.getFileMd5(), source.getChunkId(), source.getTextContent(),
+                        hit.score(), source.getUserId(), source.getOrgTag(), source.isPublic()));
+            }
+        }
+        return results;
+    }
 }
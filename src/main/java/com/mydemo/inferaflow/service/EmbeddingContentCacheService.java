@@ -0,0 +1,169 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.client.ApiRateLimiter;
+import com.mydemo.inferaflow.client.EmbeddingClient;
+import com.mydemo.inferaflow.entity.IngestEmbeddings;
+import com.mydemo.inferaflow.utils.VectorCodecUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入库向量内容寻址缓存
+ * 以 hash(模型ID, 向量维度, 分块原文) 为键，在 Redis 中保存小端序 float16 字节（2048 维约 4KB/分块），
+ * 每个分量的相对误差不超过 2^-11（约 4.9e-4，见 VectorCodecUtils.toHalfBytes）；
+ * 重复上传、相近版本和公共模板中的相同分块直接复用已有向量，只有未命中的文本才调用向量 API。
+ * 与查询向量缓存不同，这里不做文本归一化，只有原文完全一致的分块才视为相同内容。
+ * 缓存体积随入库分块数线性增长且与会话、组织标签缓存共用 Redis，默认关闭；
+ * 开启前需为 Redis 配置 maxmemory 与淘汰策略，或改用独立的 Redis 实例
+ */
+@Service
+public class EmbeddingContentCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingContentCacheService.class);
+
+    // 前缀包含编码格式，格式变化时旧数据自然失效
+    private static final String REDIS_KEY_PREFIX = "embedding:content:f16:";
+
+    // 单次 MGET / pipeline 的键数量上限，避免超大文档一次读写过多数据
+    private static final int REDIS_BATCH_SIZE = 500;
+
+    @Value("${embedding.content-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${embedding.content-cache.ttl-days:7}")
+    private long ttlDays;
+
+    @Autowired
+    private EmbeddingClient embeddingClient;
+
+    @Autowired
+    @Qualifier("binaryRedisTemplate")
+    private RedisTemplate<String, byte[]> binaryRedisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 生成入库分块的向量，命中缓存的分块不再调用向量 API
+     *
+     * @param texts 分块原文
+     * @return 与输入顺序一致的向量及缓存命中情况
+     */
+    public IngestEmbeddings embedAll(List<String> texts) {
+        if (!enabled) {
+            return new IngestEmbeddings(embeddingClient.embed(texts, ApiRateLimiter.Priority.BULK), 0, texts.size());
+        }
+
+        List<String> keys = texts.stream().map(this::buildKey).toList();
+        float[][] vectors = new float[texts.size()][];
+        int hits = readAll(keys, vectors);
+
+        // 未命中的分块按内容去重，同一文档内重复的模板文本只生成一次
+        Map<String, Integer> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (vectors[i] == null) {
+                missing.putIfAbsent(keys.get(i), i);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<String> toEmbed = missing.values().stream().map(texts::get).toList();
+            // 入库向量化为批量优先级，让位于查询向量与对话
+            List<float[]> embedded = embeddingClient.embed(toEmbed, ApiRateLimiter.Priority.BULK);
+            if (embedded == null || embedded.size() != toEmbed.size()) {
+                throw new RuntimeException("生成的向量数量与输入不一致");
+            }
+            Map<String, float[]> byKey = new LinkedHashMap<>();
+            int j = 0;
+            for (String key : missing.keySet()) {
+                byKey.put(key, embedded.get(j++));
+            }
+            for (int i = 0; i < texts.size(); i++) {
+                if (vectors[i] == null) {
+                    vectors[i] = byKey.get(keys.get(i));
+                }
+            }
+            writeAll(byKey);
+        }
+
+        meterRegistry.counter("embedding.ingest.cache.requests", "result", "hit").increment(hits);
+        meterRegistry.counter("embedding.ingest.cache.requests", "result", "miss").increment(texts.size() - hits);
+        return new IngestEmbeddings(Arrays.asList(vectors), hits, missing.size());
+    }
+
+    /**
+     * 分批 MGET 读取缓存，命中的向量写入 vectors，返回命中数量；读取失败的批次视为未命中
+     */
+    private int readAll(List<String> keys, float[][] vectors) {
+        int hits = 0;
+        for (int start = 0; start < keys.size(); start += REDIS_BATCH_SIZE) {
+            int end = Math.min(start + REDIS_BATCH_SIZE, keys.size());
+            try {
+                List<String> redisKeys = keys.subList(start, end).stream().map(key -> REDIS_KEY_PREFIX + key).toList();
+                List<byte[]> values = binaryRedisTemplate.opsForValue().multiGet(redisKeys);
+                if (values == null) {
+                    continue;
+                }
+                for (int i = start; i < end; i++) {
+                    byte[] bytes = values.get(i - start);
+                    float[] vector = bytes != null ? VectorCodecUtils.fromHalfBytes(bytes) : null;
+                    // 维度不符的旧数据视为未命中
+                    if (vector != null && vector.length == embeddingClient.getDimension()) {
+                        vectors[i] = vector;
+                        hits++;
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("批量读取内容向量缓存失败: {}", e.getMessage());
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 通过 pipeline 分批写入新生成的向量，写入失败只记录日志
+     */
+    private void writeAll(Map<String, float[]> byKey) {
+        List<Map.Entry<String, float[]>> entries = new ArrayList<>(byKey.entrySet());
+        Expiration expiration = Expiration.from(ttlDays, TimeUnit.DAYS);
+        for (int start = 0; start < entries.size(); start += REDIS_BATCH_SIZE) {
+            List<Map.Entry<String, float[]>> batch = entries.subList(start, Math.min(start + REDIS_BATCH_SIZE, entries.size()));
+            try {
+                binaryRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Map.Entry<String, float[]> entry : batch) {
+                        connection.stringCommands().set(
+                                (REDIS_KEY_PREFIX + entry.getKey()).getBytes(StandardCharsets.UTF_8),
+                                VectorCodecUtils.toHalfBytes(entry.getValue()),
+                                expiration,
+                                RedisStringCommands.SetOption.upsert());
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                logger.warn("写入内容向量缓存失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private String buildKey(String text) {
+        return embeddingClient.getModelId() + ":" + embeddingClient.getDimension() + ":"
+                + DigestUtils.sha256Hex(text == null ? "" : text);
+    }
+}
@@ -0,0 +1,196 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.client.EmbeddingClient;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量请求微批处理器
+ * 并发的单条查询向量请求先进入队列，等待最多 max-wait-ms 或凑满 max-batch-size 条后合并为一次向量 API 调用，
+ * 再把各自的向量回填到调用方的 future；同一批次内的相同文本只发送一次。
+ * 批次通过 EmbeddingClient.embedAsync 非阻塞发送，调度线程不会被 API 调用阻塞
+ */
+@Service
+public class EmbeddingMicroBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingMicroBatcher.class);
+
+    @Value("${embedding.micro-batch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${embedding.micro-batch.max-wait-ms:5}")
+    private long maxWaitMs;
+
+    @Value("${embedding.micro-batch.max-batch-size:10}")
+    private int maxBatchSize;
+
+    @Autowired
+    private EmbeddingClient embeddingClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Object lock = new Object();
+    private final List<PendingRequest> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private ScheduledExecutorService scheduler;
+    private DistributionSummary fillRatio;
+    private Timer queueDelay;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "embedding-micro-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fillRatio = DistributionSummary.builder("embedding.microbatch.fill_ratio")
+                .description("微批实际条数占 max-batch-size 的比例")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        queueDelay = Timer.builder("embedding.microbatch.queue_delay")
+                .description("请求从入队到随批次发出的等待时间")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        logger.info("向量微批处理初始化 - 启用: {}, 最长等待: {}ms, 批次上限: {}", enabled, maxWaitMs, maxBatchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        List<PendingRequest> remaining;
+        synchronized (lock) {
+            remaining = drain();
+        }
+        // 关闭前发出剩余请求，避免调用方一直等待
+        if (!remaining.isEmpty()) {
+            dispatch(remaining);
+        }
+    }
+
+    /**
+     * 生成单条文本的向量（阻塞），未启用微批时直接调用 EmbeddingClient
+     *
+     * @param text 输入文本
+     * @return 向量
+     */
+    public float[] embed(String text) {
+        try {
+            return submit(text).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("向量生成失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * 提交单条文本，随下一个批次发送
+     *
+     * @param text 输入文本
+     * @return 完成时为该文本的向量
+     */
+    public CompletableFuture<float[]> submit(String text) {
+        if (!enabled || maxBatchSize <= 1) {
+            return embeddingClient.embedAsync(List.of(text)).map(vectors -> vectors.get(0)).toFuture();
+        }
+        PendingRequest request = new PendingRequest(text);
+        List<PendingRequest> ready = null;
+        synchronized (lock) {
+            pending.add(request);
+            if (pending.size() >= maxBatchSize) {
+                ready = drain();
+            } else if (pending.size() == 1) {
+                // 批次的第一条请求开始计时
+                scheduledFlush = scheduler.schedule(this::flushScheduled, maxWaitMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (ready != null) {
+            dispatch(ready);
+        }
+        return request.future;
+    }
+
+    private void flushScheduled() {
+        List<PendingRequest> ready;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            ready = drain();
+        }
+        dispatch(ready);
+    }
+
+    /**
+     * 取出当前队列中的全部请求，需持有 lock
+     */
+    private List<PendingRequest> drain() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        List<PendingRequest> batch = new ArrayList<>(pending);
+        pending.clear();
+        return batch;
+    }
+
+    private void dispatch(List<PendingRequest> batch) {
+        long now = System.nanoTime();
+        Map<String, List<PendingRequest>> byText = new LinkedHashMap<>();
+        for (PendingRequest request : batch) {
+            queueDelay.record(now - request.enqueuedAt, TimeUnit.NANOSECONDS);
+            byText.computeIfAbsent(request.text, k -> new ArrayList<>()).add(request);
+        }
+        fillRatio.record((double) batch.size() / maxBatchSize);
+        List<String> texts = new ArrayList<>(byText.keySet());
+        logger.debug("发送向量微批，请求数: {}, 去重后文本数: {}", batch.size(), texts.size());
+
+        embeddingClient.embedAsync(texts).subscribe(vectors -> {
+            if (vectors.size() != texts.size()) {
+                RuntimeException error = new RuntimeException("微批生成的向量数量与输入不一致");
+                batch.forEach(request -> request.future.completeExceptionally(error));
+                return;
+            }
+            int i = 0;
+            for (List<PendingRequest> group : byText.values()) {
+                float[] vector = vectors.get(i++);
+                group.forEach(request -> request.future.complete(vector));
+            }
+        }, error -> {
+            logger.warn("向量微批调用失败，请求数: {}: {}", batch.size(), error.getMessage());
+            batch.forEach(request -> request.future.completeExceptionally(error));
+        });
+    }
+
+    private static class PendingRequest {
+        private final String text;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<float[]> future = new CompletableFuture<>();
+
+        PendingRequest(String text) {
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.mydemo.inferaflow.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.SearchResult;
+import com.mydemo.inferaflow.utils.AclPrincipalUtils;
+import com.mydemo.inferaflow.utils.FloatVectorMath;
+import com.mydemo.inferaflow.utils.VectorSegment;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 小范围用户的精确向量检索
+ * 每个权限主体（u:<用户ID>、org:<标签>、public）的向量存放在一个堆外 VectorSegment 中，
+ * 检索时对用户可见的所有向量段做 SIMD 暴力计算，得到精确 top-k。
+ * 向量段按需从 ES 加载，以索引代数校验新鲜度，超出内存上限时按 LRU 淘汰。
+ * 加载在独立线程中进行，检索最多等待 loadWaitMs，未就绪时本次回退到 ES KNN
+ */
+@Service
+public class ExactKnnService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExactKnnService.class);
+
+    private static final List<String> LOAD_FIELDS =
+            List.of("fileMd5", "chunkId", "textContent", "userId", "orgTag", "public", "vector");
+
+    private static final int LOAD_THREADS = 2;
+
+    @Autowired
+    private ElasticsearchClient esClient;
+
+    @Autowired
+    private IndexGenerationService indexGenerationService;
+
+    @Autowired
+    private SearchProperties searchProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, PrincipalSegment> segments;
+
+    // 进行中的加载，键为 主体@代数快照，同一主体同一代数只加载一次
+    private final ConcurrentHashMap<String, CompletableFuture<PrincipalSegment>> loading = new ConcurrentHashMap<>();
+    private ExecutorService loader;
+
+    @PostConstruct
+    public void init() {
+        SearchProperties.ExactKnn config = searchProperties.getExactKnn();
+        segments = Caffeine.newBuilder()
+                .maximumWeight(config.getMaxMemoryMb() * 1024 * 1024)
+                .weigher((String principal, PrincipalSegment segment) -> (int) Math.min(Integer.MAX_VALUE, segment.bytes()))
+                .expireAfterWrite(Duration.ofSeconds(config.getSegmentTtlSeconds()))
+                .build();
+        loader = Executors.newFixedThreadPool(LOAD_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "exact-knn-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        meterRegistry.gauge("search.exact_knn.segment.bytes", segments,
+                cache -> cache.asMap().values().stream().mapToLong(PrincipalSegment::bytes).sum());
+        logger.info("精确向量检索初始化 - 启用: {}, 分块上限: {}, 内存上限: {}MB, SIMD: {}",
+                config.isEnabled(), config.getMaxChunks(), config.getMaxMemoryMb(), FloatVectorMath.isSimdEnabled());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    /**
+     * 是否可用：需要开启配置、使用 ES 存储，且 _source 中保留了向量
+     */
+    public boolean isEnabled() {
+        return searchProperties.getExactKnn().isEnabled()
+                && searchProperties.getStore().getType() == SearchProperties.StoreType.ELASTICSEARCH
+                && !searchProperties.getIndex().isExcludeVectorSource();
+    }
+
+    /**
+     * 权限范围内的分块数是否适合走精确检索
+     *
+     * @param scopeChunkCount 权限过滤后的分块数
+     */
+    public boolean accepts(long scopeChunkCount) {
+        return isEnabled() && scopeChunkCount <= searchProperties.getExactKnn().getMaxChunks();
+    }
+
+    /**
+     * 在用户可见的向量段上做精确 top-k 检索
+     *
+     * @param queryVector 查询向量
+     * @param context     用户权限上下文
+     * @param k           返回数量
+     * @param timeoutMs   剩余检索预算，与 loadWaitMs 取较小值作为等待向量段加载的上限
+     * @return 按相似度降序的结果，分数与 ES cosine 一致为 (1 + cos) / 2；任一向量段不可用或未在等待上限内加载完成时返回 null，由调用方回退到 ES KNN
+     */
+    public List<SearchResult> search(float[] queryVector, PermissionContext context, int k, long timeoutMs) {
+        if (k <= 0) {
+            return List.of();
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            // 先为所有主体发起加载再统一等待，多个主体的向量段并行加载
+            List<CompletableFuture<PrincipalSegment>> futures = new ArrayList<>(context.getPrincipals().size());
+            for (String principal : context.getPrincipals()) {
+                CompletableFuture<PrincipalSegment> future = segment(principal);
+                if (future == null) {
+                    return null;
+                }
+                futures.add(future);
+            }
+            long waitMs = Math.max(0L, Math.min(timeoutMs, searchProperties.getExactKnn().getLoadWaitMs()));
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+            List<PrincipalSegment> visible = new ArrayList<>(futures.size());
+            for (CompletableFuture<PrincipalSegment> future : futures) {
+                PrincipalSegment segment = await(future, deadline);
+                if (segment == null || segment.oversized) {
+                    logger.debug("向量段不可用或仍在加载，回退到 ES KNN");
+                    return null;
+                }
+                visible.add(segment);
+            }
+
+            float[] query = queryVector.clone();
+            FloatVectorMath.normalize(query);
+
+            // 小顶堆保留当前 top-k；同一分块可能同时属于多个主体（如本人上传且公开），按 id 去重
+            PriorityQueue<ScoredRow> heap = new PriorityQueue<>(k + 1, Comparator.comparingDouble(r -> r.score));
+            Set<String> admitted = new HashSet<>();
+            for (PrincipalSegment segment : visible) {
+                segment.collect(query, k, heap, admitted);
+            }
+
+            List<ScoredRow> rows = new ArrayList<>(heap);
+            rows.sort(Comparator.comparingDouble((ScoredRow r) -> r.score).reversed());
+            List<SearchResult> results = new ArrayList<>(rows.size());
+            for (ScoredRow row : rows) {
+                ChunkMeta meta = row.segment.chunks[row.row];
+                results.add(new SearchResult(meta.fileMd5, meta.chunkId, meta.textContent,
+                        (1.0d + row.score) / 2.0d, meta.userId, meta.orgTag, meta.isPublic));
+            }
+            return results;
+        } finally {
+            sample.stop(meterRegistry.timer("search.exact_knn.latency"));
+        }
+    }
+
+    /**
+     * 清空所有向量段
+     */
+    public void invalidateAll() {
+        segments.invalidateAll();
+    }
+
+    /**
+     * 获取主体的向量段，代数变化后在加载线程中重新加载；Redis 不可用时无法确认新鲜度，返回 null
+     */
+    private CompletableFuture<PrincipalSegment> segment(String principal) {
+        String stamp = indexGenerationService.currentStamp(List.of(principal));
+        if (stamp == null) {
+            return null;
+        }
+        PrincipalSegment cached = segments.getIfPresent(principal);
+        if (cached != null && cached.stamp.equals(stamp)) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        // 同一主体同一代数的并发请求共享一次加载
+        String loadKey = principal + "@" + stamp;
+        CompletableFuture<PrincipalSegment> created = new CompletableFuture<>();
+        CompletableFuture<PrincipalSegment> existing = loading.putIfAbsent(loadKey, created);
+        if (existing != null) {
+            return existing;
+        }
+        loader.execute(() -> {
+            PrincipalSegment segment = null;
+            try {
+                segment = load(principal, stamp);
+                if (segment != null) {
+                    segments.put(principal, segment);
+                }
+            } finally {
+                loading.remove(loadKey, created);
+                created.complete(segment);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * 在截止时间前等待向量段加载完成，超时返回 null，加载继续在后台完成并写入缓存
+     */
+    private PrincipalSegment await(CompletableFuture<PrincipalSegment> future, long deadlineNanos) {
+        try {
+            return future.get(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            logger.warn("等待向量段加载失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 按 (fileMd5, chunkId) 排序分页拉取主体的全部分块，超过分块上限时记为 oversized
+     */
+    private PrincipalSegment load(String principal, String stamp) {
+        SearchProperties.ExactKnn config = searchProperties.getExactKnn();
+        int maxChunks = config.getMaxChunks();
+        int pageSize = config.getLoadPageSize();
+        Query filter = principalQuery(principal);
+        long start = System.currentTimeMillis();
+        try {
+            List<Hit<EsDocument>> hits = new ArrayList<>();
+            List<FieldValue> searchAfter = null;
+            while (true) {
+                final List<FieldValue> after = searchAfter;
+                SearchResponse<EsDocument> response = esClient.search(s -> {
+                    s.index("knowledge_base")
+                            .query(q -> q.bool(b -> b.filter(filter)))
+                            .source(src -> src.filter(f -> f.includes(LOAD_FIELDS)))
+                            .sort(so -> so.field(f -> f.field("fileMd5").order(SortOrder.Asc)))
+                            .sort(so -> so.field(f -> f.field("chunkId").order(SortOrder.Asc)))
+                            .size(pageSize);
+                    if (after != null) {
+                        s.searchAfter(after);
+                    }
+                    return s;
+                }, EsDocument.class);
+                List<Hit<EsDocument>> page = response.hits().hits();
+                hits.addAll(page);
+                if (hits.size() > maxChunks) {
+                    logger.info("权限主体 {} 的分块数超过精确检索上限 {}，不加载向量段", principal, maxChunks);
+                    return PrincipalSegment.oversized(stamp);
+                }
+                if (page.size() < pageSize) {
+                    break;
+                }
+                searchAfter = page.get(page.size() - 1).sort();
+            }
+
+            PrincipalSegment segment = PrincipalSegment.build(stamp, hits);
+            logger.info("已加载向量段 - 主体: {}, 分块数: {}, 大小: {}KB, 耗时: {}ms",
+                    principal, segment.chunks.length, segment.bytes() / 1024, System.currentTimeMillis() - start);
+            return segment;
+        } catch (Exception e) {
+            logger.warn("加载权限主体 {} 的向量段失败: {}", principal, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 单个主体的过滤条件，与 PermissionContextService 的两种权限过滤方式保持一致
+     */
+    private Query principalQuery(String principal) {
+        if (searchProperties.getAcl().isPrincipalFilterEnabled()) {
+            return Query.of(q -> q.term(t -> t.field("acl").value(principal)));
+        }
+        if (principal.startsWith(AclPrincipalUtils.USER_PREFIX)) {
+            String userId = principal.substring(AclPrincipalUtils.USER_PREFIX.length());
+            return Query.of(q -> q.term(t -> t.field("userId").value(userId)));
+        }
+        if (principal.startsWith(AclPrincipalUtils.ORG_PREFIX)) {
+            String orgTag = principal.substring(AclPrincipalUtils.ORG_PREFIX.length());
+            return Query.of(q -> q.term(t -> t.field("orgTag").value(orgTag)));
+        }
+        return Query.of(q -> q.term(t -> t.field("public").value(true)));
+    }
+
+    /**
+     * 一个权限主体的向量段及其分块元数据，元数据与向量按行对应
+     */
+    private static class PrincipalSegment {
+        private final String stamp;
+        private final boolean oversized;
+        private final VectorSegment vectors;
+        private final ChunkMeta[] chunks;
+
+        private PrincipalSegment(String stamp, boolean oversized, VectorSegment vectors, ChunkMeta[] chunks) {
+            this.stamp = stamp;
+            this.oversized = oversized;
+            this.vectors = vectors;
+            this.chunks = chunks;
+        }
+
+        static PrincipalSegment oversized(String stamp) {
+            return new PrincipalSegment(stamp, true, VectorSegment.of(List.of()), new ChunkMeta[0]);
+        }
+
+        static PrincipalSegment build(String stamp, List<Hit<EsDocument>> hits) {
+            List<Hit<EsDocument>> withVector = hits.stream()
+                    .filter(hit -> hit.source() != null && hit.source().getVector() != null)
+                    .toList();
+            VectorSegment vectors = VectorSegment.of(withVector.stream().map(hit -> hit.source().getVector()).toList());
+            ChunkMeta[] chunks = new ChunkMeta[withVector.size()];
+            for (int row = 0; row < chunks.length; row++) {
+                Hit<EsDocument> hit = withVector.get(row);
+                EsDocument source = hit.source();
+                chunks[row] = new ChunkMeta(hit.id(), source.getFileMd5(), source.getChunkId(),
+                        source.getTextContent(), source.getUserId(), source.getOrgTag(), source.isPublic());
+            }
+            return new PrincipalSegment(stamp, false, vectors, chunks);
+        }
+
+        long bytes() {
+            return vectors.bytes();
+        }
+
+        /**
+         * 计算整段相似度，将优于堆顶的行放入 top-k 堆
+         */
+        void collect(float[] query, int k, PriorityQueue<ScoredRow> heap, Set<String> admitted) {
+            if (k <= 0) {
+                return;
+            }
+            float[] scores = new float[vectors.size()];
+            vectors.scores(query, scores);
+            for (int row = 0; row < scores.length; row++) {
+                float score = scores[row];
+                if (heap.size() >= k && score <= heap.peek().score) {
+                    continue;
+                }
+                if (!admitted.add(chunks[row].id)) {
+                    continue;
+                }
+                heap.offer(new ScoredRow(this, row, score));
+                if (heap.size() > k) {
+                    heap.poll();
+                }
+            }
+        }
+    }
+
+    private static class ChunkMeta {
+        private final String id;
+        private final String fileMd5;
+        private final Integer chunkId;
+        private final String textContent;
+        private final String userId;
+        private final String orgTag;
+        private final boolean isPublic;
+
+        ChunkMeta(String id, String fileMd5, Integer chunkId, String textContent,
+                  String userId, String orgTag, boolean isPublic) {
+            this.id = id;
+            this.fileMd5 = fileMd5;
+            this.chunkId = chunkId;
+            this.textContent = textContent;
+            this.userId = userId;
+            this.orgTag = orgTag;
+            this.isPublic = isPublic;
+        }
+    }
+
+    private static class ScoredRow {
+        private final PrincipalSegment segment;
+        private final int row;
+        private final float score;
+
+        ScoredRow(PrincipalSegment segment, int row, float score) {
+            this.segment = segment;
+            this.row = row;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.mydemo.inferaflow.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeAggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeAggregationSource;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeBucket;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.FileCentroidDocument;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.RelatedFile;
+import com.mydemo.inferaflow.model.FileUpload;
+import com.mydemo.inferaflow.repository.FileUploadRepository;
+import com.mydemo.inferaflow.utils.FloatVectorMath;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 文件质心服务
+ * 向量化时为每个文件写入一个质心向量到 knowledge_files 索引，权限字段与分块一致；
+ * 用于两阶段检索（先召回候选文件，再在候选文件内做分块 KNN）以及相关文档推荐，不额外调用向量 API。
+ * 存量文件可通过 backfill 由已有分块向量计算质心；质心未覆盖全部文件前两阶段检索不限定候选文件
+ */
+@Service
+public class FileCentroidService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileCentroidService.class);
+
+    private static final String INDEX = "knowledge_files";
+    private static final List<String> RESULT_FIELDS = List.of("fileMd5", "userId", "orgTag", "public");
+    private static final List<String> BACKFILL_FIELDS = List.of("vector", "modelVersion", "userId", "orgTag", "public");
+
+    // 回填时每页处理的文件数与分块数
+    private static final int BACKFILL_FILE_PAGE_SIZE = 100;
+    private static final int BACKFILL_CHUNK_PAGE_SIZE = 500;
+
+    // 质心覆盖率检查结果的缓存时间；cardinality 在该精度阈值内近似精确
+    private static final long COVERAGE_CHECK_INTERVAL_MS = 60_000L;
+    private static final int CARDINALITY_PRECISION_THRESHOLD = 40000;
+
+    private volatile boolean coverageComplete;
+    private volatile long coverageCheckedAt;
+    // 同一时间只有一个覆盖率检查在后台执行，检索线程只读取上一次的结果
+    private final AtomicBoolean coverageRefreshing = new AtomicBoolean();
+    private ExecutorService coverageChecker;
+
+    @Autowired
+    private ElasticsearchClient esClient;
+
+    @Autowired
+    private PermissionContextService permissionContextService;
+
+    @Autowired
+    private FileUploadRepository fileUploadRepository;
+
+    @Autowired
+    private SearchProperties searchProperties;
+
+    @PostConstruct
+    public void init() {
+        coverageChecker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "centroid-coverage");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coverageChecker.shutdownNow();
+    }
+
+    /**
+     * 文件质心仅在 ES 存储下维护
+     */
+    public boolean isAvailable() {
+        return searchProperties.getStore().getType() == SearchProperties.StoreType.ELASTICSEARCH;
+    }
+
+    /**
+     * 质心是否已覆盖知识库中的全部文件；
+     * 未覆盖时两阶段检索若只在有质心的文件内做 KNN，存量文件会从向量召回中消失。
+     * 检查结果超过 COVERAGE_CHECK_INTERVAL_MS 时在后台刷新，调用方不等待，首次检查完成前返回 false
+     */
+    public boolean isCoverageComplete() {
+        if (System.currentTimeMillis() - coverageCheckedAt >= COVERAGE_CHECK_INTERVAL_MS
+                && coverageRefreshing.compareAndSet(false, true)) {
+            try {
+                coverageChecker.execute(() -> {
+                    try {
+                        refreshCoverage();
+                    } finally {
+                        coverageRefreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                coverageRefreshing.set(false);
+            }
+        }
+        return coverageComplete;
+    }
+
+    private void refreshCoverage() {
+        long now = System.currentTimeMillis();
+        boolean complete;
+        try {
+            long centroids = esClient.count(c -> c.index(INDEX)).count();
+            SearchResponse<Void> response = esClient.search(s -> s
+                    .index("knowledge_base")
+                    .size(0)
+                    .aggregations("files", a -> a.cardinality(c -> c
+                            .field("fileMd5")
+                            .precisionThreshold(CARDINALITY_PRECISION_THRESHOLD))),
+                    Void.class
+            );
+            long files = response.aggregations().get("files").cardinality().value();
+            complete = centroids >= files;
+            if (!complete) {
+                logger.info("文件质心未覆盖全部文件（质心: {}, 文件: {}），两阶段检索暂不限定候选文件", centroids, files);
+            }
+        } catch (Exception e) {
+            logger.warn("检查文件质心覆盖率失败: {}", e.getMessage());
+            complete = false;
+        }
+        coverageComplete = complete;
+        coverageCheckedAt = now;
+    }
+
+    /**
+     * 为缺少质心的存量文件回填质心：按 fileMd5 读取已有分块向量做均值池化，不调用向量 API
+     *
+     * @return 回填的文件数量
+     */
+    public long backfill() {
+        if (!isAvailable()) {
+            throw new IllegalStateException("文件质心仅在 Elasticsearch 存储下维护");
+        }
+        if (searchProperties.getIndex().isExcludeVectorSource()) {
+            throw new IllegalStateException("vector 已排除出 _source，无法由分块向量回填质心，请重新向量化文件");
+        }
+        logger.info("开始回填存量文件质心");
+        long created = 0;
+        Map<String, FieldValue> after = null;
+        try {
+            while (true) {
+                final Map<String, FieldValue> afterKey = after;
+                SearchResponse<Void> response = esClient.search(s -> s
+                        .index("knowledge_base")
+                        .size(0)
+                        .aggregations("files", a -> a.composite(c -> {
+                            c.size(BACKFILL_FILE_PAGE_SIZE)
+                                    .sources(List.of(Map.of("fileMd5",
+                                            CompositeAggregationSource.of(cs -> cs.terms(t -> t.field("fileMd5"))))));
+                            if (afterKey != null) {
+                                c.after(afterKey);
+                            }
+                            return c;
+                        })),
+                        Void.class
+                );
+                CompositeAggregate files = response.aggregations().get("files").composite();
+                List<String> fileMd5s = new ArrayList<>();
+                for (CompositeBucket bucket : files.buckets().array()) {
+                    fileMd5s.add(bucket.key().get("fileMd5").stringValue());
+                }
+                Set<String> existing = existingCentroids(fileMd5s);
+                for (String fileMd5 : fileMd5s) {
+                    if (!existing.contains(fileMd5) && backfillFile(fileMd5)) {
+                        created++;
+                    }
+                }
+                if (fileMd5s.size() < BACKFILL_FILE_PAGE_SIZE || files.afterKey() == null || files.afterKey().isEmpty()) {
+                    break;
+                }
+                after = new HashMap<>(files.afterKey());
+            }
+        } catch (Exception e) {
+            logger.error("回填文件质心失败，已回填: {}", created, e);
+            throw new RuntimeException("回填文件质心失败", e);
+        }
+        // 回填后立即重新检查覆盖率
+        coverageCheckedAt = 0;
+        logger.info("文件质心回填完成，回填文件数量: {}", created);
+        return created;
+    }
+
+    private Set<String> existingCentroids(List<String> fileMd5s) throws Exception {
+        if (fileMd5s.isEmpty()) {
+            return Collections.emptySet();
+        }
+        SearchResponse<Void> response = esClient.search(s -> s
+                .index(INDEX)
+                .query(q -> q.ids(i -> i.values(fileMd5s)))
+                .source(src -> src.fetch(false))
+                .size(fileMd5s.size()),
+                Void.class
+        );
+        return response.hits().hits().stream().map(Hit::id).collect(Collectors.toCollection(HashSet::new));
+    }
+
+    /**
+     * 按 chunkId 分页读取单个文件的分块向量并写入质心，没有向量时跳过
+     */
+    private boolean backfillFile(String fileMd5) throws Exception {
+        List<float[]> vectors = new ArrayList<>();
+        EsDocument first = null;
+        List<FieldValue> searchAfter = null;
+        while (true) {
+            final List<FieldValue> afterValues = searchAfter;
+            SearchResponse<EsDocument> response = esClient.search(s -> {
+                s.index("knowledge_base")
+                        .query(q -> q.term(t -> t.field("fileMd5").value(fileMd5)))
+                        .source(src -> src.filter(f -> f.includes(BACKFILL_FIELDS)))
+                        .sort(so -> so.field(f -> f.field("chunkId").order(SortOrder.Asc)))
+                        .size(BACKFILL_CHUNK_PAGE_SIZE);
+                if (afterValues != null) {
+                    s.searchAfter(afterValues);
+                }
+                return s;
+            }, EsDocument.class);
+            List<Hit<EsDocument>> page = response.hits().hits();
+            for (Hit<EsDocument> hit : page) {
+                EsDocument doc = hit.source();
+                if (doc != null && doc.getVector() != null) {
+                    vectors.add(doc.getVector());
+                    if (first == null) {
+                        first = doc;
+                    }
+                }
+            }
+            if (page.size() < BACKFILL_CHUNK_PAGE_SIZE) {
+                break;
+            }
+            searchAfter = page.get(page.size() - 1).sort();
+        }
+        if (first == null) {
+            return false;
+        }
+        upsert(fileMd5, vectors, first.getModelVersion(), first.getUserId(), first.getOrgTag(), first.isPublic());
+        return true;
+    }
+
+    /**
+     * 计算并写入文件质心，失败不影响分块写入
+     *
+     * @param fileMd5      文件指纹
+     * @param vectors      文件所有分块的向量
+     * @param modelVersion 向量生成模型版本
+     * @param userId       上传用户ID
+     * @param orgTag       组织标签
+     * @param isPublic     是否公开
+     */
+    public void upsert(String fileMd5, List<float[]> vectors, String modelVersion,
+                       String userId, String orgTag, boolean isPublic) {
+        if (!isAvailable() || vectors.isEmpty()) {
+            return;
+        }
+        try {
+            FileCentroidDocument doc = new FileCentroidDocument(fileMd5, centroid(vectors), vectors.size(),
+                    modelVersion, userId, orgTag, isPublic);
+            esClient.index(i -> i.index(INDEX).id(fileMd5).document(doc));
+            logger.debug("已写入文件质心，fileMd5: {}, 分块数量: {}", fileMd5, vectors.size());
+        } catch (Exception e) {
+            logger.warn("写入文件质心失败，fileMd5: {}, 两阶段检索将不包含该文件: {}", fileMd5, e.getMessage());
+        }
+    }
+
+    /**
+     * 删除文件质心
+     *
+     * @param fileMd5 文件指纹
+     */
+    public void delete(String fileMd5) {
+        if (!isAvailable()) {
+            return;
+        }
+        try {
+            esClient.delete(d -> d.index(INDEX).id(fileMd5));
+        } catch (Exception e) {
+            logger.warn("删除文件质心失败，fileMd5: {}: {}", fileMd5, e.getMessage());
+        }
+    }
+
+    /**
+     * 第一阶段：按质心相似度召回用户可见的候选文件
+     *
+     * @param queryVector      查询向量
+     * @param permissionFilter 权限过滤条件（字段与分块索引一致）
+     * @param size             候选文件数量
+     * @return 候选文件指纹
+     */
+    public List<String> topFiles(List<Float> queryVector, Query permissionFilter, int size) {
+        // k 与 num_candidates 均不能超过 ES 的 num_candidates 上限
+        int maxNumCandidates = searchProperties.getKnn().getMaxNumCandidates();
+        int k = Math.min(size, maxNumCandidates);
+        int numCandidates = (int) Math.min((long) k * 5, maxNumCandidates);
+        try {
+            SearchResponse<FileCentroidDocument> response = esClient.search(s -> s
+                    .index(INDEX)
+                    .knn(kn -> kn
+                            .field("centroid")
+                            .queryVector(queryVector)
+                            .k(k)
+                            .numCandidates(numCandidates)
+                            .filter(permissionFilter)
+                    )
+                    .source(src -> src.filter(f -> f.includes("fileMd5")))
+                    .size(k),
+                    FileCentroidDocument.class
+            );
+            return response.hits().hits().stream()
+                    .map(Hit::id)
+                    .toList();
+        } catch (Exception e) {
+            throw new RuntimeException("文件质心召回失败", e);
+        }
+    }
+
+    /**
+     * 相关文档推荐：以指定文件的质心检索用户可见的相似文件
+     *
+     * @param fileMd5 源文件指纹
+     * @param userId  用户ID
+     * @param topK    返回数量
+     * @return 相关文件，源文件不可见或没有质心时返回空列表
+     */
+    public List<RelatedFile> related(String fileMd5, String userId, int topK) {
+        PermissionContext context = permissionContextService.getContext(userId);
+        try {
+            // 源文件本身也需要对用户可见
+            SearchResponse<FileCentroidDocument> source = esClient.search(s -> s
+                    .index(INDEX)
+                    .query(q -> q.bool(b -> b
+                            .filter(f -> f.ids(i -> i.values(fileMd5)))
+                            .filter(context.getFilter())
+                    ))
+                    .size(1),
+                    FileCentroidDocument.class
+            );
+            if (source.hits().hits().isEmpty() || source.hits().hits().get(0).source() == null) {
+                return Collections.emptyList();
+            }
+            float[] centroid = source.hits().hits().get(0).source().getCentroid();
+            List<Float> queryVector = new ArrayList<>(centroid.length);
+            for (float v : centroid) {
+                queryVector.add(v);
+            }
+
+            SearchResponse<FileCentroidDocument> response = esClient.search(s -> s
+                    .index(INDEX)
+                    .knn(kn -> kn
+                            .field("centroid")
+                            .queryVector(queryVector)
+                            .k(topK + 1)
+                            .numCandidates(Math.min((topK + 1) * 10, searchProperties.getKnn().getMaxNumCandidates()))
+                            .filter(f -> f.bool(b -> b
+                                    .filter(context.getFilter())
+                                    .mustNot(mn -> mn.ids(i -> i.values(fileMd5)))
+                            ))
+                    )
+                    .source(src -> src.filter(f -> f.includes(RESULT_FIELDS)))
+                    .size(topK),
+                    FileCentroidDocument.class
+            );
+
+            List<RelatedFile> results = new ArrayList<>();
+            for (Hit<FileCentroidDocument> hit : response.hits().hits()) {
+                FileCentroidDocument doc = hit.source();
+                if (doc != null) {
+                    results.add(new RelatedFile(doc.getFileMd5(), null, hit.score(),
+                            doc.getUserId(), doc.getOrgTag(), doc.isPublic()));
+                }
+            }
+            attachFileNames(results);
+            return results;
+        } catch (Exception e) {
+            throw new RuntimeException("相关文档检索失败", e);
+        }
+    }
+
+    /**
+     * 构建限定在候选文件内的过滤条件
+     */
+    public static Query restrictToFiles(Query permissionFilter, List<String> fileMd5s) {
+        List<FieldValue> values = fileMd5s.stream().map(FieldValue::of).toList();
+        return Query.of(q -> q.bool(b -> b
+                .filter(permissionFilter)
+                .filter(f -> f.terms(t -> t.field("fileMd5").terms(tv -> tv.value(values))))
+        ));
+    }
+
+    /**
+     * 分块向量归一化后取均值再归一化，避免长分块主导方向
+     */
+    private static float[] centroid(List<float[]> vectors) {
+        float[] sum = new float[vectors.get(0).length];
+        for (float[] vector : vectors) {
+            float[] normalized = vector.clone();
+            FloatVectorMath.normalize(normalized);
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += normalized[i];
+            }
+        }
+        FloatVectorMath.normalize(sum);
+        return sum;
+    }
+
+    private void attachFileNames(List<RelatedFile> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        List<String> md5s = results.stream().map(RelatedFile::getFileMd5).distinct().toList();
+        Map<String, String> md5ToName = fileUploadRepository.findByFileMd5In(md5s).stream()
+                .collect(Collectors.toMap(FileUpload::getFileMd5, FileUpload::getFileName, (a, b) -> a));
+        results.forEach(r -> r.setFileName(md5ToName.get(r.getFileMd5())));
+    }
+}
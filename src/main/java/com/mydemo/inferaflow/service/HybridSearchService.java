@@ -1,27 +1,57 @@
 package com.mydemo.inferaflow.service;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
-import com.mydemo.inferaflow.client.EmbeddingClient;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.msearch.MultisearchBody;
+import co.elastic.clients.elasticsearch.core.msearch.RequestItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.Profile;
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.transport.rest_client.RestClientOptions;
+import co.elastic.clients.util.ObjectBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.entity.BatchSearchResult;
+import com.mydemo.inferaflow.entity.DiversityOptions;
 import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.SearchOutcome;
 import com.mydemo.inferaflow.entity.SearchResult;
-import com.mydemo.inferaflow.model.User;
-import com.mydemo.inferaflow.exception.CustomException;
-import com.mydemo.inferaflow.repository.UserRepository;
 import com.mydemo.inferaflow.repository.FileUploadRepository;
 import com.mydemo.inferaflow.model.FileUpload;
+import com.mydemo.inferaflow.utils.DiversityUtils;
+import com.mydemo.inferaflow.utils.LogUtils;
+import com.mydemo.inferaflow.utils.RankFusionUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.client.RequestOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Set;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -37,20 +67,72 @@ public class HybridSearchService {
     private ElasticsearchClient esClient;
 
     @Autowired
-    private EmbeddingClient embeddingClient;
+    private QueryEmbeddingCacheService queryEmbeddingCacheService;
 
     @Autowired
-    private UserService userService;
+    private PermissionContextService permissionContextService;
 
     @Autowired
-    private UserRepository userRepository;
+    private SearchResultCacheService searchResultCacheService;
 
     @Autowired
-    private OrgTagCacheService orgTagCacheService;
+    private RetrievalStore retrievalStore;
+
+    @Autowired
+    private ExactKnnService exactKnnService;
+
+    @Autowired
+    private KnnQueryPlanner knnQueryPlanner;
+
+    @Autowired
+    private FileCentroidService fileCentroidService;
+
+    @Autowired
+    private AdaptiveRecallPolicy adaptiveRecallPolicy;
 
     @Autowired
     private FileUploadRepository fileUploadRepository;
 
+    @Autowired
+    private SearchProperties searchProperties;
+
+    @Autowired
+    @Qualifier("searchExecutor")
+    private Executor searchExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private static final int MAX_COUNT_CACHE_SIZE = 10000;
+
+    // 降级原因
+    private static final String DEGRADED_EMBEDDING = "embedding_unavailable";
+    private static final String DEGRADED_ES_TIMEOUT = "es_timeout";
+    private static final String DEGRADED_DEADLINE = "deadline_exceeded";
+    private static final String DEGRADED_ERROR = "error";
+
+    // SearchResult 需要的 _source 字段，不包含向量
+    private static final List<String> SOURCE_FIELDS =
+            List.of("fileMd5", "chunkId", "textContent", "userId", "orgTag", "public");
+    // 片段模式下正文由高亮返回
+    private static final List<String> SNIPPET_SOURCE_FIELDS =
+            List.of("fileMd5", "chunkId", "userId", "orgTag", "public");
+
+    // 允许折叠的字段及其在 SearchResult 上的取值
+    private static final Map<String, Function<SearchResult, String>> COLLAPSE_KEYS = Map.of(
+            "fileMd5", SearchResult::getFileMd5,
+            "userId", SearchResult::getUserId,
+            "orgTag", SearchResult::getOrgTag);
+
+    // ES profile 输出转为普通 Map 返回给调用方
+    private static final ObjectMapper PROFILE_MAPPER = new ObjectMapper();
+
+    // 慢查询日志中查询原文的最大长度
+    private static final int SLOW_LOG_QUERY_MAX_LEN = 100;
+
+    // 权限过滤命中文档数的估算缓存：过滤条件 -> 命中数量
+    private final Map<String, CachedCount> filteredCountCache = new ConcurrentHashMap<>();
+
     /**
      * 使用文本匹配和向量相似度进行混合搜索，支持权限过滤
      * 该方法确保用户只能搜索其有权限访问的文档（自己的文档、公开文档、所属组织的文档）
@@ -61,124 +143,708 @@ public class HybridSearchService {
      * @return 搜索结果列表
      */
     public List<SearchResult> searchWithPermission(String query, String userId, int topK) {
-        logger.debug("开始带权限搜索，查询: {}, 用户ID: {}", query, userId);
-        
+        return searchWithPermission(query, userId, topK, null);
+    }
+
+    /**
+     * 使用指定的混合检索模式进行带权限搜索
+     *
+     * @param query  查询字符串
+     * @param userId 用户ID
+     * @param topK   返回结果数量
+     * @param mode   混合检索模式，为 null 时使用配置的默认模式
+     * @return 搜索结果列表
+     */
+    public List<SearchResult> searchWithPermission(String query, String userId, int topK, SearchProperties.HybridMode mode) {
+        return searchWithPermissionOutcome(query, userId, topK, mode).getResults();
+    }
+
+    /**
+     * 带延迟预算的带权限搜索，返回结果及是否降级、各阶段耗时
+     * 向量生成超出预算时降级为纯 BM25，ES 超时时返回已收集到的结果，均标记为部分结果
+     *
+     * @param query  查询字符串
+     * @param userId 用户ID
+     * @param topK   返回结果数量
+     * @param mode   混合检索模式，为 null 时使用配置的默认模式
+     * @return 检索结果及元信息
+     */
+    public SearchOutcome searchWithPermissionOutcome(String query, String userId, int topK, SearchProperties.HybridMode mode) {
+        return searchWithPermissionOutcome(query, userId, topK, mode, null);
+    }
+
+    /**
+     * 带权限搜索的统一入口，collapseField 不为 null 时 BM25 召回在 ES 内按该字段折叠
+     */
+    private SearchOutcome searchWithPermissionOutcome(String query, String userId, int topK, SearchProperties.HybridMode mode,
+                                                      String collapseField) {
+        SearchProperties.HybridMode effectiveMode = mode != null ? mode : searchProperties.getHybrid().getMode();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long start = System.currentTimeMillis();
+        SearchOutcome outcome = null;
         try {
-            // 获取用户有效的组织标签（包含层级关系）
-            List<String> userEffectiveTags = getUserEffectiveOrgTags(userId);
-            logger.debug("用户 {} 的有效组织标签: {}", userId, userEffectiveTags);
+            outcome = searchWithResultCache(query, userId, topK, effectiveMode, collapseField);
+            return outcome;
+        } finally {
+            // 按模式记录耗时分布（p50/p99），用于对比 rescore 与融合方案
+            sample.stop(Timer.builder("search.hybrid.latency")
+                    .tag("mode", effectiveMode.name().toLowerCase())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+            if (outcome != null) {
+                logSlowSearch(query, userId, effectiveMode, System.currentTimeMillis() - start, outcome);
+            }
+        }
+    }
 
-            // 获取用户的数据库ID用于权限过滤
-            String userDbId = getUserDbId(userId);
-            logger.debug("用户 {} 的数据库ID: {}", userId, userDbId);
+    private SearchOutcome searchWithResultCache(String query, String userId, int topK, SearchProperties.HybridMode mode,
+                                                String collapseField) {
+        PermissionContext context;
+        try {
+            context = permissionContextService.getContext(userId);
+        } catch (Exception e) {
+            logger.warn("解析用户权限上下文失败，跳过结果缓存: {}", e.getMessage());
+            return doSearchWithPermission(query, userId, topK, mode, collapseField, false);
+        }
+        String cacheMode = collapseField == null ? mode.name() : mode.name() + ":collapse=" + collapseField;
+        // 同组织用户的相同问题直接命中结果缓存，索引代数变化后自动失效
+        return searchResultCacheService.getOrSearch(query, topK, cacheMode, context,
+                () -> doSearchWithPermission(query, userId, topK, mode, collapseField, false));
+    }
 
-            // 生成查询向量
-            final List<Float> queryVector = embedToVectorList(query);
+    /**
+     * 诊断用的带权限搜索，仅供管理员排查慢查询
+     * 不经过结果缓存，本次检索的每个 ES 请求均开启 profile；返回的 timings 额外包含权限解析与文件名补充耗时，
+     * 以及本地权限上下文缓存是否命中和强制重新解析时 MySQL 与 Redis 各自的耗时。profile 本身会拖慢 ES，因此不计入慢查询日志
+     *
+     * @param query  查询字符串
+     * @param userId 用户ID
+     * @param topK   返回结果数量
+     * @param mode   混合检索模式，为 null 时使用配置的默认模式
+     * @return 检索结果、各阶段耗时及各召回分支的 ES profile 输出
+     */
+    public SearchOutcome profileSearchOutcome(String query, String userId, int topK, SearchProperties.HybridMode mode) {
+        SearchProperties.HybridMode effectiveMode = mode != null ? mode : searchProperties.getHybrid().getMode();
+        return doSearchWithPermission(query, userId, topK, effectiveMode, null, true);
+    }
 
-            // 如果向量生成失败，仅使用文本匹配
+    /**
+     * 端到端耗时超过阈值的检索按采样率写入慢查询日志，以查询指纹为键便于聚合同一问题的多次慢查询
+     */
+    private void logSlowSearch(String query, String userId, SearchProperties.HybridMode mode, long elapsedMs,
+                               SearchOutcome outcome) {
+        SearchProperties.Profile config = searchProperties.getProfile();
+        if (elapsedMs < config.getSlowThresholdMs()
+                || ThreadLocalRandom.current().nextDouble() >= config.getSlowSampleRate()) {
+            return;
+        }
+        String normalized = QueryEmbeddingCacheService.normalize(query);
+        String sampleQuery = normalized.length() > SLOW_LOG_QUERY_MAX_LEN
+                ? normalized.substring(0, SLOW_LOG_QUERY_MAX_LEN) : normalized;
+        LogUtils.logSlowSearch(queryFingerprint(query), userId, elapsedMs,
+                String.format("mode=%s, results=%d, partial=%s, reason=%s, timings=%s, query=%s",
+                        mode.name().toLowerCase(), outcome.getResults().size(), outcome.isPartial(),
+                        outcome.getDegradedReason(), outcome.getTimings(), sampleQuery));
+    }
+
+    /**
+     * 查询指纹：规范化（NFKC、合并空白、小写）后查询的 SHA-256 前 16 位，与查询向量缓存使用相同的规范化规则
+     */
+    static String queryFingerprint(String query) {
+        return DigestUtils.sha256Hex(QueryEmbeddingCacheService.normalize(query)).substring(0, 16);
+    }
+
+    /**
+     * 多样化的带权限搜索，见 {@link #searchDiverseOutcome}
+     */
+    public List<SearchResult> searchDiverse(String query, String userId, int topK, DiversityOptions options) {
+        return searchDiverseOutcome(query, userId, topK, options).getResults();
+    }
+
+    /**
+     * 多样化的带权限搜索：先召回较大的候选池，按需折叠后用 MMR 选出 topK 条相关且彼此不重复的结果
+     * 折叠时 BM25 召回在 ES 内按字段折叠（强制融合模式，ES 不支持 collapse 与 rescore 同时使用），KNN 与融合结果在进程内折叠；
+     * MMR 的相似度使用候选的存储向量（启用 Matryoshka 时为前缀向量），通过一次按候选定位的 ES 请求取回
+     *
+     * @param query   查询字符串
+     * @param userId  用户ID
+     * @param topK    返回结果数量
+     * @param options 多样化参数，为 null 或字段为 null 时使用 search.diversity 配置
+     * @return 检索结果及元信息
+     */
+    public SearchOutcome searchDiverseOutcome(String query, String userId, int topK, DiversityOptions options) {
+        SearchProperties.Diversity config = searchProperties.getDiversity();
+        double lambda = options != null && options.getLambda() != null ? options.getLambda() : config.getLambda();
+        int pool = Math.max(topK, options != null && options.getCandidatePool() != null
+                ? options.getCandidatePool() : config.getCandidatePool());
+        String collapseField = options != null && options.getCollapseField() != null
+                ? options.getCollapseField() : config.getCollapseField();
+        if (collapseField != null && collapseField.isBlank()) {
+            collapseField = null;
+        }
+        if (collapseField != null && !COLLAPSE_KEYS.containsKey(collapseField)) {
+            throw new IllegalArgumentException("不支持的折叠字段: " + collapseField + "，可选值: " + COLLAPSE_KEYS.keySet());
+        }
+        if (lambda < 0 || lambda > 1) {
+            throw new IllegalArgumentException("lambda 必须在 0 到 1 之间");
+        }
+
+        SearchOutcome pooled = searchWithPermissionOutcome(query, userId, pool, null, collapseField);
+        long start = System.currentTimeMillis();
+        List<SearchResult> candidates = pooled.getResults();
+        if (collapseField != null) {
+            candidates = DiversityUtils.collapse(candidates, COLLAPSE_KEYS.get(collapseField));
+        }
+        List<SearchResult> results = candidates.size() <= topK
+                ? candidates
+                : DiversityUtils.maximalMarginalRelevance(candidates, fetchCandidateVectors(candidates), lambda, topK);
+        logger.debug("多样化重排完成，候选数量: {}, 返回数量: {}, lambda: {}, 折叠字段: {}",
+                candidates.size(), results.size(), lambda, collapseField);
+
+        // 候选池结果可能来自结果缓存，复制后再写入，避免修改缓存对象
+        SearchOutcome outcome = new SearchOutcome();
+        outcome.getTimings().putAll(pooled.getTimings());
+        if (pooled.isPartial()) {
+            outcome.markPartial(pooled.getDegradedReason());
+        }
+        outcome.recordTiming("diversity", System.currentTimeMillis() - start);
+        outcome.setResults(results);
+        return outcome;
+    }
+
+    /**
+     * 取回候选分块的存储向量，与候选一一对应；向量不在 _source 中、使用进程内存储或请求失败时对应元素为 null
+     */
+    private List<float[]> fetchCandidateVectors(List<SearchResult> candidates) {
+        List<float[]> vectors = new ArrayList<>(Collections.nCopies(candidates.size(), null));
+        String field = knnQueryPlanner.field();
+        if (searchProperties.getStore().getType() != SearchProperties.StoreType.ELASTICSEARCH
+                || (KnnQueryPlanner.VECTOR_FIELD.equals(field) && searchProperties.getIndex().isExcludeVectorSource())) {
+            return vectors;
+        }
+        List<FieldValue> fileMd5s = candidates.stream().map(SearchResult::getFileMd5).distinct().map(FieldValue::of).toList();
+        try {
+            SearchResponse<EsDocument> response = esClient.search(s -> s
+                    .index("knowledge_base")
+                    .query(q -> q.bool(b -> {
+                        b.filter(f -> f.terms(t -> t.field("fileMd5").terms(tv -> tv.value(fileMd5s))));
+                        for (SearchResult candidate : candidates) {
+                            b.should(sh -> sh.bool(pb -> pb
+                                    .filter(f -> f.term(t -> t.field("fileMd5").value(candidate.getFileMd5())))
+                                    .filter(f -> f.term(t -> t.field("chunkId").value(candidate.getChunkId())))
+                            ));
+                        }
+                        return b.minimumShouldMatch("1");
+                    }))
+                    .source(src -> src.filter(f -> f.includes("fileMd5", "chunkId", field)))
+                    .size(candidates.size()),
+                    EsDocument.class
+            );
+            Map<String, float[]> byChunk = new HashMap<>();
+            for (Hit<EsDocument> hit : response.hits().hits()) {
+                EsDocument doc = hit.source();
+                if (doc != null) {
+                    byChunk.put(doc.getFileMd5() + "#" + doc.getChunkId(),
+                            KnnQueryPlanner.SHORT_VECTOR_FIELD.equals(field) ? doc.getVectorShort() : doc.getVector());
+                }
+            }
+            for (int i = 0; i < candidates.size(); i++) {
+                SearchResult candidate = candidates.get(i);
+                vectors.set(i, byChunk.get(candidate.getFileMd5() + "#" + candidate.getChunkId()));
+            }
+        } catch (Exception e) {
+            logger.warn("获取候选向量失败，MMR 以是否同一文件近似相似度: {}", e.getMessage());
+        }
+        return vectors;
+    }
+
+    /**
+     * 批量带权限搜索：权限只解析一次，未缓存的查询向量合并为一次批量生成，所有查询通过一次 _msearch 执行
+     * 融合模式下每个查询对应 BM25、KNN 两个子请求，在进程内融合
+     *
+     * @param queries 查询列表
+     * @param userId  用户ID
+     * @param topK    每个查询返回结果数量
+     * @param mode    混合检索模式，为 null 时使用配置的默认模式
+     * @return 与查询顺序一致的结果列表
+     */
+    public List<BatchSearchResult> batchSearchWithPermission(List<String> queries, String userId, int topK,
+                                                             SearchProperties.HybridMode mode) {
+        SearchProperties.HybridMode effectiveMode = mode != null ? mode : searchProperties.getHybrid().getMode();
+        if (searchProperties.getStore().getType() == SearchProperties.StoreType.LUCENE) {
+            // 进程内存储没有 _msearch 的网络往返开销，逐条执行
+            List<BatchSearchResult> batchResults = new ArrayList<>(queries.size());
+            for (String query : queries) {
+                SearchOutcome outcome = searchWithPermissionOutcome(query, userId, topK, effectiveMode);
+                batchResults.add(new BatchSearchResult(query, outcome.getResults(),
+                        outcome.getTimings().get("total"), outcome.getDegradedReason()));
+            }
+            return batchResults;
+        }
+        boolean fusion = effectiveMode == SearchProperties.HybridMode.FUSION;
+        SearchProperties.Hybrid hybridConfig = searchProperties.getHybrid();
+        int legSize = Math.max(topK, hybridConfig.getFusionWindowSize());
+
+        // 权限上下文与召回窗口对整批查询只计算一次
+        PermissionContext context = permissionContextService.getContext(userId);
+        Query permissionFilter = context.getFilter();
+        KnnWindow window = resolveKnnWindow(topK, context, esClient);
+
+        List<List<Float>> vectors = embedAllToVectorLists(queries);
+        if (vectors == null) {
+            logger.warn("批量向量生成失败，批量检索仅使用文本匹配");
+        }
+
+        // 每个查询在 _msearch 中占用的子请求起始位置
+        List<RequestItem> searches = new ArrayList<>();
+        int[] slots = new int[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            String query = queries.get(i);
+            List<Float> queryVector = vectors != null ? vectors.get(i) : null;
+            slots[i] = searches.size();
             if (queryVector == null) {
-                logger.warn("向量生成失败，仅使用文本匹配进行搜索");
-                return textOnlySearchWithPermission(query, userDbId, userEffectiveTags, topK);
+                searches.add(msearchItem(b -> projectBody(lexicalBody(b, query, permissionFilter, topK)
+                        .minScore(0.3d), query)));
+            } else if (fusion) {
+                searches.add(msearchItem(b -> projectBody(lexicalBody(b, query, permissionFilter, legSize), query)));
+                searches.add(msearchItem(b -> projectBody(knnBody(b, queryVector, permissionFilter, window, legSize), query)));
+            } else {
+                searches.add(msearchItem(b -> projectBody(rescoreBody(b, query, queryVector, permissionFilter, window, topK), query)));
             }
+        }
 
-            logger.debug("向量生成成功，开始执行混合搜索 KNN");
+        MsearchResponse<EsDocument> response;
+        try {
+            response = esClient.msearch(m -> m.searches(searches), EsDocument.class);
+        } catch (Exception e) {
+            logger.error("批量检索 _msearch 执行失败", e);
+            throw new RuntimeException("批量检索失败", e);
+        }
 
-            SearchResponse<EsDocument> response = esClient.search(s -> {
-                        s.index("knowledge_base");
-                        // KNN 召回
-                        int recallK = topK * 30; // KNN 召回窗口
-                        s.knn(kn -> kn
-                                .field("vector")
-                                .queryVector(queryVector)
-                                .k(recallK)
-                                .numCandidates(recallK)
-                        );
-                        // 必须命中关键词 + 权限过滤
-                        s.query(q -> q.bool(b -> b
-                                .must(mst -> mst.match(m -> m.field("textContent").query(query)))
-                                .filter(f -> f.bool(bf -> bf
-                                        // 条件1: 用户可访问自己的文档
-                                        .should(s1 -> s1.term(t -> t.field("userId").value(userDbId)))
-                                        // 条件2: 公开文档
-                                        .should(s2 -> s2.term(t -> t.field("public").value(true)))
-                                        // 条件3: 组织标签
-                                        .should(s3 -> {
-                                            if (userEffectiveTags.isEmpty()) {
-                                                return s3.matchNone(mn -> mn);
-                                            } else if (userEffectiveTags.size() == 1) {
-                                                return s3.term(t -> t.field("orgTag").value(userEffectiveTags.get(0)));
-                                            } else {
-                                                return s3.bool(inner -> {
-                                                    userEffectiveTags.forEach(tag -> inner.should(sh2 -> sh2.term(t -> t.field("orgTag").value(tag))));
-                                                    return inner;
-                                                });
-                                            }
-                                        })
+        List<MultiSearchResponseItem<EsDocument>> items = response.responses();
+        List<BatchSearchResult> batchResults = new ArrayList<>(queries.size());
+        List<SearchResult> allResults = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            int slot = slots[i];
+            int end = i + 1 < queries.size() ? slots[i + 1] : searches.size();
+            MultiSearchResponseItem<EsDocument> first = items.get(slot);
+            if (end - slot == 1) {
+                if (first.isFailure()) {
+                    batchResults.add(new BatchSearchResult(queries.get(i), Collections.emptyList(), null,
+                            first.failure().reason()));
+                    continue;
+                }
+                List<SearchResult> results = toSearchResults(first.result().hits().hits());
+                allResults.addAll(results);
+                batchResults.add(new BatchSearchResult(queries.get(i), results, first.result().took(), null));
+                continue;
+            }
+
+            // 融合模式下任一子请求失败时只使用另一路结果，两路都失败才返回错误
+            MultiSearchResponseItem<EsDocument> second = items.get(slot + 1);
+            if (first.isFailure() && second.isFailure()) {
+                batchResults.add(new BatchSearchResult(queries.get(i), Collections.emptyList(), null,
+                        first.failure().reason()));
+                continue;
+            }
+            List<SearchResult> lexicalResults = null;
+            List<SearchResult> vectorResults = null;
+            long took = 0;
+            if (first.isResult()) {
+                lexicalResults = toSearchResults(first.result().hits().hits());
+                took = first.result().took();
+            } else {
+                logger.warn("批量检索 BM25 子请求失败，仅使用 KNN 结果: {}", first.failure().reason());
+            }
+            if (second.isResult()) {
+                vectorResults = toSearchResults(second.result().hits().hits());
+                took = Math.max(took, second.result().took());
+            } else {
+                logger.warn("批量检索 KNN 子请求失败，仅使用 BM25 结果: {}", second.failure().reason());
+            }
+            List<SearchResult> results = hybridConfig.getFusionStrategy() == SearchProperties.FusionStrategy.WEIGHTED
+                    ? RankFusionUtils.weightedScoreFusion(lexicalResults, vectorResults,
+                            hybridConfig.getLexicalWeight(), hybridConfig.getVectorWeight(), topK)
+                    : RankFusionUtils.reciprocalRankFusion(lexicalResults, vectorResults,
+                            hybridConfig.getLexicalWeight(), hybridConfig.getVectorWeight(),
+                            hybridConfig.getRrfRankConstant(), topK);
+            allResults.addAll(results);
+            batchResults.add(new BatchSearchResult(queries.get(i), results, took, null));
+        }
+
+        attachFileNames(allResults);
+        logger.debug("批量检索完成，查询数量: {}, 子请求数量: {}, ES 总耗时: {}ms", queries.size(), searches.size(), response.took());
+        return batchResults;
+    }
+
+    private RequestItem msearchItem(Function<MultisearchBody.Builder, ObjectBuilder<MultisearchBody>> body) {
+        return RequestItem.of(r -> r
+                .header(h -> h.index("knowledge_base"))
+                .body(body)
+        );
+    }
+
+    private MultisearchBody.Builder lexicalBody(MultisearchBody.Builder b, String query, Query permissionFilter, int size) {
+        return b.query(q -> q.bool(bq -> bq
+                        .must(m -> m.match(ma -> ma.field("textContent").query(query)))
+                        .filter(permissionFilter)
+                ))
+                .size(size);
+    }
+
+    private MultisearchBody.Builder knnBody(MultisearchBody.Builder b, List<Float> queryVector, Query permissionFilter,
+                                            KnnWindow window, int size) {
+        int k = knnQueryPlanner.recallK(Math.max(window.k, size));
+        int numCandidates = Math.min(Math.max(window.numCandidates, k), searchProperties.getKnn().getMaxNumCandidates());
+        b.knn(kn -> kn
+                        .field(knnQueryPlanner.field())
+                        .queryVector(knnQueryPlanner.queryVector(queryVector))
+                        .k(k)
+                        .numCandidates(numCandidates)
+                        .filter(permissionFilter)
+                )
+                .size(size);
+        if (knnQueryPlanner.needsExactRescore()) {
+            b.rescore(knnQueryPlanner.exactRescore(queryVector, k));
+        }
+        return b;
+    }
+
+    private MultisearchBody.Builder rescoreBody(MultisearchBody.Builder b, String query, List<Float> queryVector,
+                                                Query permissionFilter, KnnWindow window, int topK) {
+        int k = knnQueryPlanner.recallK(window.k);
+        int numCandidates = Math.min(Math.max(window.numCandidates, k), searchProperties.getKnn().getMaxNumCandidates());
+        return b.knn(kn -> kn
+                        .field(knnQueryPlanner.field())
+                        .queryVector(knnQueryPlanner.queryVector(queryVector))
+                        .k(k)
+                        .numCandidates(numCandidates)
+                        .filter(permissionFilter)
+                )
+                .query(q -> q.bool(bq -> bq
+                        .must(mst -> mst.match(m -> m.field("textContent").query(query)))
+                        .filter(permissionFilter)
+                ))
+                .rescore(r -> r
+                        .windowSize(window.k)
+                        .query(rq -> rq
+                                .queryWeight(0.2d)
+                                .rescoreQueryWeight(1.0d)
+                                .query(rqq -> rqq.match(m -> m
+                                        .field("textContent")
+                                        .query(query)
+                                        .operator(Operator.And)
                                 ))
-                        ));
+                        )
+                )
+                .size(topK);
+    }
 
-                        // 第二阶段 BM25 rescore
-                        s.rescore(r -> r
-                                .windowSize(recallK)
-                                .query(rq -> rq
-                                        .queryWeight(0.2d)               // 保留部分 KNN 分
-                                        .rescoreQueryWeight(1.0d)        // BM25 主导
-                                        .query(rqq -> rqq.match(m -> m
-                                                .field("textContent")
-                                                .query(query)
-                                                .operator(Operator.And)
-                                        ))
-                                )
-                        );
-                        s.size(topK);
-                        return s;
-                    }, EsDocument.class);
+    /**
+     * _msearch 子请求的结果投影，规则与 project 一致
+     */
+    private MultisearchBody.Builder projectBody(MultisearchBody.Builder b, String query) {
+        SearchProperties.Result resultConfig = searchProperties.getResult();
+        if (!resultConfig.isSnippetEnabled()) {
+            return b.source(src -> src.filter(f -> f.includes(SOURCE_FIELDS)));
+        }
+        int fragmentSize = resultConfig.getSnippetFragmentSize();
+        return b.source(src -> src.filter(f -> f.includes(SNIPPET_SOURCE_FIELDS)))
+                .highlight(h -> h
+                        .highlightQuery(hq -> hq.match(m -> m.field("textContent").query(query)))
+                        .fields("textContent", hf -> hf
+                                .fragmentSize(fragmentSize)
+                                .numberOfFragments(1)
+                                .noMatchSize(fragmentSize)
+                                .preTags("")
+                                .postTags("")
+                        )
+                );
+    }
 
-            logger.debug("Elasticsearch查询执行完成，命中数量: {}, 最大分数: {}", 
-                response.hits().total().value(), response.hits().maxScore());
+    private SearchOutcome doSearchWithPermission(String query, String userId, int topK, SearchProperties.HybridMode mode,
+                                                 String collapseField, boolean profiling) {
+        logger.debug("开始带权限搜索，查询: {}, 用户ID: {}, 模式: {}", query, userId, mode);
+        SearchOutcome outcome = new SearchOutcome();
+        outcome.setProfiling(profiling);
+        SearchBudget budget = new SearchBudget(searchProperties.getDeadline(), outcome);
 
-            List<SearchResult> results = response.hits().hits().stream()
-                    .map(hit -> {
-                        assert hit.source() != null;
-                        logger.debug("搜索结果 - 文件: {}, 块: {}, 分数: {}, 内容: {}", 
-                            hit.source().getFileMd5(), hit.source().getChunkId(), hit.score(), 
-                            hit.source().getTextContent().substring(0, Math.min(50, hit.source().getTextContent().length())));
-                        return new SearchResult(
-                                hit.source().getFileMd5(),
-                                hit.source().getChunkId(),
-                                hit.source().getTextContent(),
-                                hit.score(),
-                                hit.source().getUserId(),
-                                hit.source().getOrgTag(),
-                                hit.source().isPublic()
-                        );
-                    })
-                    .toList();
+        if (searchProperties.getStore().getType() == SearchProperties.StoreType.LUCENE) {
+            return storeSearch(query, userId, topK, budget);
+        }
+
+        try {
+            // 查询向量依赖远程 API，最先发起；超出向量预算时以 null 完成并降级为 BM25，后台请求完成后仍会回填查询向量缓存
+            CompletableFuture<List<Float>> vectorFuture = CompletableFuture.supplyAsync(() -> {
+                long embedStart = System.currentTimeMillis();
+                List<Float> vector = embedToVectorList(query);
+                outcome.recordTiming("embed", System.currentTimeMillis() - embedStart);
+                return vector;
+            }, searchExecutor);
+            if (budget.isEnabled()) {
+                vectorFuture.completeOnTimeout(null, budget.embedBudgetMs(), TimeUnit.MILLISECONDS);
+            }
+
+            // 权限上下文（MySQL + Redis）与 KNN 召回窗口估算不依赖向量，与向量生成并行执行
+            CompletableFuture<PermissionScope> scopeFuture = CompletableFuture.supplyAsync(
+                    () -> resolvePermissionScope(userId, topK, budget), searchExecutor);
+
+            // ES 不支持 collapse 与 rescore 同时使用，需要折叠时改为融合检索
+            if (mode == SearchProperties.HybridMode.FUSION || collapseField != null) {
+                List<SearchResult> fused = fusionSearch(query, vectorFuture, scopeFuture, topK, budget, collapseField);
+                logger.debug("融合检索返回结果数量: {}", fused.size());
+                attachFileNames(fused, budget);
+                return budget.finish(fused);
+            }
+
+            PermissionScope scope = joinScope(scopeFuture, budget);
+            if (scope == null) {
+                return budget.finish(Collections.emptyList());
+            }
+            final List<Float> queryVector = vectorFuture.join();
+
+            // 如果向量生成失败或超出预算，仅使用文本匹配
+            if (queryVector == null) {
+                logger.warn("向量生成失败或超出预算，仅使用文本匹配进行搜索");
+                outcome.markPartial(DEGRADED_EMBEDDING);
+                return budget.finish(textOnlySearchWithPermission(query, scope.context, topK, budget));
+            }
+
+            // 小范围用户的向量召回走进程内精确检索，rescore 只能在 ES 内完成，因此改为与 BM25 融合
+            if (scope.exact) {
+                List<SearchResult> fused = fusionSearch(query, CompletableFuture.completedFuture(queryVector),
+                        CompletableFuture.completedFuture(scope), topK, budget, null);
+                attachFileNames(fused, budget);
+                return budget.finish(fused);
+            }
+
+            logger.debug("向量生成成功，开始执行混合搜索 KNN");
+
+            // 权限过滤同时下推到 KNN 与 BM25，避免 KNN 在全量 HNSW 图上召回后再过滤
+            final Query permissionFilter = scope.context.getFilter();
+            final Query knnFilter = candidateFileFilter(queryVector, permissionFilter, budget);
+            final KnnWindow fullWindow = scope.window;
+
+            // 自适应召回只决定 KNN 窗口：以轻量的纯 KNN 探测按向量分判断边界，rescore 窗口保持固定，排序与未开启时一致
+            // 探测耗时单独记为 knn_probe，es 只统计 rescore 请求
+            int windowK = adaptiveRecallPolicy.isEnabled()
+                    ? probeKnnWindow(queryVector, knnFilter, fullWindow, topK, scope.visibleCount, budget)
+                    : fullWindow.k;
+            long esStart = System.currentTimeMillis();
+            SearchResponse<EsDocument> response = rescoreSearch(query, queryVector, permissionFilter, knnFilter,
+                    scaleWindow(fullWindow, windowK), fullWindow.k, topK, budget);
+            budget.checkTimedOut(response.timedOut());
+            budget.captureProfile("rescore", response);
+
+            logger.debug("Elasticsearch查询执行完成，召回窗口: {}, 命中数量: {}, 最大分数: {}",
+                windowK, response.hits().total().value(), response.hits().maxScore());
+
+            List<SearchResult> results = toSearchResults(response.hits().hits());
+            outcome.recordTiming("es", System.currentTimeMillis() - esStart);
 
             logger.debug("返回搜索结果数量: {}", results.size());
-            attachFileNames(results);
-            return results;
+            attachFileNames(results, budget);
+            return budget.finish(results);
         } catch (Exception e) {
+            if (budget.remainingMs() <= 0) {
+                // 客户端超时同样落在这里，按超出预算降级
+                logger.warn("检索已超出总预算，不再执行后备搜索: {}", e.getMessage());
+                outcome.markPartial(DEGRADED_DEADLINE);
+                return budget.finish(Collections.emptyList());
+            }
             logger.error("带权限的搜索失败", e);
+            outcome.markPartial(DEGRADED_ERROR);
             // 发生异常时尝试使用纯文本搜索作为后备方案
             try {
                 logger.info("尝试使用纯文本搜索作为后备方案");
-                return textOnlySearchWithPermission(query, getUserDbId(userId), getUserEffectiveOrgTags(userId), topK);
+                return budget.finish(textOnlySearchWithPermission(query, permissionContextService.getContext(userId), topK, budget));
             } catch (Exception fallbackError) {
                 logger.error("后备搜索也失败", fallbackError);
-                return Collections.emptyList();
+                return budget.finish(Collections.emptyList());
             }
         }
     }
 
+    /**
+     * rescore 模式下的自适应 KNN 窗口：从小窗口开始做纯 KNN 探测（不取 _source），按向量分判断边界分差，
+     * 需要时放大窗口，返回最终窗口；可见分块数不超过窗口时不再放大
+     */
+    private int probeKnnWindow(List<Float> queryVector, Query knnFilter, KnnWindow fullWindow, int topK,
+                               long visibleCount, SearchBudget budget) throws Exception {
+        int windowK = adaptiveRecallPolicy.initialK(topK, fullWindow.k);
+        int widenings = 0;
+        long start = System.currentTimeMillis();
+        while (true) {
+            KnnWindow window = scaleWindow(fullWindow, windowK);
+            int k = knnQueryPlanner.recallK(Math.max(window.k, topK + 1));
+            int numCandidates = Math.min(Math.max(window.numCandidates, k), searchProperties.getKnn().getMaxNumCandidates());
+            SearchResponse<EsDocument> response = budget.client().search(s -> budget.profile(s
+                    .index("knowledge_base")
+                    .knn(kn -> kn
+                            .field(knnQueryPlanner.field())
+                            .queryVector(knnQueryPlanner.queryVector(queryVector))
+                            .k(k)
+                            .numCandidates(numCandidates)
+                            .filter(knnFilter)
+                    )
+                    .source(src -> src.fetch(false))
+                    .timeout(budget.esTimeout())
+                    .size(topK + 1)),
+                    EsDocument.class
+            );
+            // 诊断模式下每轮探测都记录 profile，按请求顺序追加
+            budget.captureProfile("knn_probe", response);
+            List<SearchResult> scores = new ArrayList<>(response.hits().hits().size());
+            for (Hit<EsDocument> hit : response.hits().hits()) {
+                scores.add(new SearchResult(null, null, null, hit.score()));
+            }
+            AdaptiveRecallPolicy.Decision decision =
+                    adaptiveRecallPolicy.evaluate(topK, windowK, fullWindow.k, widenings, scores, visibleCount);
+            boolean widen = decision == AdaptiveRecallPolicy.Decision.FLAT_GAP
+                    || decision == AdaptiveRecallPolicy.Decision.UNDERFILLED;
+            if (widen && !response.timedOut() && budget.remainingMs() > 0) {
+                logger.debug("召回窗口 {} 的向量结果{}，放大窗口", windowK,
+                        decision == AdaptiveRecallPolicy.Decision.FLAT_GAP ? "边界分差过小" : "不足 topK");
+                windowK = adaptiveRecallPolicy.widen(windowK, fullWindow.k);
+                widenings++;
+                continue;
+            }
+            adaptiveRecallPolicy.record("rescore", widen ? AdaptiveRecallPolicy.Decision.EXHAUSTED : decision,
+                    widenings, windowK, fullWindow.k);
+            budget.outcome.recordTiming("knn_probe", System.currentTimeMillis() - start);
+            return windowK;
+        }
+    }
+
+    /**
+     * rescore 模式的单次 ES 请求：KNN（带权限预过滤）与关键词召回合并后，以 BM25 rescore 排序
+     * 量化/前缀向量索引下放大 KNN 召回；该模式中向量分只占次要权重，BM25 rescore 之前不再做向量精确重排
+     *
+     * @param rescoreWindow BM25 rescore 的窗口，固定为完整召回窗口，不随自适应 KNN 窗口缩小
+     */
+    private SearchResponse<EsDocument> rescoreSearch(String query, List<Float> queryVector, Query permissionFilter,
+                                                     Query knnFilter, KnnWindow window, int rescoreWindow, int size,
+                                                     SearchBudget budget)
+            throws Exception {
+        final int recallK = knnQueryPlanner.recallK(window.k);
+        final int numCandidates = Math.min(Math.max(window.numCandidates, recallK),
+                searchProperties.getKnn().getMaxNumCandidates());
+        return budget.client().search(s -> {
+                    s.index("knowledge_base");
+                    // KNN 召回（带权限预过滤）
+                    s.knn(kn -> kn
+                            .field(knnQueryPlanner.field())
+                            .queryVector(knnQueryPlanner.queryVector(queryVector))
+                            .k(recallK)
+                            .numCandidates(numCandidates)
+                            .filter(knnFilter)
+                    );
+                    // 必须命中关键词 + 权限过滤
+                    s.query(q -> q.bool(b -> b
+                            .must(mst -> mst.match(m -> m.field("textContent").query(query)))
+                            .filter(permissionFilter)
+                    ));
+
+                    // 第二阶段 BM25 rescore
+                    s.rescore(r -> r
+                            .windowSize(rescoreWindow)
+                            .query(rq -> rq
+                                    .queryWeight(0.2d)               // 保留部分 KNN 分
+                                    .rescoreQueryWeight(1.0d)        // BM25 主导
+                                    .query(rqq -> rqq.match(m -> m
+                                            .field("textContent")
+                                            .query(query)
+                                            .operator(Operator.And)
+                                    ))
+                            )
+                    );
+                    s.size(size);
+                    // 分片级超时，超时后返回已收集到的命中
+                    s.timeout(budget.esTimeout());
+                    return budget.profile(project(s, query));
+                }, EsDocument.class);
+    }
+
+    /**
+     * 基于 RetrievalStore 的混合检索（进程内 Lucene）
+     * 两路召回后按配置的融合策略合并；存储层不支持 rescore，rescore 模式同样走融合
+     */
+    private SearchOutcome storeSearch(String query, String userId, int topK, SearchBudget budget) {
+        SearchProperties.Hybrid hybridConfig = searchProperties.getHybrid();
+        int legSize = Math.max(topK, hybridConfig.getFusionWindowSize());
+        try {
+            CompletableFuture<float[]> vectorFuture = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return queryEmbeddingCacheService.getOrEmbed(query);
+                } catch (Exception e) {
+                    logger.error("生成向量失败", e);
+                    return null;
+                }
+            }, searchExecutor);
+            if (budget.isEnabled()) {
+                vectorFuture.completeOnTimeout(null, budget.embedBudgetMs(), TimeUnit.MILLISECONDS);
+            }
+
+            PermissionContext context = permissionContextService.getContext(userId);
+            long lexicalStart = System.currentTimeMillis();
+            List<SearchResult> lexical = retrievalStore.lexicalSearch(query, context, legSize);
+            budget.outcome.recordTiming("store_lexical", System.currentTimeMillis() - lexicalStart);
+
+            float[] queryVector = vectorFuture.join();
+            List<SearchResult> vector = null;
+            if (queryVector == null) {
+                logger.warn("向量生成失败或超出预算，仅使用 BM25 结果");
+                budget.outcome.markPartial(DEGRADED_EMBEDDING);
+            } else {
+                int numCandidates = Math.min(topK * searchProperties.getKnn().getRecallMultiplier(),
+                        searchProperties.getKnn().getMaxNumCandidates());
+                long vectorStart = System.currentTimeMillis();
+                vector = retrievalStore.vectorSearch(queryVector, context, legSize, numCandidates);
+                budget.outcome.recordTiming("store_vector", System.currentTimeMillis() - vectorStart);
+            }
+
+            List<SearchResult> fused = hybridConfig.getFusionStrategy() == SearchProperties.FusionStrategy.WEIGHTED
+                    ? RankFusionUtils.weightedScoreFusion(lexical, vector,
+                            hybridConfig.getLexicalWeight(), hybridConfig.getVectorWeight(), topK)
+                    : RankFusionUtils.reciprocalRankFusion(lexical, vector,
+                            hybridConfig.getLexicalWeight(), hybridConfig.getVectorWeight(),
+                            hybridConfig.getRrfRankConstant(), topK);
+            attachFileNames(fused, budget);
+            return budget.finish(fused);
+        } catch (Exception e) {
+            logger.error("检索存储搜索失败", e);
+            budget.outcome.markPartial(DEGRADED_ERROR);
+            return budget.finish(Collections.emptyList());
+        }
+    }
+
+    /**
+     * 不带权限过滤的向量召回，与线上 KNN 分支使用相同的字段、召回窗口、过采样与重排配置，供召回率评估使用
+     *
+     * @param queryVector 查询向量
+     * @param k           返回数量
+     */
+    public List<SearchResult> vectorRecallForEvaluation(float[] queryVector, int k) {
+        List<Float> vector = new ArrayList<>(queryVector.length);
+        for (float v : queryVector) {
+            vector.add(v);
+        }
+        int recallK = Math.min(k * searchProperties.getKnn().getRecallMultiplier(), searchProperties.getKnn().getMaxNumCandidates());
+        SearchProperties.Deadline unlimited = new SearchProperties.Deadline();
+        unlimited.setEnabled(false);
+        return vectorLeg("", vector, Query.of(q -> q.matchAll(m -> m)), new KnnWindow(recallK, recallK), k,
+                -1L, new SearchBudget(unlimited, new SearchOutcome()));
+    }
+
     /**
      * 仅使用文本匹配的带权限搜索方法
      */
-    private List<SearchResult> textOnlySearchWithPermission(String query, String userDbId, List<String> userEffectiveTags, int topK) {
+    private List<SearchResult> textOnlySearchWithPermission(String query, PermissionContext context, int topK, SearchBudget budget) {
         try {
-            logger.debug("开始执行纯文本搜索，用户数据库ID: {}, 标签: {}", userDbId, userEffectiveTags);
+            logger.debug("开始执行纯文本搜索，用户数据库ID: {}, 标签: {}", context.getUserDbId(), context.getEffectiveTags());
 
-            SearchResponse<EsDocument> response = esClient.search(s -> s
+            long esStart = System.currentTimeMillis();
+            SearchResponse<EsDocument> response = budget.client().search(s -> budget.profile(project(s
                     .index("knowledge_base")
                     .query(q -> q
                             .bool(b -> b
@@ -190,80 +856,29 @@ public class HybridSearchService {
                                             )
                                     )
                                     // 权限过滤
-                                    .filter(f -> f
-                                            .bool(bf -> bf
-                                                    // 条件1: 用户可以访问自己的文档
-                                                    .should(s1 -> s1
-                                                            .term(t -> t
-                                                                    .field("userId")
-                                                                    .value(userDbId)
-                                                            )
-                                                    )
-                                                    // 条件2: 用户可以访问公开的文档
-                                                    .should(s2 -> s2
-                                                            .term(t -> t
-                                                                    .field("public")
-                                                                    .value(true)
-                                                            )
-                                                    )
-                                                    // 条件3: 用户可以访问其所属组织的文档（包含层级关系）
-                                                    .should(s3 -> {
-                                                        if (userEffectiveTags.isEmpty()) {
-                                                            return s3.matchNone(mn -> mn);
-                                                        } else if (userEffectiveTags.size() == 1) {
-                                                            // 单个标签使用 term 查询
-                                                            return s3.term(t -> t
-                                                                    .field("orgTag")
-                                                                    .value(userEffectiveTags.get(0))
-                                                            );
-                                                        } else {
-                                                            // 多个标签使用 bool should 组合多个 term 查询
-                                                            return s3.bool(innerBool -> {
-                                                                userEffectiveTags.forEach(tag ->
-                                                                        innerBool.should(sh -> sh.term(t -> t
-                                                                                .field("orgTag")
-                                                                                .value(tag)
-                                                                        ))
-                                                                );
-                                                                return innerBool;
-                                                            });
-                                                        }
-                                                    })
-                                            )
-                                    )
+                                    .filter(context.getFilter())
                             )
                     )
                     .minScore(0.3d)
-                    .size(topK),
+                    .timeout(budget.esTimeout())
+                    .size(topK), query)),
                     EsDocument.class
             );
+            budget.outcome.recordTiming("es", System.currentTimeMillis() - esStart);
+            budget.checkTimedOut(response.timedOut());
+            budget.captureProfile("text_only", response);
 
             logger.debug("纯文本查询执行完成，命中数量: {}, 最大分数: {}", 
                 response.hits().total().value(), response.hits().maxScore());
 
-            List<SearchResult> results = response.hits().hits().stream()
-                    .map(hit -> {
-                        assert hit.source() != null;
-                        logger.debug("纯文本搜索结果 - 文件: {}, 块: {}, 分数: {}, 内容: {}", 
-                            hit.source().getFileMd5(), hit.source().getChunkId(), hit.score(), 
-                            hit.source().getTextContent().substring(0, Math.min(50, hit.source().getTextContent().length())));
-                        return new SearchResult(
-                                hit.source().getFileMd5(),
-                                hit.source().getChunkId(),
-                                hit.source().getTextContent(),
-                                hit.score(),
-                                hit.source().getUserId(),
-                                hit.source().getOrgTag(),
-                                hit.source().isPublic()
-                        );
-                    })
-                    .toList();
+            List<SearchResult> results = toSearchResults(response.hits().hits());
 
             logger.debug("返回纯文本搜索结果数量: {}", results.size());
-            attachFileNames(results);
+            attachFileNames(results, budget);
             return results;
         } catch (Exception e) {
             logger.error("纯文本搜索失败", e);
+            budget.outcome.markPartial(DEGRADED_ERROR);
             return new ArrayList<>();
         }
     }
@@ -287,10 +902,11 @@ public class HybridSearchService {
 
             SearchResponse<EsDocument> response = esClient.search(s -> {
                         s.index("knowledge_base");
-                        int recallK = topK * 30;
+                        int recallK = Math.min(topK * searchProperties.getKnn().getRecallMultiplier(),
+                                searchProperties.getKnn().getMaxNumCandidates());
                         s.knn(kn -> kn
-                                .field("vector")
-                                .queryVector(queryVector)
+                                .field(knnQueryPlanner.field())
+                                .queryVector(knnQueryPlanner.queryVector(queryVector))
                                 .k(recallK)
                                 .numCandidates(recallK)
                         );
@@ -312,20 +928,10 @@ public class HybridSearchService {
                                 )
                         );
                         s.size(topK);
-                        return s;
+                        return project(s, query);
                     }, EsDocument.class);
 
-            return response.hits().hits().stream()
-                    .map(hit -> {
-                        assert hit.source() != null;
-                        return new SearchResult(
-                                hit.source().getFileMd5(),
-                                hit.source().getChunkId(),
-                                hit.source().getTextContent(),
-                                hit.score()
-                        );
-                    })
-                    .toList();
+            return toSearchResults(response.hits().hits());
         } catch (Exception e) {
             logger.error("搜索失败", e);
             // 发生异常时尝试使用纯文本搜索作为后备方案
@@ -343,7 +949,7 @@ public class HybridSearchService {
      * 仅使用文本匹配的搜索方法
      */
     private List<SearchResult> textOnlySearch(String query, int topK) throws Exception {
-        SearchResponse<EsDocument> response = esClient.search(s -> s
+        SearchResponse<EsDocument> response = esClient.search(s -> project(s
                 .index("knowledge_base")
                 .query(q -> q
                         .match(m -> m
@@ -351,21 +957,11 @@ public class HybridSearchService {
                                 .query(query)
                         )
                 )
-                .size(topK),
+                .size(topK), query),
                 EsDocument.class
         );
 
-        return response.hits().hits().stream()
-                .map(hit -> {
-                    assert hit.source() != null;
-                    return new SearchResult(
-                            hit.source().getFileMd5(),
-                            hit.source().getChunkId(),
-                            hit.source().getTextContent(),
-                            hit.score()
-                    );
-                })
-                .toList();
+        return toSearchResults(response.hits().hits());
     }
 
     /**
@@ -373,12 +969,8 @@ public class HybridSearchService {
      */
     private List<Float> embedToVectorList(String text) {
         try {
-            List<float[]> vecs = embeddingClient.embed(List.of(text));
-            if (vecs == null || vecs.isEmpty()) {
-                logger.warn("生成的向量为空");
-                return null;
-            }
-            float[] raw = vecs.get(0);
+            // 经查询向量缓存获取，热点问题无需重复调用向量 API
+            float[] raw = queryEmbeddingCacheService.getOrEmbed(text);
             List<Float> list = new ArrayList<>(raw.length);
             for (float v : raw) {
                 list.add(v);
@@ -391,66 +983,567 @@ public class HybridSearchService {
     }
     
     /**
-     * 获取用户的有效组织标签（包含层级关系）
+     * 融合检索：BM25 与 KNN 两路独立、并行召回，在进程内按配置的策略融合
+     * 与 rescore 方案不同，仅语义命中（不含关键词）的分块也能进入结果
+     * BM25 分支与向量生成重叠执行，端到端耗时接近 max(向量生成, ES) 而不是两者之和
      */
-    private List<String> getUserEffectiveOrgTags(String userId) {
-        logger.debug("获取用户有效组织标签，用户ID: {}", userId);
+    private List<SearchResult> fusionSearch(String query, CompletableFuture<List<Float>> vectorFuture,
+                                            CompletableFuture<PermissionScope> scopeFuture, int topK, SearchBudget budget,
+                                            String collapseField) {
+        SearchProperties.Hybrid hybridConfig = searchProperties.getHybrid();
+        int legSize = Math.max(topK, hybridConfig.getFusionWindowSize());
+
+        // BM25 分支只依赖权限上下文，在向量生成期间即可发出
+        CompletableFuture<List<SearchResult>> lexicalFuture = scopeFuture.thenApplyAsync(
+                scope -> lexicalLeg(query, scope.context.getFilter(), legSize, budget, collapseField), searchExecutor);
+        // KNN 分支在向量就绪后加入
+        CompletableFuture<List<SearchResult>> vectorLegFuture = vectorFuture.thenCombineAsync(scopeFuture,
+                (queryVector, scope) -> {
+                    if (queryVector == null) {
+                        logger.warn("向量生成失败或超出预算，融合检索仅使用 BM25 结果");
+                        budget.outcome.markPartial(DEGRADED_EMBEDDING);
+                        return null;
+                    }
+                    if (scope.exact) {
+                        List<SearchResult> exact = exactVectorLeg(queryVector, scope.context, legSize, budget);
+                        if (exact != null) {
+                            return exact;
+                        }
+                    }
+                    Query knnFilter = candidateFileFilter(queryVector, scope.context.getFilter(), budget);
+                    return vectorLeg(query, queryVector, knnFilter, scope.window, legSize, scope.visibleCount, budget);
+                }, searchExecutor);
+
+        List<SearchResult> lexical = joinLeg(lexicalFuture, "BM25", budget);
+        List<SearchResult> vector = joinLeg(vectorLegFuture, "KNN", budget);
+        if (lexical == null && vector == null) {
+            throw new RuntimeException("BM25 与 KNN 召回均失败");
+        }
+        logger.debug("融合检索召回数量 - BM25: {}, KNN: {}",
+                lexical == null ? 0 : lexical.size(), vector == null ? 0 : vector.size());
+
+        if (hybridConfig.getFusionStrategy() == SearchProperties.FusionStrategy.WEIGHTED) {
+            return RankFusionUtils.weightedScoreFusion(lexical, vector,
+                    hybridConfig.getLexicalWeight(), hybridConfig.getVectorWeight(), topK);
+        }
+        return RankFusionUtils.reciprocalRankFusion(lexical, vector,
+                hybridConfig.getLexicalWeight(), hybridConfig.getVectorWeight(),
+                hybridConfig.getRrfRankConstant(), topK);
+    }
+
+    /**
+     * BM25 召回分支，collapseField 不为 null 时每个字段取值只返回得分最高的分块
+     */
+    private List<SearchResult> lexicalLeg(String query, Query permissionFilter, int size, SearchBudget budget,
+                                          String collapseField) {
         try {
-            // 获取用户名
-            User user;
-            try {
-                Long userIdLong = Long.parseLong(userId);
-                logger.debug("解析用户ID为Long: {}", userIdLong);
-                user = userRepository.findById(userIdLong)
-                    .orElseThrow(() -> new CustomException("User not found with ID: " + userId, HttpStatus.NOT_FOUND));
-                logger.debug("通过ID找到用户: {}", user.getUsername());
-            } catch (NumberFormatException e) {
-                // 如果userId不是数字格式，则假设它就是username
-                logger.debug("用户ID不是数字格式，作为用户名查找: {}", userId);
-                user = userRepository.findByUsername(userId)
-                    .orElseThrow(() -> new CustomException("User not found: " + userId, HttpStatus.NOT_FOUND));
-                logger.debug("通过用户名找到用户: {}", user.getUsername());
+            long esStart = System.currentTimeMillis();
+            SearchResponse<EsDocument> response = budget.client().search(s -> {
+                        s.index("knowledge_base")
+                                .query(q -> q.bool(b -> b
+                                        .must(m -> m.match(ma -> ma.field("textContent").query(query)))
+                                        .filter(permissionFilter)
+                                ))
+                                .timeout(budget.esTimeout())
+                                .size(size);
+                        if (collapseField != null) {
+                            s.collapse(c -> c.field(collapseField));
+                        }
+                        return budget.profile(project(s, query));
+                    }, EsDocument.class
+            );
+            budget.outcome.recordTiming("es_lexical", System.currentTimeMillis() - esStart);
+            budget.checkTimedOut(response.timedOut());
+            budget.captureProfile("lexical", response);
+            return toSearchResults(response.hits().hits());
+        } catch (Exception e) {
+            throw new RuntimeException("BM25 召回失败", e);
+        }
+    }
+
+    /**
+     * KNN 召回分支，启用自适应召回时从小窗口开始，按需放大
+     */
+    private List<SearchResult> vectorLeg(String query, List<Float> queryVector, Query permissionFilter, KnnWindow window,
+                                         int size, long visibleCount, SearchBudget budget) {
+        if (!adaptiveRecallPolicy.isEnabled()) {
+            return knnSearch(query, queryVector, permissionFilter, window, size, budget);
+        }
+        int maxK = Math.max(window.k, size + 1);
+        int windowK = adaptiveRecallPolicy.initialK(size, maxK);
+        int widenings = 0;
+        long start = System.currentTimeMillis();
+        while (true) {
+            // 多取一条用于计算第 size 与第 size+1 名的分差
+            List<SearchResult> results = knnSearch(query, queryVector, permissionFilter,
+                    scaleWindow(window, windowK), size + 1, budget);
+            AdaptiveRecallPolicy.Decision decision =
+                    adaptiveRecallPolicy.evaluate(size, windowK, maxK, widenings, results, visibleCount);
+            boolean widen = decision == AdaptiveRecallPolicy.Decision.FLAT_GAP
+                    || decision == AdaptiveRecallPolicy.Decision.UNDERFILLED;
+            if (widen && budget.remainingMs() > 0) {
+                windowK = adaptiveRecallPolicy.widen(windowK, maxK);
+                widenings++;
+                continue;
             }
-            
-            // 通过orgTagCacheService获取用户的有效标签集合
-            List<String> effectiveTags = orgTagCacheService.getUserEffectiveOrgTags(user.getUsername());
-            logger.debug("用户 {} 的有效组织标签: {}", user.getUsername(), effectiveTags);
-            return effectiveTags;
+            adaptiveRecallPolicy.record("vector", widen ? AdaptiveRecallPolicy.Decision.EXHAUSTED : decision,
+                    widenings, windowK, maxK);
+            // 各轮 ES 耗时合计
+            budget.outcome.recordTiming("es_vector", System.currentTimeMillis() - start);
+            return results.size() > size ? new ArrayList<>(results.subList(0, size)) : results;
+        }
+    }
+
+    /**
+     * 单次 KNN 召回
+     */
+    private List<SearchResult> knnSearch(String query, List<Float> queryVector, Query permissionFilter, KnnWindow window,
+                                         int size, SearchBudget budget) {
+        int k = knnQueryPlanner.recallK(Math.max(window.k, size));
+        List<Float> knnVector = knnQueryPlanner.queryVector(queryVector);
+        int numCandidates = Math.min(Math.max(window.numCandidates, k), searchProperties.getKnn().getMaxNumCandidates());
+        try {
+            long esStart = System.currentTimeMillis();
+            SearchResponse<EsDocument> response = budget.client().search(s -> {
+                        s.index("knowledge_base")
+                                .knn(kn -> kn
+                                        .field(knnQueryPlanner.field())
+                                        .queryVector(knnVector)
+                                        .k(k)
+                                        .numCandidates(numCandidates)
+                                        .filter(permissionFilter)
+                                )
+                                .timeout(budget.esTimeout())
+                                .size(size);
+                        if (knnQueryPlanner.needsExactRescore()) {
+                            s.rescore(knnQueryPlanner.exactRescore(queryVector, k));
+                        }
+                        return budget.profile(project(s, query));
+                    }, EsDocument.class
+            );
+            budget.outcome.recordTiming("es_vector", System.currentTimeMillis() - esStart);
+            budget.checkTimedOut(response.timedOut());
+            budget.captureProfile("vector", response);
+            return toSearchResults(response.hits().hits());
         } catch (Exception e) {
-            logger.error("获取用户有效组织标签失败: {}", e.getMessage(), e);
-            return Collections.emptyList(); // 返回空列表作为默认值
+            throw new RuntimeException("KNN 召回失败", e);
         }
     }
 
     /**
-     * 获取用户的数据库ID用于权限过滤
+     * 两阶段检索的第一阶段：先按文件质心召回候选文件，KNN 只在候选文件的分块内进行；
+     * 未启用、无候选文件或召回失败时返回原权限过滤条件
      */
-    private String getUserDbId(String userId) {
-        logger.debug("获取用户数据库ID，用户ID: {}", userId);
+    private Query candidateFileFilter(List<Float> queryVector, Query permissionFilter, SearchBudget budget) {
+        SearchProperties.TwoStage twoStage = searchProperties.getTwoStage();
+        // 存量文件尚未全部回填质心时限定候选文件会漏掉这些文件，暂不启用第一阶段
+        if (!twoStage.isEnabled() || !fileCentroidService.isAvailable() || !fileCentroidService.isCoverageComplete()) {
+            return permissionFilter;
+        }
         try {
-            // 获取用户名
-            User user;
-            try {
-                Long userIdLong = Long.parseLong(userId);
-                logger.debug("解析用户ID为Long: {}", userIdLong);
-                user = userRepository.findById(userIdLong)
-                    .orElseThrow(() -> new CustomException("User not found with ID: " + userId, HttpStatus.NOT_FOUND));
-                logger.debug("通过ID找到用户: {}", user.getUsername());
-                return userIdLong.toString(); // 如果输入已经是数字ID，直接返回
-            } catch (NumberFormatException e) {
-                // 如果userId不是数字格式，则假设它就是username
-                logger.debug("用户ID不是数字格式，作为用户名查找: {}", userId);
-                user = userRepository.findByUsername(userId)
-                    .orElseThrow(() -> new CustomException("User not found: " + userId, HttpStatus.NOT_FOUND));
-                logger.debug("通过用户名找到用户: {}, ID: {}", user.getUsername(), user.getId());
-                return user.getId().toString(); // 返回用户的数据库ID
+            long start = System.currentTimeMillis();
+            List<String> files = fileCentroidService.topFiles(queryVector, permissionFilter, twoStage.getFileCandidates());
+            budget.outcome.recordTiming("file_centroid", System.currentTimeMillis() - start);
+            if (files.isEmpty()) {
+                return permissionFilter;
+            }
+            logger.debug("两阶段检索候选文件数量: {}", files.size());
+            return FileCentroidService.restrictToFiles(permissionFilter, files);
+        } catch (Exception e) {
+            logger.warn("文件质心召回失败，KNN 回退到全部可见分块: {}", e.getMessage());
+            return permissionFilter;
+        }
+    }
+
+    /**
+     * 精确向量召回分支，向量段不可用或计算失败时返回 null，由调用方回退到 ES KNN
+     */
+    private List<SearchResult> exactVectorLeg(List<Float> queryVector, PermissionContext context, int size,
+                                              SearchBudget budget) {
+        float[] vector = new float[queryVector.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = queryVector.get(i);
+        }
+        try {
+            long exactStart = System.currentTimeMillis();
+            List<SearchResult> results = exactKnnService.search(vector, context, size, budget.remainingMs());
+            budget.outcome.recordTiming("exact_knn", System.currentTimeMillis() - exactStart);
+            return results;
+        } catch (Exception e) {
+            logger.warn("精确向量检索失败，回退到 ES KNN: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 在剩余预算内等待权限范围（MySQL、Redis 与 ES _count），超时返回 null 并标记为部分结果
+     */
+    private PermissionScope joinScope(CompletableFuture<PermissionScope> scopeFuture, SearchBudget budget) throws Exception {
+        if (!budget.isEnabled()) {
+            return scopeFuture.join();
+        }
+        try {
+            return scopeFuture.get(Math.max(budget.remainingMs(), 1L), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("权限范围解析超出总预算，返回空结果");
+            budget.outcome.markPartial(DEGRADED_DEADLINE);
+            return null;
+        }
+    }
+
+    private List<SearchResult> joinLeg(CompletableFuture<List<SearchResult>> future, String legName, SearchBudget budget) {
+        try {
+            return future.get(Math.max(budget.remainingMs(), 1L), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("{} 召回分支超出总预算，仅使用另一路结果", legName);
+            budget.outcome.markPartial(DEGRADED_DEADLINE);
+            return null;
+        } catch (Exception e) {
+            logger.warn("{} 召回分支失败，仅使用另一路结果: {}", legName, e.getMessage());
+            budget.outcome.markPartial(DEGRADED_ERROR);
+            return null;
+        }
+    }
+
+    /**
+     * 检索结果投影：_source 仅返回 SearchResult 所需字段，避免每个命中都传输并反序列化 2048 维向量
+     * 开启片段模式时不返回完整 textContent，改为返回长度受限的高亮片段
+     */
+    private SearchRequest.Builder project(SearchRequest.Builder s, String query) {
+        SearchProperties.Result resultConfig = searchProperties.getResult();
+        if (!resultConfig.isSnippetEnabled()) {
+            return s.source(src -> src.filter(f -> f.includes(SOURCE_FIELDS)));
+        }
+        int fragmentSize = resultConfig.getSnippetFragmentSize();
+        return s.source(src -> src.filter(f -> f.includes(SNIPPET_SOURCE_FIELDS)))
+                .highlight(h -> h
+                        .highlightQuery(hq -> hq.match(m -> m.field("textContent").query(query)))
+                        .fields("textContent", hf -> hf
+                                .fragmentSize(fragmentSize)
+                                .numberOfFragments(1)
+                                // 未命中关键词的语义结果返回开头片段
+                                .noMatchSize(fragmentSize)
+                                .preTags("")
+                                .postTags("")
+                        )
+                );
+    }
+
+    private List<SearchResult> toSearchResults(List<Hit<EsDocument>> hits) {
+        List<SearchResult> results = new ArrayList<>(hits.size());
+        for (Hit<EsDocument> hit : hits) {
+            EsDocument source = hit.source();
+            if (source == null) {
+                continue;
+            }
+            // 片段模式下使用高亮片段代替完整文本
+            List<String> fragments = hit.highlight().get("textContent");
+            String textContent = fragments != null && !fragments.isEmpty()
+                    ? String.join(" ", fragments)
+                    : source.getTextContent();
+            results.add(new SearchResult(
+                    source.getFileMd5(),
+                    source.getChunkId(),
+                    textContent,
+                    hit.score(),
+                    source.getUserId(),
+                    source.getOrgTag(),
+                    source.isPublic()
+            ));
+        }
+        return results;
+    }
+
+    /**
+     * 批量生成查询向量，失败时返回 null
+     */
+    private List<List<Float>> embedAllToVectorLists(List<String> texts) {
+        try {
+            List<float[]> raws = queryEmbeddingCacheService.getOrEmbedAll(texts);
+            List<List<Float>> lists = new ArrayList<>(raws.size());
+            for (float[] raw : raws) {
+                List<Float> list = new ArrayList<>(raw.length);
+                for (float v : raw) {
+                    list.add(v);
+                }
+                lists.add(list);
+            }
+            return lists;
+        } catch (Exception e) {
+            logger.error("批量生成向量失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 获取用户的权限上下文（本地缓存）并计算 KNN 召回窗口
+     */
+    private PermissionScope resolvePermissionScope(String userId, int topK, SearchBudget budget) {
+        long start = System.currentTimeMillis();
+        PermissionContext context = permissionContextService.getContext(userId, budget.outcome);
+        budget.outcome.recordTiming("permission", System.currentTimeMillis() - start);
+        logger.debug("用户 {} 的数据库ID: {}, 有效组织标签: {}", userId, context.getUserDbId(), context.getEffectiveTags());
+
+        ElasticsearchClient client = budget.client();
+        KnnWindow window = resolveKnnWindow(topK, context, client);
+        logger.debug("KNN 召回窗口 - k: {}, numCandidates: {}", window.k, window.numCandidates);
+        return new PermissionScope(context, window, routeToExactKnn(context, client), visibleCount(context, client));
+    }
+
+    /**
+     * 权限范围内的分块数不超过配置上限时，向量召回走精确检索
+     */
+    private boolean routeToExactKnn(PermissionContext context, ElasticsearchClient client) {
+        if (!exactKnnService.isEnabled()) {
+            return false;
+        }
+        try {
+            long filteredCount = countDocuments(filterCacheKey(context), context.getFilter(), client);
+            boolean exact = exactKnnService.accepts(filteredCount);
+            logger.debug("权限范围分块数: {}, 精确向量检索: {}", filteredCount, exact);
+            return exact;
+        } catch (Exception e) {
+            logger.warn("统计权限范围分块数失败，使用 ES KNN: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 自适应召回需要的可见分块数（与选择性估算共用计数缓存），未开启或统计失败时返回 -1
+     */
+    private long visibleCount(PermissionContext context, ElasticsearchClient client) {
+        if (!adaptiveRecallPolicy.isEnabled()) {
+            return -1L;
+        }
+        try {
+            return countDocuments(filterCacheKey(context), context.getFilter(), client);
+        } catch (Exception e) {
+            logger.warn("统计可见分块数失败: {}", e.getMessage());
+            return -1L;
+        }
+    }
+
+    private String filterCacheKey(PermissionContext context) {
+        return "filter:" + context.getUserDbId() + ":"
+                + String.join(",", context.getEffectiveTags().stream().sorted().toList());
+    }
+
+    /**
+     * 计算 KNN 召回窗口
+     * 默认 k = numCandidates = topK * recallMultiplier；开启自适应后根据权限过滤的选择性调整：
+     * 过滤后文档数不超过召回窗口时直接按过滤后文档数召回（ES 会退化为精确搜索），
+     * 选择性越低则放大 numCandidates，保证受限用户仍能拿到正确的 top-k
+     */
+    private KnnWindow resolveKnnWindow(int topK, PermissionContext context, ElasticsearchClient client) {
+        SearchProperties.Knn knnConfig = searchProperties.getKnn();
+        int maxCandidates = knnConfig.getMaxNumCandidates();
+        int recallK = Math.min(topK * knnConfig.getRecallMultiplier(), maxCandidates);
+        if (!knnConfig.isAdaptiveCandidates()) {
+            return new KnnWindow(recallK, recallK);
+        }
+
+        try {
+            long filteredCount = countDocuments(filterCacheKey(context), context.getFilter(), client);
+            long totalCount = countDocuments("total", null, client);
+
+            if (filteredCount <= recallK) {
+                int k = (int) Math.max(topK, filteredCount);
+                logger.debug("权限过滤后文档数 {} 不超过召回窗口，按精确召回处理", filteredCount);
+                return new KnnWindow(k, k);
             }
+
+            double selectivity = totalCount > 0 ? (double) filteredCount / totalCount : 1.0d;
+            int numCandidates = (int) Math.min(maxCandidates, Math.ceil(recallK / Math.sqrt(Math.max(selectivity, 1e-6))));
+            logger.debug("权限过滤选择性: {}/{}={}, numCandidates: {}", filteredCount, totalCount, selectivity, numCandidates);
+            return new KnnWindow(recallK, Math.max(recallK, numCandidates));
         } catch (Exception e) {
-            logger.error("获取用户数据库ID失败: {}", e.getMessage(), e);
-            throw new RuntimeException("获取用户数据库ID失败", e);
+            logger.warn("估算权限过滤选择性失败，使用默认召回窗口: {}", e.getMessage());
+            return new KnnWindow(recallK, recallK);
         }
     }
 
+    /**
+     * 统计满足过滤条件的文档数，结果按配置的 TTL 缓存
+     */
+    private long countDocuments(String cacheKey, Query filter, ElasticsearchClient client) throws Exception {
+        long now = System.currentTimeMillis();
+        CachedCount cached = filteredCountCache.get(cacheKey);
+        if (cached != null && cached.expireAt > now) {
+            return cached.count;
+        }
+
+        long count = client.count(c -> {
+            c.index("knowledge_base");
+            if (filter != null) {
+                c.query(filter);
+            }
+            return c;
+        }).count();
+
+        long ttlMillis = searchProperties.getKnn().getSelectivityCacheTtlSeconds() * 1000L;
+        if (filteredCountCache.size() > MAX_COUNT_CACHE_SIZE) {
+            filteredCountCache.clear();
+        }
+        filteredCountCache.put(cacheKey, new CachedCount(count, now + ttlMillis));
+        return count;
+    }
+
+    /**
+     * 按比例缩小召回窗口，numCandidates 与 k 保持原有比例（自适应选择性放大的部分随之缩放）
+     */
+    private KnnWindow scaleWindow(KnnWindow full, int k) {
+        if (k >= full.k) {
+            return full;
+        }
+        int numCandidates = (int) Math.ceil((double) full.numCandidates * k / full.k);
+        return new KnnWindow(k, Math.max(k, numCandidates));
+    }
+
+    private static class KnnWindow {
+        private final int k;
+        private final int numCandidates;
+
+        KnnWindow(int k, int numCandidates) {
+            this.k = k;
+            this.numCandidates = numCandidates;
+        }
+    }
+
+    private static class PermissionScope {
+        private final PermissionContext context;
+        private final KnnWindow window;
+        private final boolean exact;
+        // 用户可见的分块数，-1 表示未知
+        private final long visibleCount;
+
+        PermissionScope(PermissionContext context, KnnWindow window, boolean exact, long visibleCount) {
+            this.context = context;
+            this.window = window;
+            this.exact = exact;
+            this.visibleCount = visibleCount;
+        }
+    }
+
+    /**
+     * 单次检索的延迟预算：总预算从检索开始计时，向量生成与 ES 各自的预算不超过剩余总预算
+     */
+    private class SearchBudget {
+        private final SearchProperties.Deadline config;
+        private final SearchOutcome outcome;
+        private final long startMillis = System.currentTimeMillis();
+
+        SearchBudget(SearchProperties.Deadline config, SearchOutcome outcome) {
+            this.config = config;
+            this.outcome = outcome;
+        }
+
+        long remainingMs() {
+            if (!config.isEnabled()) {
+                return Long.MAX_VALUE;
+            }
+            return config.getTotalMs() - (System.currentTimeMillis() - startMillis);
+        }
+
+        boolean isEnabled() {
+            return config.isEnabled();
+        }
+
+        long embedBudgetMs() {
+            return Math.max(1L, Math.min(config.getEmbedMs(), remainingMs()));
+        }
+
+        /**
+         * ES 请求的 timeout 参数，未启用预算时返回 null（使用 ES 默认行为）
+         */
+        String esTimeout() {
+            if (!config.isEnabled()) {
+                return null;
+            }
+            return Math.max(1L, Math.min(config.getEsMs(), remainingMs())) + "ms";
+        }
+
+        /**
+         * 以剩余预算作为客户端超时的 ES 客户端
+         * 请求的 timeout 参数只约束分片执行，节点排队、网络传输与连接池等待需要由客户端超时兜底；未启用预算时使用默认客户端
+         */
+        ElasticsearchClient client() {
+            if (!config.isEnabled()) {
+                return esClient;
+            }
+            int timeoutMs = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, remainingMs()));
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectionRequestTimeout(timeoutMs)
+                    .setConnectTimeout(timeoutMs)
+                    .setSocketTimeout(timeoutMs)
+                    .build();
+            RequestOptions.Builder options = esClient._transportOptions() instanceof RestClientOptions restOptions
+                    ? restOptions.restClientRequestOptions().toBuilder()
+                    : RequestOptions.DEFAULT.toBuilder();
+            return esClient.withTransportOptions(new RestClientOptions(options.setRequestConfig(requestConfig).build()));
+        }
+
+        /**
+         * 诊断模式下为 ES 请求开启 profile
+         */
+        SearchRequest.Builder profile(SearchRequest.Builder s) {
+            return outcome.isProfiling() ? s.profile(true) : s;
+        }
+
+        /**
+         * 诊断模式下记录 ES 返回的 profile 输出
+         */
+        void captureProfile(String leg, SearchResponse<?> response) {
+            if (outcome.isProfiling() && response.profile() != null) {
+                outcome.addEsProfile(leg, profileToMap(response.profile()));
+            }
+        }
+
+        void checkTimedOut(boolean timedOut) {
+            if (timedOut) {
+                logger.warn("ES 查询超出预算，返回部分结果");
+                outcome.markPartial(DEGRADED_ES_TIMEOUT);
+            }
+        }
+
+        SearchOutcome finish(List<SearchResult> results) {
+            outcome.setResults(results);
+            outcome.recordTiming("total", System.currentTimeMillis() - startMillis);
+            if (outcome.isPartial()) {
+                meterRegistry.counter("search.hybrid.partial", "reason", outcome.getDegradedReason()).increment();
+            }
+            return outcome;
+        }
+    }
+
+    private static class CachedCount {
+        private final long count;
+        private final long expireAt;
+
+        CachedCount(long count, long expireAt) {
+            this.count = count;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * ES profile 输出转为普通 Map，转换失败时返回 JSON 字符串
+     */
+    private Object profileToMap(Profile profile) {
+        String json = JsonpUtils.toJsonString(profile, esClient._jsonpMapper());
+        try {
+            return PROFILE_MAPPER.readValue(json, Map.class);
+        } catch (Exception e) {
+            logger.warn("解析 ES profile 输出失败: {}", e.getMessage());
+            return json;
+        }
+    }
+
+    private void attachFileNames(List<SearchResult> results, SearchBudget budget) {
+        long start = System.currentTimeMillis();
+        attachFileNames(results);
+        budget.outcome.recordTiming("file_names", System.currentTimeMillis() - start);
+    }
+
     private void attachFileNames(List<SearchResult> results) {
         if (results == null || results.isEmpty()) {
             return;
@@ -0,0 +1,80 @@
+package com.mydemo.inferaflow.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 索引代数服务
+ * 按权限主体（u:<用户ID>、org:<标签>、public）维护 Redis 中的单调递增计数器，
+ * 文档写入时递增对应主体的代数，删除时递增全局代数；
+ * 检索结果缓存按用户主体集合的代数快照校验，过期条目无需扫描即可失效
+ */
+@Service
+public class IndexGenerationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexGenerationService.class);
+
+    private static final String KEY_PREFIX = "search:generation:";
+    private static final String GLOBAL_SCOPE = "global";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 递增指定权限主体的代数
+     *
+     * @param principals 写入文档涉及的权限主体
+     */
+    public void bump(Collection<String> principals) {
+        try {
+            for (String principal : new TreeSet<>(principals)) {
+                stringRedisTemplate.opsForValue().increment(KEY_PREFIX + principal);
+            }
+            logger.debug("已递增索引代数: {}", principals);
+        } catch (Exception e) {
+            // 递增失败时缓存条目仍会在 TTL 后过期
+            logger.warn("递增索引代数失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 递增全局代数，所有检索结果缓存随之失效
+     */
+    public void bumpGlobal() {
+        bump(List.of(GLOBAL_SCOPE));
+    }
+
+    /**
+     * 获取用户可见范围的代数快照：全局代数 + 各主体代数，一次 multiGet 完成
+     *
+     * @param principals 用户的权限主体集合
+     * @return 代数快照，Redis 不可用时返回 null
+     */
+    public String currentStamp(List<String> principals) {
+        List<String> keys = new ArrayList<>(principals.size() + 1);
+        keys.add(KEY_PREFIX + GLOBAL_SCOPE);
+        principals.forEach(principal -> keys.add(KEY_PREFIX + principal));
+        try {
+            List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+            if (values == null) {
+                return null;
+            }
+            StringBuilder stamp = new StringBuilder();
+            for (String value : values) {
+                stamp.append(value == null ? "0" : value).append('.');
+            }
+            return stamp.toString();
+        } catch (Exception e) {
+            logger.warn("读取索引代数失败: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.mydemo.inferaflow.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch.core.ReindexResponse;
+import co.elastic.clients.elasticsearch.tasks.GetTasksResponse;
+import co.elastic.clients.json.JsonData;
+import com.mydemo.inferaflow.config.EsIndexInitializer;
+import com.mydemo.inferaflow.config.SearchProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 知识库索引迁移服务
+ * 按当前配置（量化向量索引类型、Matryoshka 前缀向量等）创建新版本索引，通过 _reindex 复制 _source 中的原始向量，无需重新调用向量 API；
+ * 复制完成后原子切换 knowledge_base 别名，检索与写入代码无需感知具体索引名
+ */
+@Service
+public class IndexMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexMigrationService.class);
+
+    private static final String ALIAS = "knowledge_base";
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    // 由完整向量计算 Matryoshka 前缀向量：截取前 dims 维并重新归一化
+    private static final String SHORT_VECTOR_SCRIPT =
+            "def v = ctx._source.vector; if (v != null) { int d = params.dims; double n = 0;"
+                    + " for (int i = 0; i < d; i++) { n += v[i] * v[i]; } n = Math.sqrt(n);"
+                    + " List s = new ArrayList(d); for (int i = 0; i < d; i++) { s.add(n == 0 ? 0 : v[i] / n); }"
+                    + " ctx._source.vectorShort = s; }";
+
+    @Autowired
+    private ElasticsearchClient esClient;
+
+    @Autowired
+    private EsIndexInitializer esIndexInitializer;
+
+    @Autowired
+    private IndexGenerationService indexGenerationService;
+
+    @Autowired
+    private SearchProperties searchProperties;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * 将知识库迁移到按当前配置创建的新索引
+     * 迁移期间旧索引设置写入阻断，避免复制过程中写入的分块丢失；向量化任务在此期间会失败并由消费端重试
+     *
+     * @return 迁移结果：旧索引、新索引、文档数量、向量索引类型、耗时
+     */
+    public Map<String, Object> migrate() {
+        // _reindex 基于 _source 复制文档，向量不在 _source 中时无法迁移
+        if (searchProperties.getIndex().isExcludeVectorSource()) {
+            throw new IllegalStateException("vector 已排除出 _source，无法通过 reindex 迁移，请重新向量化文件");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("已有索引迁移任务在执行");
+        }
+
+        long start = System.currentTimeMillis();
+        String sourceIndex = null;
+        String targetIndex = ALIAS + "_" + LocalDateTime.now().format(VERSION_FORMAT);
+        boolean targetCreated = false;
+        try {
+            boolean aliased = esClient.indices().existsAlias(e -> e.name(ALIAS)).value();
+            sourceIndex = aliased
+                    ? esClient.indices().getAlias(g -> g.name(ALIAS)).result().keySet().iterator().next()
+                    : ALIAS;
+            logger.info("开始迁移知识库索引: {} -> {}, 向量索引类型: {}",
+                    sourceIndex, targetIndex, searchProperties.getIndex().getVectorIndexType());
+
+            esIndexInitializer.createIndex(targetIndex);
+            targetCreated = true;
+            setWriteBlock(sourceIndex, true);
+
+            String source = sourceIndex;
+            SearchProperties.Matryoshka matryoshka = searchProperties.getMatryoshka();
+            ReindexResponse reindex = esClient.reindex(r -> {
+                r.source(s -> s.index(source))
+                        .dest(d -> d.index(targetIndex))
+                        .conflicts(Conflicts.Proceed)
+                        .waitForCompletion(false);
+                if (matryoshka.isEnabled()) {
+                    // 启用两级检索时在复制过程中补齐前缀向量
+                    r.script(sc -> sc.inline(i -> i
+                            .lang("painless")
+                            .source(SHORT_VECTOR_SCRIPT)
+                            .params("dims", JsonData.of(matryoshka.getDimension()))
+                    ));
+                }
+                return r;
+            });
+            waitForTask(reindex.task());
+            esClient.indices().refresh(r -> r.index(targetIndex));
+
+            long sourceCount = esClient.count(c -> c.index(source)).count();
+            long targetCount = esClient.count(c -> c.index(targetIndex)).count();
+            if (sourceCount != targetCount) {
+                throw new IllegalStateException("迁移后文档数量不一致: " + sourceCount + " != " + targetCount);
+            }
+
+            // 原子切换：旧索引本身名为 knowledge_base 时需在同一请求中删除它才能创建同名别名
+            esClient.indices().updateAliases(u -> {
+                u.actions(a -> a.add(add -> add.index(targetIndex).alias(ALIAS)));
+                if (aliased) {
+                    u.actions(a -> a.remove(rm -> rm.index(source).alias(ALIAS)));
+                } else {
+                    u.actions(a -> a.removeIndex(ri -> ri.index(source)));
+                }
+                return u;
+            });
+            // 检索结果缓存与精确检索向量段随全局代数失效
+            indexGenerationService.bumpGlobal();
+
+            long took = System.currentTimeMillis() - start;
+            logger.info("知识库索引迁移完成: {} -> {}, 文档数量: {}, 耗时: {}ms{}", sourceIndex, targetIndex, targetCount, took,
+                    aliased ? "，旧索引保留（写入阻断）以便回滚" : "");
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("sourceIndex", sourceIndex);
+            result.put("targetIndex", targetIndex);
+            result.put("documents", targetCount);
+            result.put("vectorIndexType", searchProperties.getIndex().getVectorIndexType().name().toLowerCase());
+            result.put("took", took);
+            return result;
+        } catch (Exception e) {
+            logger.error("知识库索引迁移失败: {} -> {}", sourceIndex, targetIndex, e);
+            rollback(sourceIndex, targetCreated ? targetIndex : null);
+            throw new RuntimeException("索引迁移失败: " + e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 轮询 reindex 任务直到完成，单次等待 60 秒，避免长时间占用 HTTP 连接
+     */
+    private void waitForTask(String taskId) throws Exception {
+        while (true) {
+            GetTasksResponse task = esClient.tasks().get(g -> g
+                    .taskId(taskId)
+                    .waitForCompletion(true)
+                    .timeout(t -> t.time("60s"))
+            );
+            if (task.completed()) {
+                if (task.error() != null) {
+                    throw new IllegalStateException("reindex 任务失败: " + task.error().reason());
+                }
+                return;
+            }
+            logger.info("reindex 任务执行中: {}", taskId);
+        }
+    }
+
+    private void setWriteBlock(String index, boolean blocked) throws Exception {
+        esClient.indices().putSettings(p -> p
+                .index(index)
+                .settings(s -> s.blocks(b -> b.write(blocked)))
+        );
+    }
+
+    private void rollback(String sourceIndex, String targetIndex) {
+        try {
+            if (sourceIndex != null) {
+                setWriteBlock(sourceIndex, false);
+            }
+            if (targetIndex != null) {
+                esClient.indices().delete(d -> d.index(targetIndex));
+            }
+        } catch (Exception e) {
+            logger.error("回滚索引迁移失败，请手动检查索引 {} 的写入阻断与 {} 是否残留", sourceIndex, targetIndex, e);
+        }
+    }
+}
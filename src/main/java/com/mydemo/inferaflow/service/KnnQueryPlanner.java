@@ -0,0 +1,103 @@
+package com.mydemo.inferaflow.service;
+
+import co.elastic.clients.elasticsearch.core.search.Rescore;
+import co.elastic.clients.json.JsonData;
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.utils.FloatVectorMath;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * KNN 查询规划
+ * 根据索引配置决定 KNN 使用的向量字段、查询向量、过采样后的召回数量，以及是否需要按完整 float 向量精确重排：
+ * 量化索引（int8/bbq）与 Matryoshka 前缀向量索引都只用于粗召回，排序以原始向量为准
+ */
+@Service
+public class KnnQueryPlanner {
+
+    public static final String VECTOR_FIELD = "vector";
+    public static final String SHORT_VECTOR_FIELD = "vectorShort";
+
+    private static final String EXACT_COSINE_SCRIPT = "(cosineSimilarity(params.query_vector, 'vector') + 1.0) / 2.0";
+
+    @Autowired
+    private SearchProperties searchProperties;
+
+    /**
+     * KNN 使用的向量字段
+     */
+    public String field() {
+        return searchProperties.getMatryoshka().isEnabled() ? SHORT_VECTOR_FIELD : VECTOR_FIELD;
+    }
+
+    /**
+     * KNN 使用的查询向量：启用 Matryoshka 时为截断并重新归一化的前缀
+     *
+     * @param queryVector 完整查询向量
+     */
+    public List<Float> queryVector(List<Float> queryVector) {
+        SearchProperties.Matryoshka matryoshka = searchProperties.getMatryoshka();
+        if (!matryoshka.isEnabled()) {
+            return queryVector;
+        }
+        float[] full = new float[queryVector.size()];
+        for (int i = 0; i < full.length; i++) {
+            full[i] = queryVector.get(i);
+        }
+        float[] prefix = FloatVectorMath.truncateAndNormalize(full, matryoshka.getDimension());
+        List<Float> list = new ArrayList<>(prefix.length);
+        for (float v : prefix) {
+            list.add(v);
+        }
+        return list;
+    }
+
+    /**
+     * 是否需要在 KNN 召回后按完整向量精确重排
+     */
+    public boolean needsExactRescore() {
+        return searchProperties.getMatryoshka().isEnabled()
+                || searchProperties.getIndex().getVectorIndexType() != SearchProperties.VectorIndexType.HNSW;
+    }
+
+    /**
+     * 按过采样倍数放大 KNN 召回数量，弥补粗召回的排序误差，不超过 numCandidates 上限
+     */
+    public int recallK(int k) {
+        double oversample = 1.0d;
+        if (searchProperties.getIndex().getVectorIndexType() != SearchProperties.VectorIndexType.HNSW) {
+            oversample = Math.max(oversample, searchProperties.getKnn().getQuantizedOversample());
+        }
+        if (searchProperties.getMatryoshka().isEnabled()) {
+            oversample = Math.max(oversample, searchProperties.getMatryoshka().getOversample());
+        }
+        return Math.min((int) Math.ceil(k * oversample), searchProperties.getKnn().getMaxNumCandidates());
+    }
+
+    /**
+     * 基于原始 float 向量的精确重排：量化索引只压缩 HNSW 图，未建图的完整向量也保留 doc values，均可通过脚本读取；
+     * 分数换算为 (1 + cos) / 2，与 ES cosine 相似度的分数范围一致
+     *
+     * @param queryVector 完整查询向量
+     * @param windowSize  重排窗口
+     */
+    public Rescore exactRescore(List<Float> queryVector, int windowSize) {
+        return Rescore.of(r -> r
+                .windowSize(windowSize)
+                .query(rq -> rq
+                        .queryWeight(0.0d)
+                        .rescoreQueryWeight(1.0d)
+                        .query(q -> q.scriptScore(ss -> ss
+                                .query(mq -> mq.matchAll(m -> m))
+                                .script(sc -> sc.inline(i -> i
+                                        .source(EXACT_COSINE_SCRIPT)
+                                        .params("query_vector", JsonData.of(queryVector))
+                                ))
+                        ))
+                )
+        );
+    }
+}
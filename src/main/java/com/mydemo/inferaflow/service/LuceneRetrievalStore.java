@@ -0,0 +1,248 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.SearchResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.KnnVectorsReader;
+import org.apache.lucene.codecs.KnnVectorsWriter;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 基于 Lucene 的进程内检索存储
+ * BM25 使用 SmartChineseAnalyzer 分词，向量使用 HNSW（余弦相似度），权限过滤为 acl 字段上的 TermInSetQuery；
+ * 适用于单节点部署以及无需网络的测试、基准场景
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "search.store.type", havingValue = "lucene")
+public class LuceneRetrievalStore implements RetrievalStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LuceneRetrievalStore.class);
+
+    // Lucene 默认向量维度上限为 1024，嵌入模型输出 2048 维
+    private static final int MAX_VECTOR_DIMENSIONS = 4096;
+
+    @Value("${search.store.lucene.path:./data/lucene-index}")
+    private String indexPath;
+
+    @Autowired(required = false)
+    private IndexGenerationService indexGenerationService;
+
+    private Directory directory;
+    private Analyzer analyzer;
+    private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = FSDirectory.open(Path.of(indexPath));
+        analyzer = new SmartChineseAnalyzer();
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                .setCodec(new Lucene99Codec() {
+                    @Override
+                    public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                        return new HighDimensionVectorsFormat(new Lucene99HnswVectorsFormat());
+                    }
+                });
+        indexWriter = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(indexWriter, null);
+        logger.info("Lucene 检索存储初始化完成 - 路径: {}, 文档数量: {}", indexPath, indexWriter.getDocStats().numDocs);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        indexWriter.close();
+        directory.close();
+        analyzer.close();
+    }
+
+    @Override
+    public void bulkIndex(List<EsDocument> documents) {
+        try {
+            logger.info("开始批量写入 Lucene，文档数量: {}", documents.size());
+            for (EsDocument doc : documents) {
+                indexWriter.updateDocument(new Term("id", doc.getId()), toLuceneDocument(doc));
+            }
+            indexWriter.commit();
+            searcherManager.maybeRefreshBlocking();
+            logger.info("Lucene 批量写入完成，文档数量: {}", documents.size());
+        } catch (Exception e) {
+            logger.error("Lucene 批量写入失败，文档数量: {}", documents.size(), e);
+            throw new RuntimeException("批量索引失败", e);
+        }
+        if (indexGenerationService != null) {
+            indexGenerationService.bump(documents.stream()
+                    .filter(doc -> doc.getAcl() != null)
+                    .flatMap(doc -> doc.getAcl().stream())
+                    .collect(Collectors.toSet()));
+        }
+    }
+
+    @Override
+    public void deleteByFileMd5(String fileMd5) {
+        try {
+            indexWriter.deleteDocuments(new Term("fileMd5", fileMd5));
+            indexWriter.commit();
+            searcherManager.maybeRefreshBlocking();
+        } catch (Exception e) {
+            throw new RuntimeException("删除文档失败", e);
+        }
+        if (indexGenerationService != null) {
+            indexGenerationService.bumpGlobal();
+        }
+    }
+
+    @Override
+    public List<SearchResult> lexicalSearch(String query, PermissionContext context, int size) {
+        Query textQuery = new QueryBuilder(analyzer).createBooleanQuery("textContent", query);
+        if (textQuery == null) {
+            // 查询分词后为空
+            return Collections.emptyList();
+        }
+        Query filtered = new BooleanQuery.Builder()
+                .add(textQuery, BooleanClause.Occur.MUST)
+                .add(aclFilter(context), BooleanClause.Occur.FILTER)
+                .build();
+        return search(filtered, size);
+    }
+
+    @Override
+    public List<SearchResult> vectorSearch(float[] queryVector, PermissionContext context, int k, int numCandidates) {
+        // 过滤条件选择性较高时 Lucene 会自动退化为精确搜索
+        Query knnQuery = new KnnFloatVectorQuery("vector", queryVector, Math.max(k, numCandidates), aclFilter(context));
+        return search(knnQuery, k);
+    }
+
+    private List<SearchResult> search(Query query, int size) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            TopDocs topDocs = searcher.search(query, size);
+            List<SearchResult> results = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                Document doc = searcher.storedFields().document(scoreDoc.doc);
+                results.add(new SearchResult(
+                        doc.get("fileMd5"),
+                        doc.getField("chunkId").numericValue().intValue(),
+                        doc.get("textContent"),
+                        (double) scoreDoc.score,
+                        doc.get("userId"),
+                        doc.get("orgTag"),
+                        "true".equals(doc.get("public"))
+                ));
+            }
+            return results;
+        } catch (IOException e) {
+            throw new RuntimeException("Lucene 检索失败", e);
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    logger.warn("释放 Lucene IndexSearcher 失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Query aclFilter(PermissionContext context) {
+        List<BytesRef> principals = context.getPrincipals().stream().map(BytesRef::new).toList();
+        return new TermInSetQuery("acl", principals);
+    }
+
+    private Document toLuceneDocument(EsDocument doc) {
+        Document document = new Document();
+        document.add(new StringField("id", doc.getId(), Field.Store.YES));
+        document.add(new StringField("fileMd5", doc.getFileMd5(), Field.Store.YES));
+        document.add(new StoredField("chunkId", doc.getChunkId()));
+        document.add(new TextField("textContent", doc.getTextContent(), Field.Store.YES));
+        if (doc.getUserId() != null) {
+            document.add(new StringField("userId", doc.getUserId(), Field.Store.YES));
+        }
+        if (doc.getOrgTag() != null) {
+            document.add(new StringField("orgTag", doc.getOrgTag(), Field.Store.YES));
+        }
+        document.add(new StringField("public", String.valueOf(doc.isPublic()), Field.Store.YES));
+        if (doc.getAcl() != null) {
+            doc.getAcl().forEach(principal -> document.add(new StringField("acl", principal, Field.Store.NO)));
+        }
+        if (doc.getVector() != null) {
+            document.add(new KnnFloatVectorField("vector", doc.getVector(), VectorSimilarityFunction.COSINE));
+        }
+        return document;
+    }
+
+    /**
+     * 放宽向量维度上限的 HNSW 格式包装，沿用被包装格式的名称，读取时按名称解析为标准格式
+     */
+    private static class HighDimensionVectorsFormat extends KnnVectorsFormat {
+        private final KnnVectorsFormat delegate;
+
+        HighDimensionVectorsFormat(KnnVectorsFormat delegate) {
+            super(delegate.getName());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public KnnVectorsWriter fieldsWriter(SegmentWriteState state) throws IOException {
+            return delegate.fieldsWriter(state);
+        }
+
+        @Override
+        public KnnVectorsReader fieldsReader(SegmentReadState state) throws IOException {
+            return delegate.fieldsReader(state);
+        }
+
+        @Override
+        public int getMaxDimensions(String fieldName) {
+            return MAX_VECTOR_DIMENSIONS;
+        }
+    }
+}
@@ -126,6 +126,8 @@ public class ParseService {
         private final String orgTag;
         private final boolean isPublic;
         private int savedChunkCount = 0;
+        private int parentCount = 0;      // 已处理的父块数量，作为父块序号
+        private int parentOffset = 0;     // 当前父块在原文中的起始字符偏移
 
         public StreamingContentHandler(String fileMd5, String userId, String orgTag, boolean isPublic) {
             super(-1); // 禁用Tika的内部写入限制，我们自己管理缓冲区
@@ -158,10 +160,16 @@ public class ParseService {
             // 1. 将父块分割成更小的、有语义的子切片
             List<String> childChunks = ParseService.this.splitTextIntoChunksWithSemantics(parentChunkText, chunkSize);
 
-            // 2. 将子切片批量保存到数据库
-            this.savedChunkCount = ParseService.this.saveChildChunks(fileMd5, childChunks, userId, orgTag, isPublic, this.savedChunkCount);
+            // 2. 定位子切片在原文中的偏移，与父块序号一起随子切片保存，检索时据此扩展上下文
+            this.parentCount++;
+            int[][] offsets = ParseService.this.locateChildChunks(parentChunkText, childChunks, this.parentOffset);
 
-            // 3. 清空缓冲区，为下一个父块做准备
+            // 3. 将子切片批量保存到数据库
+            this.savedChunkCount = ParseService.this.saveChildChunks(fileMd5, childChunks, this.parentCount, offsets,
+                    userId, orgTag, isPublic, this.savedChunkCount);
+
+            // 4. 清空缓冲区，为下一个父块做准备
+            this.parentOffset += parentChunkText.length();
             buffer.setLength(0);
         }
     }
@@ -171,21 +179,26 @@ public class ParseService {
      *
      * @param fileMd5         文件的 MD5 哈希值
      * @param chunks          子切片文本列表
+     * @param parentId        父块序号
+     * @param offsets         子切片在原文中的起止偏移
      * @param userId          上传用户ID
      * @param orgTag          组织标签
      * @param isPublic        是否公开
      * @param startingChunkId 当前批次的起始分片ID
      * @return 保存后总的分片数量
      */
-    private int saveChildChunks(String fileMd5, List<String> chunks,
+    private int saveChildChunks(String fileMd5, List<String> chunks, int parentId, int[][] offsets,
             String userId, String orgTag, boolean isPublic, int startingChunkId) {
         int currentChunkId = startingChunkId;
-        for (String chunk : chunks) {
+        for (int i = 0; i < chunks.size(); i++) {
             currentChunkId++;
             var vector = new DocumentVector();
             vector.setFileMd5(fileMd5);
             vector.setChunkId(currentChunkId);
-            vector.setTextContent(chunk);
+            vector.setTextContent(chunks.get(i));
+            vector.setParentId(parentId);
+            vector.setStartOffset(offsets[i][0]);
+            vector.setEndOffset(offsets[i][1]);
             vector.setUserId(userId);
             vector.setOrgTag(orgTag);
             vector.setPublic(isPublic);
@@ -195,6 +208,42 @@ public class ParseService {
         return currentChunkId;
     }
 
+    /**
+     * 定位子切片在父块中的位置，返回原文中的起止偏移（左闭右开）
+     * 子切片经过 trim 且段落间以单个空行重新拼接，不一定是父块的原样子串：
+     * 原样匹配失败时以首尾片段定位，仍失败时沿用上一个切片的结束位置
+     *
+     * @param parentText   父块文本
+     * @param chunks       子切片文本列表（按原文顺序）
+     * @param parentOffset 父块在原文中的起始偏移
+     */
+    private int[][] locateChildChunks(String parentText, List<String> chunks, int parentOffset) {
+        final int probeLength = 16;
+        int[][] offsets = new int[chunks.size()][2];
+        int cursor = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            String chunk = chunks.get(i);
+            int start = parentText.indexOf(chunk, cursor);
+            int end;
+            if (start >= 0) {
+                end = start + chunk.length();
+            } else {
+                String head = chunk.substring(0, Math.min(probeLength, chunk.length()));
+                String tail = chunk.substring(Math.max(0, chunk.length() - probeLength));
+                start = parentText.indexOf(head, cursor);
+                if (start < 0) {
+                    start = cursor;
+                }
+                int tailIndex = parentText.indexOf(tail, start);
+                end = tailIndex >= 0 ? tailIndex + tail.length() : Math.min(parentText.length(), start + chunk.length());
+            }
+            offsets[i][0] = parentOffset + start;
+            offsets[i][1] = parentOffset + end;
+            cursor = end;
+        }
+        return offsets;
+    }
+
     /**
      * 智能文本分割，保持语义完整性
      */
@@ -0,0 +1,171 @@
+package com.mydemo.inferaflow.service;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import com.github.benmanes.caffeine.cache.Cache;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.SearchOutcome;
+import com.mydemo.inferaflow.exception.CustomException;
+import com.mydemo.inferaflow.model.User;
+import com.mydemo.inferaflow.repository.UserRepository;
+import com.mydemo.inferaflow.utils.AclPrincipalUtils;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 用户权限上下文服务
+ * 每个用户解析一次权限上下文并缓存在本地，检索和文档列表共用，避免每次请求重复查询 MySQL
+ * 组织标签分配或层级变更时由 UserService 显式失效；其他节点依赖较短的 TTL 收敛
+ */
+@Service
+public class PermissionContextService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PermissionContextService.class);
+
+    @Value("${permission.context-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${permission.context-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrgTagCacheService orgTagCacheService;
+
+    @Autowired
+    private SearchProperties searchProperties;
+
+    // 缓存键为调用方传入的用户标识（数据库ID或用户名）
+    private Cache<String, PermissionContext> contextCache;
+
+    @PostConstruct
+    public void init() {
+        contextCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * 获取用户的权限上下文
+     *
+     * @param userId 用户数据库ID或用户名
+     * @return 权限上下文
+     */
+    public PermissionContext getContext(String userId) {
+        return contextCache.get(userId, id -> resolveContext(id, null));
+    }
+
+    /**
+     * 获取用户的权限上下文，本地缓存未命中时把 MySQL 与 Redis 的耗时分别记录到检索结果中
+     * 诊断模式下记录本地缓存是否命中（permission_cache_hit，1 为命中），并强制重新解析一次，
+     * 使 MySQL 与 Redis 的耗时始终出现在诊断输出中
+     *
+     * @param userId  用户数据库ID或用户名
+     * @param outcome 检索结果，用于记录阶段耗时
+     * @return 权限上下文
+     */
+    public PermissionContext getContext(String userId, SearchOutcome outcome) {
+        if (outcome == null || !outcome.isProfiling()) {
+            return contextCache.get(userId, id -> resolveContext(id, outcome));
+        }
+        outcome.recordTiming("permission_cache_hit", contextCache.getIfPresent(userId) != null ? 1 : 0);
+        PermissionContext context = resolveContext(userId, outcome);
+        contextCache.put(userId, context);
+        return context;
+    }
+
+    /**
+     * 失效指定用户的权限上下文
+     *
+     * @param username 用户名
+     */
+    public void invalidateUser(String username) {
+        contextCache.asMap().values().removeIf(context -> username.equals(context.getUsername()));
+        logger.debug("已失效用户权限上下文: {}", username);
+    }
+
+    /**
+     * 失效所有用户的权限上下文，在组织标签结构变更时调用
+     */
+    public void invalidateAll() {
+        contextCache.invalidateAll();
+        logger.debug("已失效所有用户权限上下文");
+    }
+
+    private PermissionContext resolveContext(String userId, SearchOutcome outcome) {
+        logger.debug("解析用户权限上下文，用户ID: {}", userId);
+        long userStart = System.currentTimeMillis();
+        User user;
+        try {
+            Long userIdLong = Long.parseLong(userId);
+            user = userRepository.findById(userIdLong)
+                    .orElseThrow(() -> new CustomException("User not found with ID: " + userId, HttpStatus.NOT_FOUND));
+        } catch (NumberFormatException e) {
+            // 如果userId不是数字格式，则假设它就是username
+            user = userRepository.findByUsername(userId)
+                    .orElseThrow(() -> new CustomException("User not found: " + userId, HttpStatus.NOT_FOUND));
+        }
+
+        long tagsStart = System.currentTimeMillis();
+        String userDbId = user.getId().toString();
+        List<String> effectiveTags = orgTagCacheService.getUserEffectiveOrgTags(user.getUsername());
+        if (outcome != null) {
+            outcome.recordTiming("permission_mysql", tagsStart - userStart);
+            outcome.recordTiming("permission_redis", System.currentTimeMillis() - tagsStart);
+        }
+        List<String> principals = AclPrincipalUtils.userPrincipals(userDbId, effectiveTags);
+        logger.debug("用户 {} 的数据库ID: {}, 有效组织标签: {}", user.getUsername(), userDbId, effectiveTags);
+
+        Query filter = searchProperties.getAcl().isPrincipalFilterEnabled()
+                ? buildPrincipalFilter(principals)
+                : buildPermissionFilter(userDbId, effectiveTags);
+        return new PermissionContext(userDbId, user.getUsername(), effectiveTags, principals, filter);
+    }
+
+    /**
+     * 基于 acl 字段的权限过滤：单个 terms 查询，不随组织层级深度膨胀，且可在分片级缓存
+     */
+    private Query buildPrincipalFilter(List<String> principals) {
+        List<FieldValue> values = principals.stream().map(FieldValue::of).toList();
+        return Query.of(f -> f.terms(t -> t.field("acl").terms(tv -> tv.value(values))));
+    }
+
+    /**
+     * 构建权限过滤条件：用户自己的文档、公开文档、所属组织（含层级）的文档
+     * 同一个过滤条件会同时用于 KNN 预过滤和 BM25 查询
+     */
+    private Query buildPermissionFilter(String userDbId, List<String> userEffectiveTags) {
+        return Query.of(f -> f.bool(bf -> bf
+                // 条件1: 用户可访问自己的文档
+                .should(s1 -> s1.term(t -> t.field("userId").value(userDbId)))
+                // 条件2: 公开文档
+                .should(s2 -> s2.term(t -> t.field("public").value(true)))
+                // 条件3: 组织标签
+                .should(s3 -> {
+                    if (userEffectiveTags.isEmpty()) {
+                        return s3.matchNone(mn -> mn);
+                    } else if (userEffectiveTags.size() == 1) {
+                        return s3.term(t -> t.field("orgTag").value(userEffectiveTags.get(0)));
+                    } else {
+                        return s3.bool(inner -> {
+                            userEffectiveTags.forEach(tag -> inner.should(sh -> sh.term(t -> t.field("orgTag").value(tag))));
+                            return inner;
+                        });
+                    }
+                })
+        ));
+    }
+}
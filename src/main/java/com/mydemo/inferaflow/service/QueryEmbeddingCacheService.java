@@ -0,0 +1,269 @@
+package com.mydemo.inferaflow.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mydemo.inferaflow.client.EmbeddingClient;
+import com.mydemo.inferaflow.utils.VectorCodecUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+
+/**
+ * 查询向量缓存服务
+ * 在 EmbeddingClient 前增加两级缓存：进程内 L1（有界 + TTL）和可选的 Redis L2（多节点共享）
+ * 缓存键由归一化后的查询文本、模型ID和向量维度组成
+ */
+@Service
+public class QueryEmbeddingCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryEmbeddingCacheService.class);
+
+    private static final String REDIS_KEY_PREFIX = "embedding:query:";
+
+    @Value("${embedding.query-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${embedding.query-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${embedding.query-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${embedding.query-cache.redis-enabled:false}")
+    private boolean redisEnabled;
+
+    @Value("${embedding.query-cache.redis-ttl-hours:24}")
+    private long redisTtlHours;
+
+    @Autowired
+    private EmbeddingClient embeddingClient;
+
+    @Autowired
+    private EmbeddingMicroBatcher embeddingMicroBatcher;
+
+    @Autowired
+    @Qualifier("binaryRedisTemplate")
+    private RedisTemplate<String, byte[]> binaryRedisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, float[]> localCache;
+    private Counter l1Hits;
+    private Counter l1Misses;
+    private Counter l2Hits;
+    private Counter l2Misses;
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .build();
+        l1Hits = cacheCounter("l1", "hit");
+        l1Misses = cacheCounter("l1", "miss");
+        l2Hits = cacheCounter("l2", "hit");
+        l2Misses = cacheCounter("l2", "miss");
+        meterRegistry.gauge("embedding.query.cache.size", localCache, Cache::estimatedSize);
+        logger.info("查询向量缓存初始化 - 启用: {}, 容量: {}, TTL: {}分钟, Redis L2: {}",
+                enabled, maxSize, ttlMinutes, redisEnabled);
+    }
+
+    /**
+     * 获取查询文本的向量，依次查询 L1、L2，均未命中时调用 EmbeddingClient 并回填
+     *
+     * @param text 查询文本
+     * @return 查询向量
+     */
+    public float[] getOrEmbed(String text) {
+        if (!enabled) {
+            return embedSingle(text);
+        }
+
+        String key = buildKey(text);
+        float[] cached = localCache.getIfPresent(key);
+        if (cached != null) {
+            l1Hits.increment();
+            return cached;
+        }
+        l1Misses.increment();
+
+        if (redisEnabled) {
+            float[] shared = readFromRedis(key);
+            if (shared != null) {
+                l2Hits.increment();
+                localCache.put(key, shared);
+                return shared;
+            }
+            l2Misses.increment();
+        }
+
+        float[] vector = embedSingle(text);
+        localCache.put(key, vector);
+        if (redisEnabled) {
+            writeToRedis(key, vector);
+        }
+        return vector;
+    }
+
+    /**
+     * 批量获取查询向量，所有未命中的文本合并为一次 EmbeddingClient.embed 调用
+     *
+     * @param texts 查询文本列表
+     * @return 与输入顺序一致的向量列表
+     */
+    public List<float[]> getOrEmbedAll(List<String> texts) {
+        if (!enabled) {
+            return embeddingClient.embed(texts);
+        }
+
+        float[][] vectors = new float[texts.size()][];
+        List<String> keys = new ArrayList<>(texts.size());
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = buildKey(texts.get(i));
+            keys.add(key);
+            vectors[i] = localCache.getIfPresent(key);
+            if (vectors[i] != null) {
+                l1Hits.increment();
+            } else {
+                l1Misses.increment();
+                missing.add(i);
+            }
+        }
+
+        if (redisEnabled && !missing.isEmpty()) {
+            missing = readAllFromRedis(keys, missing, vectors);
+        }
+
+        if (!missing.isEmpty()) {
+            // 去重后一次性调用向量 API
+            Map<String, Integer> uniqueTexts = new LinkedHashMap<>();
+            missing.forEach(i -> uniqueTexts.putIfAbsent(keys.get(i), i));
+            List<String> toEmbed = uniqueTexts.values().stream().map(texts::get).toList();
+            List<float[]> embedded = embeddingClient.embed(toEmbed);
+            if (embedded == null || embedded.size() != toEmbed.size()) {
+                throw new RuntimeException("批量生成的向量数量与输入不一致");
+            }
+
+            Map<String, float[]> byKey = new HashMap<>();
+            int j = 0;
+            for (String key : uniqueTexts.keySet()) {
+                float[] vector = embedded.get(j++);
+                byKey.put(key, vector);
+                localCache.put(key, vector);
+                if (redisEnabled) {
+                    writeToRedis(key, vector);
+                }
+            }
+            missing.forEach(i -> vectors[i] = byKey.get(keys.get(i)));
+        }
+        return Arrays.asList(vectors);
+    }
+
+    /**
+     * 清空本地缓存
+     */
+    public void invalidateAll() {
+        localCache.invalidateAll();
+    }
+
+    private float[] embedSingle(String text) {
+        // 并发的单条查询经微批合并为一次 API 调用
+        float[] vector = embeddingMicroBatcher.embed(text);
+        if (vector == null) {
+            throw new RuntimeException("生成的向量为空");
+        }
+        return vector;
+    }
+
+    private float[] readFromRedis(String key) {
+        try {
+            byte[] bytes = binaryRedisTemplate.opsForValue().get(REDIS_KEY_PREFIX + key);
+            return bytes != null ? VectorCodecUtils.fromBytes(bytes) : null;
+        } catch (Exception e) {
+            logger.warn("读取 Redis 查询向量缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 通过一次 multiGet 读取 L2，返回仍未命中的下标
+     */
+    private List<Integer> readAllFromRedis(List<String> keys, List<Integer> missing, float[][] vectors) {
+        try {
+            List<String> redisKeys = missing.stream().map(i -> REDIS_KEY_PREFIX + keys.get(i)).toList();
+            List<byte[]> values = binaryRedisTemplate.opsForValue().multiGet(redisKeys);
+            if (values == null) {
+                return missing;
+            }
+            List<Integer> stillMissing = new ArrayList<>();
+            for (int j = 0; j < missing.size(); j++) {
+                int i = missing.get(j);
+                byte[] bytes = values.get(j);
+                if (bytes != null) {
+                    l2Hits.increment();
+                    vectors[i] = VectorCodecUtils.fromBytes(bytes);
+                    localCache.put(keys.get(i), vectors[i]);
+                } else {
+                    l2Misses.increment();
+                    stillMissing.add(i);
+                }
+            }
+            return stillMissing;
+        } catch (Exception e) {
+            logger.warn("批量读取 Redis 查询向量缓存失败: {}", e.getMessage());
+            return missing;
+        }
+    }
+
+    private void writeToRedis(String key, float[] vector) {
+        try {
+            binaryRedisTemplate.opsForValue().set(REDIS_KEY_PREFIX + key,
+                    VectorCodecUtils.toBytes(vector), Duration.ofHours(redisTtlHours));
+        } catch (Exception e) {
+            logger.warn("写入 Redis 查询向量缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private String buildKey(String text) {
+        return embeddingClient.getModelId() + ":" + embeddingClient.getDimension() + ":"
+                + DigestUtils.sha256Hex(normalize(text));
+    }
+
+    /**
+     * 查询文本归一化：Unicode NFKC、去除首尾空白、合并连续空白、转小写
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).trim();
+        return normalized.replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private Counter cacheCounter(String level, String result) {
+        return Counter.builder("embedding.query.cache.requests")
+                .tag("level", level)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,151 @@
+package com.mydemo.inferaflow.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.SearchResult;
+import com.mydemo.inferaflow.exception.CustomException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 向量召回率评估
+ * 以完整向量上的暴力 script_score 结果为基准，统计线上 KNN 分支（量化索引 / Matryoshka 前缀向量 + 精确重排）的 recall@k，
+ * 用于在调整索引类型、前缀维度与过采样倍数后确认召回损失
+ */
+@Service
+public class RecallEvaluationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecallEvaluationService.class);
+
+    private static final List<String> KEY_FIELDS = List.of("fileMd5", "chunkId");
+
+    // 每个查询都要在全量向量上做一次暴力 script_score，限制 k 与查询数量避免拖垮集群
+    public static final int MAX_K = 100;
+    public static final int MAX_QUERIES = 50;
+
+    @Autowired
+    private ElasticsearchClient esClient;
+
+    @Autowired
+    private QueryEmbeddingCacheService queryEmbeddingCacheService;
+
+    @Autowired
+    private HybridSearchService hybridSearchService;
+
+    @Autowired
+    private SearchProperties searchProperties;
+
+    /**
+     * 评估一组查询的 recall@k
+     *
+     * @param queries 评估查询
+     * @param k       评估的 top-k，取值 1 到 MAX_K
+     * @return 平均召回率、平均耗时、当前索引配置及每个查询的明细
+     */
+    public Map<String, Object> evaluate(List<String> queries, int k) {
+        if (k < 1 || k > MAX_K) {
+            throw new CustomException("k must be between 1 and " + MAX_K, HttpStatus.BAD_REQUEST);
+        }
+        if (queries == null || queries.isEmpty() || queries.size() > MAX_QUERIES) {
+            throw new CustomException("queries size must be between 1 and " + MAX_QUERIES, HttpStatus.BAD_REQUEST);
+        }
+        List<float[]> vectors = queryEmbeddingCacheService.getOrEmbedAll(queries);
+        List<Map<String, Object>> details = new ArrayList<>(queries.size());
+        double recallSum = 0;
+        long exactMsSum = 0;
+        long annMsSum = 0;
+        int evaluated = 0;
+
+        for (int i = 0; i < queries.size(); i++) {
+            long exactStart = System.currentTimeMillis();
+            Set<String> truth = exactTopK(vectors.get(i), k);
+            long exactMs = System.currentTimeMillis() - exactStart;
+
+            long annStart = System.currentTimeMillis();
+            List<SearchResult> ann = hybridSearchService.vectorRecallForEvaluation(vectors.get(i), k);
+            long annMs = System.currentTimeMillis() - annStart;
+
+            if (truth.isEmpty()) {
+                continue;
+            }
+            long hit = ann.stream().filter(r -> truth.contains(key(r.getFileMd5(), r.getChunkId()))).count();
+            double recall = (double) hit / truth.size();
+            recallSum += recall;
+            exactMsSum += exactMs;
+            annMsSum += annMs;
+            evaluated++;
+
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("query", queries.get(i));
+            detail.put("recall", recall);
+            detail.put("exactMs", exactMs);
+            detail.put("annMs", annMs);
+            details.add(detail);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("k", k);
+        result.put("queries", evaluated);
+        result.put("meanRecall", evaluated == 0 ? 0.0d : recallSum / evaluated);
+        result.put("meanExactMs", evaluated == 0 ? 0L : exactMsSum / evaluated);
+        result.put("meanAnnMs", evaluated == 0 ? 0L : annMsSum / evaluated);
+        result.put("vectorIndexType", searchProperties.getIndex().getVectorIndexType().name().toLowerCase());
+        result.put("matryoshkaEnabled", searchProperties.getMatryoshka().isEnabled());
+        result.put("matryoshkaDimension", searchProperties.getMatryoshka().getDimension());
+        result.put("details", details);
+        logger.info("向量召回率评估完成 - recall@{}: {}, 查询数: {}", k, result.get("meanRecall"), evaluated);
+        return result;
+    }
+
+    /**
+     * 在完整向量上暴力计算余弦相似度得到的精确 top-k
+     */
+    private Set<String> exactTopK(float[] queryVector, int k) {
+        List<Float> vector = new ArrayList<>(queryVector.length);
+        for (float v : queryVector) {
+            vector.add(v);
+        }
+        try {
+            SearchResponse<EsDocument> response = esClient.search(s -> s
+                    .index("knowledge_base")
+                    .query(q -> q.scriptScore(ss -> ss
+                            .query(mq -> mq.exists(e -> e.field("vector")))
+                            .script(sc -> sc.inline(i -> i
+                                    .source("cosineSimilarity(params.query_vector, 'vector') + 1.0")
+                                    .params("query_vector", JsonData.of(vector))
+                            ))
+                    ))
+                    .source(src -> src.filter(f -> f.includes(KEY_FIELDS)))
+                    .size(k),
+                    EsDocument.class
+            );
+            Set<String> keys = new HashSet<>();
+            for (Hit<EsDocument> hit : response.hits().hits()) {
+                if (hit.source() != null) {
+                    keys.add(key(hit.source().getFileMd5(), hit.source().getChunkId()));
+                }
+            }
+            return keys;
+        } catch (Exception e) {
+            throw new RuntimeException("精确向量检索失败", e);
+        }
+    }
+
+    private static String key(String fileMd5, Integer chunkId) {
+        return fileMd5 + "#" + chunkId;
+    }
+}
@@ -0,0 +1,51 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.SearchResult;
+
+import java.util.List;
+
+/**
+ * 检索存储抽象
+ * 覆盖分块的写入、按文件删除以及带权限过滤的 BM25 / 向量召回；
+ * 混合检索由 HybridSearchService 在两路召回之上完成。
+ * 默认实现为 ElasticsearchService，search.store.type=lucene 时使用进程内的 LuceneRetrievalStore
+ */
+public interface RetrievalStore {
+
+    /**
+     * 批量写入文档分块
+     *
+     * @param documents 文档分块列表
+     */
+    void bulkIndex(List<EsDocument> documents);
+
+    /**
+     * 删除文件的所有分块
+     *
+     * @param fileMd5 文件指纹
+     */
+    void deleteByFileMd5(String fileMd5);
+
+    /**
+     * 带权限过滤的 BM25 召回
+     *
+     * @param query   查询文本
+     * @param context 用户权限上下文
+     * @param size    返回数量
+     * @return 召回结果
+     */
+    List<SearchResult> lexicalSearch(String query, PermissionContext context, int size);
+
+    /**
+     * 带权限过滤的向量召回
+     *
+     * @param queryVector   查询向量
+     * @param context       用户权限上下文
+     * @param k             返回数量
+     * @param numCandidates 候选数量
+     * @return 召回结果
+     */
+    List<SearchResult> vectorSearch(float[] queryVector, PermissionContext context, int k, int numCandidates);
+}
@@ -0,0 +1,158 @@
+package com.mydemo.inferaflow.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.SearchOutcome;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 检索结果缓存服务
+ * 键为（归一化查询、topK、检索模式、权限主体指纹），值附带写入时的索引代数快照；
+ * 读取时代数快照不一致即视为过期。并发的相同未命中请求合并为一次检索（single-flight）
+ * 缓存与合并等待方拿到的都是结果的浅拷贝，调用方之间互不影响；缓存命中不带原始检索的各阶段耗时
+ */
+@Service
+public class SearchResultCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchResultCacheService.class);
+
+    @Value("${search.result-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${search.result-cache.max-size:5000}")
+    private long maxSize;
+
+    @Value("${search.result-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Autowired
+    private IndexGenerationService indexGenerationService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, CachedResults> resultCache;
+    private final ConcurrentHashMap<String, CompletableFuture<SearchOutcome>> inFlight = new ConcurrentHashMap<>();
+
+    private Counter hits;
+    private Counter misses;
+    private Counter stale;
+    private Counter coalesced;
+
+    @PostConstruct
+    public void init() {
+        resultCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        hits = cacheCounter("hit");
+        misses = cacheCounter("miss");
+        stale = cacheCounter("stale");
+        coalesced = cacheCounter("coalesced");
+        meterRegistry.gauge("search.result.cache.size", resultCache, Cache::estimatedSize);
+        logger.info("检索结果缓存初始化 - 启用: {}, 容量: {}, TTL: {}秒", enabled, maxSize, ttlSeconds);
+    }
+
+    /**
+     * 读取缓存的检索结果，未命中时执行检索并回填
+     *
+     * @param query   查询文本
+     * @param topK    返回结果数量
+     * @param mode    检索模式
+     * @param context 用户权限上下文
+     * @param loader  实际检索逻辑
+     * @return 检索结果
+     */
+    public SearchOutcome getOrSearch(String query, int topK, String mode, PermissionContext context,
+                                     Supplier<SearchOutcome> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String stamp = indexGenerationService.currentStamp(context.getPrincipals());
+        if (stamp == null) {
+            // 无法确认索引代数时不使用缓存，避免返回过期结果
+            return loader.get();
+        }
+
+        String key = buildKey(query, topK, mode, context);
+        CachedResults cached = resultCache.getIfPresent(key);
+        if (cached != null) {
+            if (cached.stamp.equals(stamp)) {
+                hits.increment();
+                return cached.outcome.copy(true);
+            }
+            stale.increment();
+            resultCache.invalidate(key);
+        } else {
+            misses.increment();
+        }
+
+        // single-flight 键包含代数快照，代数递增后到达的请求不会合并到递增前发起的检索
+        String flightKey = key + "@" + stamp;
+        CompletableFuture<SearchOutcome> flight = new CompletableFuture<>();
+        CompletableFuture<SearchOutcome> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.join().copy(false);
+        }
+
+        try {
+            SearchOutcome outcome = loader.get();
+            // 部分结果与空结果可能来自降级路径，不缓存
+            if (!outcome.isPartial() && !outcome.getResults().isEmpty()) {
+                resultCache.put(key, new CachedResults(stamp, outcome.copy(false)));
+            }
+            flight.complete(outcome.copy(false));
+            return outcome;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    /**
+     * 清空结果缓存
+     */
+    public void invalidateAll() {
+        resultCache.invalidateAll();
+    }
+
+    private String buildKey(String query, int topK, String mode, PermissionContext context) {
+        String principals = String.join(",", context.getPrincipals().stream().sorted().toList());
+        return mode + ":" + topK + ":" + DigestUtils.sha256Hex(QueryEmbeddingCacheService.normalize(query))
+                + ":" + DigestUtils.sha256Hex(principals);
+    }
+
+    private Counter cacheCounter(String result) {
+        return Counter.builder("search.result.cache.requests")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static class CachedResults {
+        private final String stamp;
+        private final SearchOutcome outcome;
+
+        CachedResults(String stamp, SearchOutcome outcome) {
+            this.stamp = stamp;
+            this.outcome = outcome;
+        }
+    }
+}
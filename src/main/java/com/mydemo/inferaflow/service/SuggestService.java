@@ -0,0 +1,109 @@
+package com.mydemo.inferaflow.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.Suggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 输入联想服务
+ * 基于 textContent.suggest（search_as_you_type 子字段）做前缀匹配，权限过滤与混合检索一致；
+ * 不生成查询向量、不执行 KNN，也不查询文件名，适合在每次按键时调用
+ */
+@Service
+public class SuggestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuggestService.class);
+
+    private static final String SUGGEST_FIELD = "textContent.suggest";
+
+    @Autowired
+    private ElasticsearchClient esClient;
+
+    @Autowired
+    private PermissionContextService permissionContextService;
+
+    @Autowired
+    private SearchProperties searchProperties;
+
+    /**
+     * 获取输入联想建议
+     *
+     * @param prefix 用户当前输入
+     * @param userId 用户ID
+     * @param size   返回数量
+     * @return 去重后的建议片段，输入过短或使用进程内存储时返回空列表
+     */
+    public List<Suggestion> suggest(String prefix, String userId, int size) {
+        SearchProperties.Suggest config = searchProperties.getSuggest();
+        String input = prefix == null ? "" : prefix.trim();
+        if (input.length() < config.getMinPrefixLength()
+                || searchProperties.getStore().getType() != SearchProperties.StoreType.ELASTICSEARCH) {
+            return Collections.emptyList();
+        }
+        int limit = Math.max(1, Math.min(size, config.getMaxSize()));
+        PermissionContext context = permissionContextService.getContext(userId);
+
+        try {
+            // 多取一些命中，片段去重后仍能凑满 limit 条
+            SearchResponse<EsDocument> response = esClient.search(s -> s
+                    .index("knowledge_base")
+                    .query(q -> q.bool(b -> b
+                            .must(m -> m.multiMatch(mm -> mm
+                                    .query(input)
+                                    .type(TextQueryType.BoolPrefix)
+                                    .fields(SUGGEST_FIELD, SUGGEST_FIELD + "._2gram", SUGGEST_FIELD + "._3gram")
+                            ))
+                            .filter(context.getFilter())
+                    ))
+                    .source(src -> src.filter(f -> f.includes("fileMd5")))
+                    .highlight(h -> h
+                            .fields(SUGGEST_FIELD, hf -> hf
+                                    .fragmentSize(config.getFragmentSize())
+                                    .numberOfFragments(1)
+                                    .preTags("")
+                                    .postTags("")
+                            )
+                    )
+                    .trackTotalHits(t -> t.enabled(false))
+                    .timeout(config.getTimeoutMs() + "ms")
+                    .size(limit * 2),
+                    EsDocument.class
+            );
+
+            Set<String> seen = new LinkedHashSet<>();
+            List<Suggestion> suggestions = new ArrayList<>(limit);
+            for (Hit<EsDocument> hit : response.hits().hits()) {
+                List<String> fragments = hit.highlight().get(SUGGEST_FIELD);
+                if (fragments == null || fragments.isEmpty()) {
+                    continue;
+                }
+                String text = fragments.get(0).strip();
+                if (!text.isEmpty() && seen.add(text)) {
+                    suggestions.add(new Suggestion(text, hit.source() != null ? hit.source().getFileMd5() : null));
+                    if (suggestions.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+            logger.debug("输入联想完成，输入: {}, 返回数量: {}, ES 耗时: {}ms", input, suggestions.size(), response.took());
+            return suggestions;
+        } catch (Exception e) {
+            throw new RuntimeException("输入联想失败", e);
+        }
+    }
+}
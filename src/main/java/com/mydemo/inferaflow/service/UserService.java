@@ -53,6 +53,9 @@ public class UserService {
     @Autowired
     private OrgTagCacheService orgTagCacheService;
 
+    @Autowired
+    private PermissionContextService permissionContextService;
+
     /**
      * 注册新用户。
      *
@@ -278,6 +281,7 @@ public class UserService {
         
         // 清除标签缓存，因为层级关系可能变化
         orgTagCacheService.invalidateAllEffectiveTagsCache();
+        permissionContextService.invalidateAll();
         
         return savedTag;
     }
@@ -346,6 +350,8 @@ public class UserService {
         orgTagCacheService.cacheUserOrgTags(user.getUsername(), new ArrayList<>(finalTags));
         // 同时清除有效标签缓存
         orgTagCacheService.deleteUserEffectiveTagsCache(user.getUsername());
+        // 清除检索使用的本地权限上下文
+        permissionContextService.invalidateUser(user.getUsername());
         
         if (user.getPrimaryOrg() != null && !user.getPrimaryOrg().isEmpty()) {
             orgTagCacheService.cacheUserPrimaryOrg(user.getUsername(), user.getPrimaryOrg());
@@ -572,6 +578,7 @@ public class UserService {
         
         // 清除所有标签缓存，因为层级关系可能变化
         orgTagCacheService.invalidateAllEffectiveTagsCache();
+        permissionContextService.invalidateAll();
         
         return updatedTag;
     }
@@ -669,6 +676,7 @@ public class UserService {
         
         // 清除所有标签缓存，因为层级关系可能变化
         orgTagCacheService.invalidateAllEffectiveTagsCache();
+        permissionContextService.invalidateAll();
         
         logger.info("Organization tag deleted successfully: {}", tagId);
     }
@@ -1,10 +1,14 @@
 package com.mydemo.inferaflow.service;
 
 import com.mydemo.inferaflow.client.EmbeddingClient;
+import com.mydemo.inferaflow.config.SearchProperties;
 import com.mydemo.inferaflow.model.DocumentVector;
 import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.IngestEmbeddings;
 import com.mydemo.inferaflow.entity.TextChunk;
 import com.mydemo.inferaflow.repository.DocumentVectorRepository;
+import com.mydemo.inferaflow.utils.FloatVectorMath;
+import com.mydemo.inferaflow.utils.LogUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,14 +25,23 @@ public class VectorizationService {
     private static final Logger logger = LoggerFactory.getLogger(VectorizationService.class);
 
     @Autowired
-    private EmbeddingClient embeddingClient;
+    private EmbeddingContentCacheService embeddingContentCacheService;
 
     @Autowired
-    private ElasticsearchService elasticsearchService;
+    private RetrievalStore retrievalStore;
 
     @Autowired
     private DocumentVectorRepository documentVectorRepository;
 
+    @Autowired
+    private SearchProperties searchProperties;
+
+    @Autowired
+    private FileCentroidService fileCentroidService;
+
+    @Autowired
+    private EmbeddingClient embeddingClient;
+
     /**
      * 执行向量化操作
      * @param fileMd5 文件指纹
@@ -53,8 +66,17 @@ public class VectorizationService {
                     .map(TextChunk::getContent)
                     .toList();
 
-            // 调用外部模型生成向量
-            List<float[]> vectors = embeddingClient.embed(texts);
+            // 先查内容向量缓存，只有未命中的分块调用外部模型生成向量
+            long embedStart = System.currentTimeMillis();
+            IngestEmbeddings embeddings = embeddingContentCacheService.embedAll(texts);
+            List<float[]> vectors = embeddings.getVectors();
+            LogUtils.logPerformance("VECTORIZE_EMBED", System.currentTimeMillis() - embedStart,
+                    String.format("fileMd5=%s, chunks=%d, cacheHits=%d, hitRate=%.2f, embedded=%d",
+                            fileMd5, texts.size(), embeddings.getCacheHits(), embeddings.hitRate(),
+                            embeddings.getEmbedded()));
+
+            // 分块与质心记录实际生成向量的模型，与向量缓存键中的模型ID一致，换模型后可区分旧向量
+            String modelVersion = embeddingClient.getModelId();
 
             // 构建 Elasticsearch 文档并存储
             List<EsDocument> esDocuments = IntStream.range(0, chunks.size())
@@ -64,16 +86,33 @@ public class VectorizationService {
                             chunks.get(i).getChunkId(),
                             chunks.get(i).getContent(),
                             vectors.get(i),
-                            "deepseek-embed", // 更新为 DeepSeek 的模型版本
+                            modelVersion,
                             userId,
                             orgTag,
                             isPublic
                     ))
                     .toList();
 
-            elasticsearchService.bulkIndex(esDocuments); // 批量存储到 Elasticsearch
+            // 记录父块与原文偏移，检索时可据此扩展上下文窗口
+            for (int i = 0; i < chunks.size(); i++) {
+                TextChunk chunk = chunks.get(i);
+                EsDocument doc = esDocuments.get(i);
+                doc.setParentId(chunk.getParentId());
+                doc.setStartOffset(chunk.getStartOffset());
+                doc.setEndOffset(chunk.getEndOffset());
+            }
+
+            // 两级检索：短前缀向量用于 HNSW 召回，完整向量保留用于精确重排
+            SearchProperties.Matryoshka matryoshka = searchProperties.getMatryoshka();
+            if (matryoshka.isEnabled()) {
+                esDocuments.forEach(doc -> doc.setVectorShort(
+                        FloatVectorMath.truncateAndNormalize(doc.getVector(), matryoshka.getDimension())));
+            }
+
+            retrievalStore.bulkIndex(esDocuments); // 批量写入检索存储
+            fileCentroidService.upsert(fileMd5, vectors, modelVersion, userId, orgTag, isPublic); // 文件质心
 
-            logger.info("向量化完成，fileMd5: {}", fileMd5);
+            logger.info("向量化完成，fileMd5: {}, 分块数: {}, 向量缓存命中: {}", fileMd5, texts.size(), embeddings.getCacheHits());
         } catch (Exception e) {
             logger.error("向量化失败，fileMd5: {}", fileMd5, e);
             throw new RuntimeException("向量化失败", e);
@@ -95,7 +134,10 @@ public class VectorizationService {
         return vectors.stream()
                 .map(vector -> new TextChunk(
                         vector.getChunkId(),
-                        vector.getTextContent()
+                        vector.getTextContent(),
+                        vector.getParentId(),
+                        vector.getStartOffset(),
+                        vector.getEndOffset()
                 ))
                 .toList();
     }
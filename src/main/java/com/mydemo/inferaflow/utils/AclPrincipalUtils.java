@@ -0,0 +1,51 @@
+package com.mydemo.inferaflow.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ACL 主体工具类
+ * 索引时将文档的上传用户、组织标签和公开标记反规范化为 acl 主体数组，
+ * 检索时将用户权限转换为同格式的主体集合，权限过滤即可简化为单个 terms 查询
+ */
+public class AclPrincipalUtils {
+
+    public static final String USER_PREFIX = "u:";
+    public static final String ORG_PREFIX = "org:";
+    public static final String PUBLIC = "public";
+
+    private AclPrincipalUtils() {
+    }
+
+    /**
+     * 文档的 acl 主体：上传用户、组织标签、公开标记
+     */
+    public static List<String> documentPrincipals(String userId, String orgTag, boolean isPublic) {
+        List<String> principals = new ArrayList<>(3);
+        if (userId != null && !userId.isEmpty()) {
+            principals.add(USER_PREFIX + userId);
+        }
+        if (orgTag != null && !orgTag.isEmpty()) {
+            principals.add(ORG_PREFIX + orgTag);
+        }
+        if (isPublic) {
+            principals.add(PUBLIC);
+        }
+        return principals;
+    }
+
+    /**
+     * 用户可访问的主体集合：本人、公开、所有有效组织标签（含层级）
+     */
+    public static List<String> userPrincipals(String userDbId, List<String> effectiveTags) {
+        Set<String> principals = new LinkedHashSet<>();
+        principals.add(USER_PREFIX + userDbId);
+        principals.add(PUBLIC);
+        if (effectiveTags != null) {
+            effectiveTags.forEach(tag -> principals.add(ORG_PREFIX + tag));
+        }
+        return new ArrayList<>(principals);
+    }
+}
@@ -0,0 +1,120 @@
+package com.mydemo.inferaflow.utils;
+
+import com.mydemo.inferaflow.entity.SearchResult;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 检索结果多样化工具类
+ * 支持按字段折叠（每个取值只保留得分最高的一条）和 MMR（Maximal Marginal Relevance）重排
+ */
+public class DiversityUtils {
+
+    private DiversityUtils() {
+    }
+
+    /**
+     * 按折叠键去重，保留每个键首次出现（即得分最高）的结果，键为 null 的结果不参与折叠
+     *
+     * @param results 按分数降序排列的结果
+     * @param key     折叠键提取函数
+     * @return 折叠后的结果，保持原有顺序
+     */
+    public static List<SearchResult> collapse(List<SearchResult> results, Function<SearchResult, String> key) {
+        Set<String> seen = new HashSet<>();
+        List<SearchResult> collapsed = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            String value = key.apply(result);
+            if (value == null || seen.add(value)) {
+                collapsed.add(result);
+            }
+        }
+        return collapsed;
+    }
+
+    /**
+     * MMR 重排：每次选择 lambda * 相关性 - (1 - lambda) * 与已选结果的最大相似度 最高的候选
+     * 相关性为候选分数的 min-max 归一化值；相似度为向量余弦，任一方缺少向量时以是否同一文件近似（同文件为 1，否则为 0）
+     * 结果保留原始分数，按选择顺序返回
+     *
+     * @param candidates 按分数降序排列的候选
+     * @param vectors    与候选一一对应的向量，元素可为 null
+     * @param lambda     相关性权重，1 为纯相关性排序，0 为纯多样性
+     * @param topK       返回结果数量
+     * @return 重排后的结果
+     */
+    public static List<SearchResult> maximalMarginalRelevance(List<SearchResult> candidates, List<float[]> vectors,
+                                                              double lambda, int topK) {
+        int n = candidates.size();
+        int limit = Math.min(topK, n);
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        double[] relevance = normalizedRelevance(candidates);
+        float[][] normalized = new float[n][];
+        for (int i = 0; i < n; i++) {
+            float[] vector = vectors.get(i);
+            if (vector != null) {
+                normalized[i] = vector.clone();
+                FloatVectorMath.normalize(normalized[i]);
+            }
+        }
+
+        // 每个候选与已选集合的最大相似度，随每次选择增量更新
+        double[] maxSimilarity = new double[n];
+        boolean[] selected = new boolean[n];
+        List<SearchResult> results = new ArrayList<>(limit);
+        int last = -1;
+        for (int round = 0; round < limit; round++) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (selected[i]) {
+                    continue;
+                }
+                if (last >= 0) {
+                    maxSimilarity[i] = Math.max(maxSimilarity[i], similarity(candidates, normalized, i, last));
+                }
+                double score = lambda * relevance[i] - (1 - lambda) * maxSimilarity[i];
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            selected[best] = true;
+            results.add(candidates.get(best));
+            last = best;
+        }
+        return results;
+    }
+
+    private static double[] normalizedRelevance(List<SearchResult> candidates) {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (SearchResult candidate : candidates) {
+            double score = candidate.getScore() != null ? candidate.getScore() : 0.0d;
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+        }
+        double range = max - min;
+        double[] relevance = new double[candidates.size()];
+        for (int i = 0; i < relevance.length; i++) {
+            Double score = candidates.get(i).getScore();
+            relevance[i] = range > 0 ? ((score != null ? score : 0.0d) - min) / range : 1.0d;
+        }
+        return relevance;
+    }
+
+    private static double similarity(List<SearchResult> candidates, float[][] normalized, int a, int b) {
+        if (normalized[a] != null && normalized[b] != null) {
+            return FloatVectorMath.dotProduct(normalized[a], normalized[b]);
+        }
+        return Objects.equals(candidates.get(a).getFileMd5(), candidates.get(b).getFileMd5()) ? 1.0d : 0.0d;
+    }
+}
@@ -0,0 +1,89 @@
+package com.mydemo.inferaflow.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 向量 API 响应的流式解析器
+ * 使用 JsonParser 逐个 token 读取 data[].embedding，数值直接写入预分配的 float[]，不构建 JsonNode 树；
+ * embedding 为字符串时按 encoding_format=base64 处理，由解析器直接从字节解码 base64，再按小端序 float32 转换
+ */
+public class EmbeddingResponseParser {
+
+    private EmbeddingResponseParser() {
+    }
+
+    /**
+     * 解析向量 API 响应
+     *
+     * @param factory   JSON 工厂
+     * @param body      响应体（UTF-8 字节）
+     * @param dimension 预期向量维度，用于预分配缓冲区；实际维度不同时按实际长度返回
+     * @return 按 data 数组顺序排列的向量
+     */
+    public static List<float[]> parse(JsonFactory factory, byte[] body, int dimension) throws IOException {
+        try (JsonParser parser = factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("API 响应格式错误: 响应不是 JSON 对象");
+            }
+            List<float[]> vectors = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    vectors = readData(parser, dimension);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (vectors == null) {
+                throw new RuntimeException("API 响应格式错误: data 字段不存在或不是数组");
+            }
+            return vectors;
+        }
+    }
+
+    private static List<float[]> readData(JsonParser parser, int dimension) throws IOException {
+        List<float[]> vectors = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            float[] vector = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("embedding".equals(field) && value == JsonToken.START_ARRAY) {
+                    vector = readFloatArray(parser, dimension);
+                } else if ("embedding".equals(field) && value == JsonToken.VALUE_STRING) {
+                    vector = VectorCodecUtils.fromBytes(parser.getBinaryValue());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (vector != null) {
+                vectors.add(vector);
+            }
+        }
+        return vectors;
+    }
+
+    private static float[] readFloatArray(JsonParser parser, int dimension) throws IOException {
+        float[] buffer = new float[Math.max(dimension, 1)];
+        int size = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+                throw new RuntimeException("API 响应格式错误: embedding 包含非数值元素");
+            }
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = parser.getFloatValue();
+        }
+        return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+    }
+}
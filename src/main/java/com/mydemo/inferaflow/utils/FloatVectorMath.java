@@ -0,0 +1,121 @@
+package com.mydemo.inferaflow.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * 向量点积计算工具类
+ * 运行时加载了 jdk.incubator.vector 模块（--add-modules jdk.incubator.vector）时使用 SIMD 实现，
+ * 否则退化为标量循环；两种实现结果一致（浮点累加顺序不同，误差在 1e-5 量级）
+ */
+public class FloatVectorMath {
+
+    private static final Logger logger = LoggerFactory.getLogger(FloatVectorMath.class);
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String SIMD_IMPL = "com.mydemo.inferaflow.utils.SimdDotProduct";
+
+    private static final DotProduct IMPL = createImpl();
+
+    private FloatVectorMath() {
+    }
+
+    /**
+     * 点积计算实现
+     */
+    interface DotProduct {
+        /**
+         * 计算 a[0, length) 与 b[bOffset, bOffset + length) 的点积
+         */
+        float dot(float[] a, float[] b, int bOffset, int length);
+    }
+
+    /**
+     * 是否使用 SIMD 实现
+     */
+    public static boolean isSimdEnabled() {
+        return !(IMPL instanceof ScalarDotProduct);
+    }
+
+    /**
+     * 计算两个等长向量的点积
+     */
+    public static float dotProduct(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("向量维度不一致: " + a.length + " != " + b.length);
+        }
+        return IMPL.dot(a, b, 0, a.length);
+    }
+
+    /**
+     * 计算查询向量与连续存储的向量块中第 row 行的点积
+     *
+     * @param query 查询向量
+     * @param block 按行连续存储的向量块，每行长度为 query.length
+     * @param row   行号
+     */
+    public static float dotProduct(float[] query, float[] block, int row) {
+        return IMPL.dot(query, block, row * query.length, query.length);
+    }
+
+    /**
+     * 原地 L2 归一化，归一化后余弦相似度等于点积；零向量保持不变
+     */
+    public static void normalize(float[] vector) {
+        float norm = (float) Math.sqrt(IMPL.dot(vector, vector, 0, vector.length));
+        if (norm == 0f) {
+            return;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] /= norm;
+        }
+    }
+
+    /**
+     * 截取向量前 dimension 维并重新归一化（Matryoshka 嵌入的前缀仍是有效的低维表示）
+     */
+    public static float[] truncateAndNormalize(float[] vector, int dimension) {
+        if (dimension <= 0 || dimension > vector.length) {
+            throw new IllegalArgumentException("截断维度非法: " + dimension + "，原始维度: " + vector.length);
+        }
+        float[] prefix = Arrays.copyOf(vector, dimension);
+        normalize(prefix);
+        return prefix;
+    }
+
+    /**
+     * 标量实现的点积，供 SIMD 不可用时使用及测试对照
+     */
+    static float scalarDot(float[] a, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    private static DotProduct createImpl() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                // 通过反射加载，避免未启用模块时解析 jdk.incubator.vector 中的类
+                DotProduct simd = (DotProduct) Class.forName(SIMD_IMPL).getDeclaredConstructor().newInstance();
+                logger.info("向量点积使用 SIMD 实现: {}", simd);
+                return simd;
+            } catch (Throwable e) {
+                logger.warn("加载 SIMD 点积实现失败，使用标量实现: {}", e.getMessage());
+            }
+        } else {
+            logger.info("未启用 {} 模块，向量点积使用标量实现", VECTOR_MODULE);
+        }
+        return new ScalarDotProduct();
+    }
+
+    private static class ScalarDotProduct implements DotProduct {
+        @Override
+        public float dot(float[] a, float[] b, int bOffset, int length) {
+            return scalarDot(a, b, bOffset, length);
+        }
+    }
+}
@@ -16,6 +16,9 @@ public class LogUtils {
     // 性能日志记录器
     private static final Logger PERFORMANCE_LOGGER = LoggerFactory.getLogger("com.mydemo.inferaflow.performance");
     
+    // 慢查询日志记录器
+    private static final Logger SLOW_SEARCH_LOGGER = LoggerFactory.getLogger("com.mydemo.inferaflow.slowsearch");
+    
     // MDC键名常量
     public static final String USER_ID = "userId";
     public static final String REQUEST_ID = "requestId";
@@ -60,6 +63,19 @@ public class LogUtils {
         }
     }
     
+    /**
+     * 记录慢查询日志，同一查询指纹的记录可聚合分析
+     */
+    public static void logSlowSearch(String fingerprint, String userId, long duration, String details) {
+        try {
+            MDC.put(OPERATION, "SLOW_SEARCH");
+            MDC.put(USER_ID, userId);
+            SLOW_SEARCH_LOGGER.info("[慢查询] [指纹:{}] [用户:{}] 耗时:{}ms {}", fingerprint, userId, duration, details);
+        } finally {
+            MDC.clear();
+        }
+    }
+    
     /**
      * 记录用户操作日志
      */
@@ -0,0 +1,116 @@
+package com.mydemo.inferaflow.utils;
+
+import com.mydemo.inferaflow.entity.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多路召回结果融合工具类
+ * 支持 RRF（Reciprocal Rank Fusion）和加权分数归一化两种融合方式
+ */
+public class RankFusionUtils {
+
+    private RankFusionUtils() {
+    }
+
+    /**
+     * RRF 融合：score = Σ weight / (rankConstant + rank)
+     * 只依赖排名，不受 BM25 与向量相似度分数量纲不一致的影响
+     *
+     * @param lexical      BM25 结果（按分数降序）
+     * @param vector       KNN 结果（按分数降序）
+     * @param lexicalWeight BM25 分支权重
+     * @param vectorWeight  KNN 分支权重
+     * @param rankConstant  RRF 常数 k，通常取 60
+     * @param topK          返回结果数量
+     * @return 融合后的结果
+     */
+    public static List<SearchResult> reciprocalRankFusion(List<SearchResult> lexical, List<SearchResult> vector,
+                                                          double lexicalWeight, double vectorWeight,
+                                                          int rankConstant, int topK) {
+        Map<String, SearchResult> docs = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        accumulateRrf(lexical, lexicalWeight, rankConstant, docs, scores);
+        accumulateRrf(vector, vectorWeight, rankConstant, docs, scores);
+        return collectTopK(docs, scores, topK);
+    }
+
+    /**
+     * 加权分数融合：每路结果先做 min-max 归一化，再按权重求和
+     *
+     * @param lexical       BM25 结果（按分数降序）
+     * @param vector        KNN 结果（按分数降序）
+     * @param lexicalWeight BM25 分支权重
+     * @param vectorWeight  KNN 分支权重
+     * @param topK          返回结果数量
+     * @return 融合后的结果
+     */
+    public static List<SearchResult> weightedScoreFusion(List<SearchResult> lexical, List<SearchResult> vector,
+                                                         double lexicalWeight, double vectorWeight, int topK) {
+        Map<String, SearchResult> docs = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        accumulateNormalized(lexical, lexicalWeight, docs, scores);
+        accumulateNormalized(vector, vectorWeight, docs, scores);
+        return collectTopK(docs, scores, topK);
+    }
+
+    private static void accumulateRrf(List<SearchResult> ranking, double weight, int rankConstant,
+                                      Map<String, SearchResult> docs, Map<String, Double> scores) {
+        if (ranking == null) {
+            return;
+        }
+        for (int i = 0; i < ranking.size(); i++) {
+            SearchResult result = ranking.get(i);
+            String key = docKey(result);
+            docs.putIfAbsent(key, result);
+            scores.merge(key, weight / (rankConstant + i + 1), Double::sum);
+        }
+    }
+
+    private static void accumulateNormalized(List<SearchResult> ranking, double weight,
+                                             Map<String, SearchResult> docs, Map<String, Double> scores) {
+        if (ranking == null || ranking.isEmpty()) {
+            return;
+        }
+        double max = Double.NEGATIVE_INFINITY;
+        double min = Double.POSITIVE_INFINITY;
+        for (SearchResult result : ranking) {
+            double score = result.getScore() != null ? result.getScore() : 0d;
+            max = Math.max(max, score);
+            min = Math.min(min, score);
+        }
+        double range = max - min;
+        for (SearchResult result : ranking) {
+            double score = result.getScore() != null ? result.getScore() : 0d;
+            // 只有一条结果或分数全部相同时，视为满分
+            double normalized = range > 0 ? (score - min) / range : 1d;
+            String key = docKey(result);
+            docs.putIfAbsent(key, result);
+            scores.merge(key, weight * normalized, Double::sum);
+        }
+    }
+
+    private static List<SearchResult> collectTopK(Map<String, SearchResult> docs, Map<String, Double> scores, int topK) {
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()));
+
+        List<SearchResult> fused = new ArrayList<>(Math.min(topK, entries.size()));
+        for (Map.Entry<String, Double> entry : entries) {
+            if (fused.size() >= topK) {
+                break;
+            }
+            SearchResult result = docs.get(entry.getKey());
+            result.setScore(entry.getValue());
+            fused.add(result);
+        }
+        return fused;
+    }
+
+    private static String docKey(SearchResult result) {
+        return result.getFileMd5() + "#" + result.getChunkId();
+    }
+}
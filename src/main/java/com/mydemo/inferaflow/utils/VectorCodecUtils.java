@@ -0,0 +1,130 @@
+package com.mydemo.inferaflow.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+
+/**
+ * 向量编解码工具类
+ * 向量统一以小端序 float32 字节存储，与 DashScope base64 编码格式一致；
+ * 缓存等对体积敏感的场景可使用小端序 float16（IEEE 754 半精度）编码，体积减半
+ */
+public class VectorCodecUtils {
+
+    private VectorCodecUtils() {
+    }
+
+    /**
+     * 将向量编码为小端序字节数组
+     */
+    public static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    /**
+     * 从小端序字节数组解码向量
+     */
+    public static float[] fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length % Float.BYTES != 0) {
+            throw new IllegalArgumentException("向量字节长度非法: " + (bytes == null ? "null" : bytes.length));
+        }
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * 将向量编码为 base64 字符串
+     */
+    public static String toBase64(float[] vector) {
+        return Base64.getEncoder().encodeToString(toBytes(vector));
+    }
+
+    /**
+     * 从 base64 字符串解码向量
+     */
+    public static float[] fromBase64(String base64) {
+        return fromBytes(Base64.getDecoder().decode(base64));
+    }
+
+    /**
+     * 将向量编码为小端序 float16 字节数组，按就近偶数舍入；
+     * 半精度规格化范围内（绝对值不小于 2^-14）每个分量的相对误差不超过 2^-11（约 4.9e-4），
+     * 更小的分量按非规格化数编码，绝对误差不超过 2^-25
+     */
+    public static byte[] toHalfBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : vector) {
+            buffer.putShort(toHalf(value));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 从小端序 float16 字节数组解码向量
+     */
+    public static float[] fromHalfBytes(byte[] bytes) {
+        if (bytes == null || bytes.length % Short.BYTES != 0) {
+            throw new IllegalArgumentException("向量字节长度非法: " + (bytes == null ? "null" : bytes.length));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[bytes.length / Short.BYTES];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = fromHalf(buffer.getShort());
+        }
+        return vector;
+    }
+
+    private static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+        if (exponent == 0xff) {
+            // Inf 与 NaN
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (halfExponent <= 0) {
+            // 半精度非规格化数，过小时下溢为 0
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            int shift = 14 - halfExponent;
+            int full = mantissa | 0x800000;
+            return (short) (sign | roundShift(full, shift));
+        }
+        // 舍入进位可能进入指数位，溢出时恰好得到 Inf
+        return (short) (sign | roundShift((halfExponent << 23) | mantissa, 13));
+    }
+
+    private static int roundShift(int value, int shift) {
+        int result = value >> shift;
+        int remainder = value & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+        if (remainder > halfway || (remainder == halfway && (result & 1) != 0)) {
+            result++;
+        }
+        return result;
+    }
+
+    private static float fromHalf(short half) {
+        int bits = half & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
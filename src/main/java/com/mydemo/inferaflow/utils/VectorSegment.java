@@ -0,0 +1,88 @@
+package com.mydemo.inferaflow.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * 堆外向量段
+ * 向量 L2 归一化后按行连续存放在一块直接内存中，不占用堆空间、不参与 GC 复制；
+ * 计算时按块拷贝到堆上的临时数组，再由 FloatVectorMath 计算点积（即余弦相似度）
+ */
+public class VectorSegment {
+
+    // 每次从堆外拷贝到堆上参与计算的行数
+    private static final int BLOCK_ROWS = 64;
+
+    private final int dimension;
+    private final int size;
+    private final FloatBuffer vectors;
+
+    private VectorSegment(int dimension, int size, FloatBuffer vectors) {
+        this.dimension = dimension;
+        this.size = size;
+        this.vectors = vectors;
+    }
+
+    /**
+     * 由向量列表构建向量段，输入向量不会被修改
+     *
+     * @param rows 等维度的向量列表
+     */
+    public static VectorSegment of(List<float[]> rows) {
+        int dimension = rows.isEmpty() ? 0 : rows.get(0).length;
+        FloatBuffer vectors = ByteBuffer.allocateDirect(rows.size() * dimension * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        for (int row = 0; row < rows.size(); row++) {
+            float[] vector = rows.get(row);
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException("向量维度不一致: " + vector.length + " != " + dimension);
+            }
+            float[] normalized = vector.clone();
+            FloatVectorMath.normalize(normalized);
+            vectors.put(row * dimension, normalized);
+        }
+        return new VectorSegment(dimension, rows.size(), vectors);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 向量段占用的堆外内存字节数
+     */
+    public long bytes() {
+        return (long) size * dimension * Float.BYTES;
+    }
+
+    /**
+     * 计算归一化查询向量与每一行的余弦相似度
+     * 只使用绝对位置读取，不修改缓冲区 position，多个线程可并发计算同一段
+     *
+     * @param query  已归一化的查询向量
+     * @param scores 输出数组，长度不小于 size()
+     */
+    public void scores(float[] query, float[] scores) {
+        if (size == 0) {
+            return;
+        }
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("查询向量维度与向量段不一致: " + query.length + " != " + dimension);
+        }
+        float[] block = new float[Math.min(BLOCK_ROWS, size) * dimension];
+        for (int start = 0; start < size; start += BLOCK_ROWS) {
+            int rows = Math.min(BLOCK_ROWS, size - start);
+            vectors.get(start * dimension, block, 0, rows * dimension);
+            for (int r = 0; r < rows; r++) {
+                scores[start + r] = FloatVectorMath.dotProduct(query, block, r);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.mydemo.inferaflow.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydemo.inferaflow.utils.EmbeddingResponseParser;
+import com.mydemo.inferaflow.utils.VectorCodecUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量 API 响应解析的耗时与分配对比
+ *
+ * treeFloat：原实现，响应转为 String 后构建 JsonNode 树，逐个元素 asDouble() 复制
+ * streamingFloat：JsonParser 流式解析 float 数组，直接写入预分配的 float[]
+ * streamingBase64：encoding_format=base64 的响应，流式解码为小端序 float32
+ *
+ * 响应按 DashScope 单批上限（10 条）与默认 2048 维构造；加上 -prof gc 可对比每次解析的分配字节数
+ *
+ * 运行：mvn test-compile 后执行 main 方法，或 java -cp target/test-classes:... org.openjdk.jmh.Main EmbeddingParserBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmbeddingParserBenchmark {
+
+    @Param({"10"})
+    private int batch;
+
+    @Param({"2048"})
+    private int dimension;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] floatResponse;
+    private byte[] base64Response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder floats = new StringBuilder("{\"object\":\"list\",\"data\":[");
+        StringBuilder base64 = new StringBuilder("{\"object\":\"list\",\"data\":[");
+        for (int i = 0; i < batch; i++) {
+            float[] vector = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = (float) random.nextGaussian() * 0.05f;
+            }
+            String separator = i > 0 ? "," : "";
+            floats.append(separator).append("{\"object\":\"embedding\",\"index\":").append(i).append(",\"embedding\":[");
+            for (int d = 0; d < dimension; d++) {
+                floats.append(d > 0 ? "," : "").append(vector[d]);
+            }
+            floats.append("]}");
+            base64.append(separator).append("{\"object\":\"embedding\",\"index\":").append(i)
+                    .append(",\"embedding\":\"").append(VectorCodecUtils.toBase64(vector)).append("\"}");
+        }
+        String usage = "],\"model\":\"text-embedding-v4\",\"usage\":{\"prompt_tokens\":1000,\"total_tokens\":1000}}";
+        floatResponse = floats.append(usage).toString().getBytes(StandardCharsets.UTF_8);
+        base64Response = base64.append(usage).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<float[]> treeFloat() throws Exception {
+        // 与原 EmbeddingClient.parseVectors 一致：先得到 String 响应体
+        JsonNode data = objectMapper.readTree(new String(floatResponse, StandardCharsets.UTF_8)).get("data");
+        List<float[]> vectors = new ArrayList<>();
+        for (JsonNode item : data) {
+            JsonNode embedding = item.get("embedding");
+            float[] vector = new float[embedding.size()];
+            for (int i = 0; i < embedding.size(); i++) {
+                vector[i] = (float) embedding.get(i).asDouble();
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+
+    @Benchmark
+    public List<float[]> streamingFloat() throws Exception {
+        return EmbeddingResponseParser.parse(objectMapper.getFactory(), floatResponse, dimension);
+    }
+
+    @Benchmark
+    public List<float[]> streamingBase64() throws Exception {
+        return EmbeddingResponseParser.parse(objectMapper.getFactory(), base64Response, dimension);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EmbeddingParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,192 @@
+package com.mydemo.inferaflow.benchmark;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import com.mydemo.inferaflow.config.EsConfig;
+import com.mydemo.inferaflow.utils.FloatVectorMath;
+import com.mydemo.inferaflow.utils.VectorSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 小范围用户的精确向量检索与 ES KNN 的延迟对比
+ *
+ * exactSimd / exactScalar：堆外向量段上的暴力 top-k（分别启用、不启用 jdk.incubator.vector）
+ * esKnn：同一批随机向量写入临时索引后的 ES KNN 查询（k=10，numCandidates=k*30，与默认召回窗口一致），
+ * 需要通过 -Dbenchmark.es.host/port/scheme/username/password 指定可用的 ES，未指定时该项在初始化阶段失败，其余项不受影响
+ *
+ * 运行：mvn test-compile 后执行 main 方法，或 java -cp target/test-classes:... org.openjdk.jmh.Main ExactKnnBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class ExactKnnBenchmark {
+
+    private static final int DIMENSION = 2048;
+    private static final int K = 10;
+    private static final String ES_INDEX = "knn_benchmark";
+
+    @Param({"1000", "5000", "20000"})
+    private int chunks;
+
+    private List<float[]> vectors;
+    private VectorSegment segment;
+    private float[] query;
+    private float[] scores;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        vectors = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            vectors.add(randomVector(random));
+        }
+        segment = VectorSegment.of(vectors);
+        query = randomVector(random);
+        FloatVectorMath.normalize(query);
+        scores = new float[chunks];
+    }
+
+    @Benchmark
+    public int[] exactSimd() {
+        return exactTopK();
+    }
+
+    @Benchmark
+    @Fork(1)
+    public int[] exactScalar() {
+        return exactTopK();
+    }
+
+    @Benchmark
+    public long esKnn(EsState es) throws Exception {
+        List<Float> queryVector = new ArrayList<>(DIMENSION);
+        for (float v : query) {
+            queryVector.add(v);
+        }
+        SearchResponse<Void> response = es.client.search(s -> s
+                .index(ES_INDEX)
+                .knn(kn -> kn
+                        .field("vector")
+                        .queryVector(queryVector)
+                        .k(K)
+                        .numCandidates(K * 30)
+                )
+                .source(src -> src.fetch(false))
+                .size(K), Void.class);
+        return response.took();
+    }
+
+    private int[] exactTopK() {
+        segment.scores(query, scores);
+        PriorityQueue<Integer> heap = new PriorityQueue<>(K + 1, (a, b) -> Float.compare(scores[a], scores[b]));
+        for (int row = 0; row < scores.length; row++) {
+            if (heap.size() < K || scores[row] > scores[heap.peek()]) {
+                heap.offer(row);
+                if (heap.size() > K) {
+                    heap.poll();
+                }
+            }
+        }
+        return heap.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * ES 侧状态：写入与精确检索相同的随机向量
+     */
+    @State(Scope.Benchmark)
+    public static class EsState {
+
+        private ElasticsearchClient client;
+
+        @Setup(Level.Trial)
+        public void setUp(ExactKnnBenchmark benchmark) throws Exception {
+            String host = System.getProperty("benchmark.es.host");
+            if (host == null) {
+                throw new IllegalStateException("未指定 -Dbenchmark.es.host，跳过 ES KNN 基准");
+            }
+            EsConfig esConfig = new EsConfig();
+            ReflectionTestUtils.setField(esConfig, "host", host);
+            ReflectionTestUtils.setField(esConfig, "port", Integer.getInteger("benchmark.es.port", 9200));
+            ReflectionTestUtils.setField(esConfig, "scheme", System.getProperty("benchmark.es.scheme", "http"));
+            ReflectionTestUtils.setField(esConfig, "username", System.getProperty("benchmark.es.username", ""));
+            ReflectionTestUtils.setField(esConfig, "password", System.getProperty("benchmark.es.password", ""));
+            client = esConfig.elasticsearchClient();
+
+            if (client.indices().exists(e -> e.index(ES_INDEX)).value()) {
+                client.indices().delete(d -> d.index(ES_INDEX));
+            }
+            client.indices().create(c -> c
+                    .index(ES_INDEX)
+                    .mappings(m -> m.properties("vector", p -> p.denseVector(dv -> dv
+                            .dims(DIMENSION)
+                            .index(true)
+                            .similarity("cosine")
+                    )))
+            );
+
+            int batchSize = 200;
+            for (int start = 0; start < benchmark.vectors.size(); start += batchSize) {
+                BulkRequest.Builder bulk = new BulkRequest.Builder();
+                int end = Math.min(start + batchSize, benchmark.vectors.size());
+                for (int i = start; i < end; i++) {
+                    Map<String, Object> doc = Map.of("vector", benchmark.vectors.get(i));
+                    String id = String.valueOf(i);
+                    bulk.operations(op -> op.index(idx -> idx.index(ES_INDEX).id(id).document(doc)));
+                }
+                client.bulk(bulk.build());
+            }
+            client.indices().refresh(r -> r.index(ES_INDEX));
+            // 合并为单段，避免 HNSW 多段搜索放大 ES 侧延迟
+            client.indices().forcemerge(f -> f.index(ES_INDEX).maxNumSegments(1L));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            if (client != null) {
+                client.indices().delete(d -> d.index(ES_INDEX));
+                client._transport().close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ExactKnnBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
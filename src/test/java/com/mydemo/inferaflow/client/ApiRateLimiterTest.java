@@ -0,0 +1,128 @@
+package com.mydemo.inferaflow.client;
+
+import com.mydemo.inferaflow.config.RateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ApiRateLimiter 的单元测试类
+ */
+class ApiRateLimiterTest {
+
+    private static RateLimitProperties.Endpoint config(int concurrency) {
+        RateLimitProperties.Endpoint config = new RateLimitProperties.Endpoint();
+        config.setRequestsPerSecond(0);
+        config.setInitialConcurrency(concurrency);
+        config.setThrottlePauseMs(0);
+        config.setBulkShare(1.0);
+        return config;
+    }
+
+    @Test
+    void testThrottled_ShrinksWindow() {
+        ApiRateLimiter limiter = new ApiRateLimiter("test", config(8), new SimpleMeterRegistry());
+        WebClientResponseException tooManyRequests = WebClientResponseException.create(
+                429, "Too Many Requests", HttpHeaders.EMPTY, new byte[0], null);
+
+        assertThrows(WebClientResponseException.class, () -> limiter
+                .execute(ApiRateLimiter.Priority.INTERACTIVE, 0, () -> Mono.error(tooManyRequests))
+                .block());
+
+        assertEquals(4.0, limiter.currentLimit(), 1e-9);
+        assertEquals(0, limiter.currentInFlight());
+    }
+
+    @Test
+    void testSuccess_GrowsWindow() {
+        ApiRateLimiter limiter = new ApiRateLimiter("test", config(4), new SimpleMeterRegistry());
+
+        limiter.execute(ApiRateLimiter.Priority.BULK, 0, () -> Mono.just("ok")).block();
+
+        assertEquals(4.25, limiter.currentLimit(), 1e-9);
+    }
+
+    @Test
+    void testInteractive_GrantedBeforeBulk() {
+        RateLimitProperties.Endpoint config = config(2);
+        config.setMaxConcurrency(2);
+        ApiRateLimiter limiter = new ApiRateLimiter("test", config, new SimpleMeterRegistry());
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // 占用一个并发后，剩余的一个并发为交互请求保留：先排队的批量请求等待，后到的交互请求直接执行
+        Sinks.One<String> blocker = Sinks.one();
+        limiter.execute(ApiRateLimiter.Priority.INTERACTIVE, 0, blocker::asMono).subscribe();
+        limiter.execute(ApiRateLimiter.Priority.BULK, 0, () -> Mono.fromCallable(() -> order.add("bulk"))).subscribe();
+        limiter.execute(ApiRateLimiter.Priority.INTERACTIVE, 0, () -> Mono.fromCallable(() -> order.add("interactive"))).subscribe();
+        assertEquals(List.of("interactive"), order);
+
+        blocker.tryEmitValue("done");
+
+        assertEquals(List.of("interactive", "bulk"), order);
+    }
+
+    @Test
+    void testBulk_SmallShareStillGetsOneSlot() {
+        RateLimitProperties.Endpoint config = config(2);
+        config.setBulkShare(0.25);
+        ApiRateLimiter limiter = new ApiRateLimiter("test", config, new SimpleMeterRegistry());
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // floor(2 * 0.25) = 0，批量窗口仍至少为 1：交互请求结束后排队的批量请求得以执行
+        Sinks.One<String> blocker = Sinks.one();
+        limiter.execute(ApiRateLimiter.Priority.INTERACTIVE, 0, blocker::asMono).subscribe();
+        limiter.execute(ApiRateLimiter.Priority.BULK, 0, () -> Mono.fromCallable(() -> order.add("bulk"))).subscribe();
+        assertEquals(List.of(), order);
+
+        blocker.tryEmitValue("done");
+
+        assertEquals(List.of("bulk"), order);
+        limiter.shutdown();
+    }
+
+    @Test
+    void testBulk_QueueTimesOut() {
+        RateLimitProperties.Endpoint config = config(1);
+        config.setMaxConcurrency(2);
+        config.setBulkQueueTimeoutMs(50);
+        ApiRateLimiter limiter = new ApiRateLimiter("test", config, new SimpleMeterRegistry());
+
+        // 窗口为 1 且交互请求进行中，批量请求排队超时后失败而不是一直等待
+        Sinks.One<String> blocker = Sinks.one();
+        limiter.execute(ApiRateLimiter.Priority.INTERACTIVE, 0, blocker::asMono).subscribe();
+
+        assertThrows(RuntimeException.class, () -> limiter
+                .execute(ApiRateLimiter.Priority.BULK, 0, () -> Mono.just("bulk"))
+                .block());
+        limiter.shutdown();
+    }
+
+    @Test
+    void testBulk_PausedWhenWindowShrinksToOne() {
+        ApiRateLimiter limiter = new ApiRateLimiter("test", config(2), new SimpleMeterRegistry());
+        WebClientResponseException tooManyRequests = WebClientResponseException.create(
+                429, "Too Many Requests", HttpHeaders.EMPTY, new byte[0], null);
+        assertThrows(WebClientResponseException.class, () -> limiter
+                .execute(ApiRateLimiter.Priority.INTERACTIVE, 0, () -> Mono.error(tooManyRequests))
+                .block());
+        assertEquals(1.0, limiter.currentLimit(), 1e-9);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // 窗口为 1 时唯一的并发留给交互请求，交互请求进行中批量请求不会执行
+        Sinks.One<String> blocker = Sinks.one();
+        limiter.execute(ApiRateLimiter.Priority.BULK, 0, () -> Mono.fromCallable(() -> order.add("bulk"))).subscribe();
+        limiter.execute(ApiRateLimiter.Priority.INTERACTIVE, 0,
+                () -> blocker.asMono().doOnSubscribe(subscription -> order.add("interactive"))).subscribe();
+
+        assertEquals(List.of("interactive"), order);
+        limiter.shutdown();
+    }
+}
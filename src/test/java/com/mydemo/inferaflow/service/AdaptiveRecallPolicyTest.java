@@ -0,0 +1,82 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.config.SearchProperties;
+import com.mydemo.inferaflow.entity.SearchResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AdaptiveRecallPolicy 的单元测试类
+ */
+class AdaptiveRecallPolicyTest {
+
+    private AdaptiveRecallPolicy policy;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        SearchProperties searchProperties = new SearchProperties();
+        searchProperties.getAdaptiveRecall().setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+        policy = new AdaptiveRecallPolicy();
+        ReflectionTestUtils.setField(policy, "searchProperties", searchProperties);
+        ReflectionTestUtils.setField(policy, "meterRegistry", meterRegistry);
+    }
+
+    @Test
+    void testInitialWindowIsSmallerThanFixedWindow() {
+        assertEquals(40, policy.initialK(10, 300));
+        assertEquals(300, policy.widen(100, 300));
+    }
+
+    @Test
+    void testEvaluate_WidensOnFlatBoundary() {
+        // 第 3 名与第 4 名分差不足 2%
+        List<SearchResult> flat = results(0.95, 0.90, 0.80, 0.795);
+        assertEquals(AdaptiveRecallPolicy.Decision.FLAT_GAP, policy.evaluate(3, 12, 90, 0, flat));
+
+        List<SearchResult> separated = results(0.95, 0.90, 0.80, 0.60);
+        assertEquals(AdaptiveRecallPolicy.Decision.ACCEPTED, policy.evaluate(3, 12, 90, 0, separated));
+    }
+
+    @Test
+    void testEvaluate_WidensWhenUnderfilledUntilLimit() {
+        List<SearchResult> underfilled = results(0.95);
+        assertEquals(AdaptiveRecallPolicy.Decision.UNDERFILLED, policy.evaluate(3, 12, 90, 0, underfilled));
+        // 已达到固定窗口或放大次数上限
+        assertEquals(AdaptiveRecallPolicy.Decision.EXHAUSTED, policy.evaluate(3, 90, 90, 1, underfilled));
+        assertEquals(AdaptiveRecallPolicy.Decision.EXHAUSTED, policy.evaluate(3, 36, 90, 2, underfilled));
+    }
+
+    @Test
+    void testEvaluate_AcceptsWhenWindowCoversAllVisibleChunks() {
+        // 用户只能看到 2 个分块，放大窗口也拿不到更多结果
+        List<SearchResult> underfilled = results(0.95, 0.90);
+        assertEquals(AdaptiveRecallPolicy.Decision.ACCEPTED, policy.evaluate(3, 12, 90, 0, underfilled, 2));
+        assertEquals(AdaptiveRecallPolicy.Decision.UNDERFILLED, policy.evaluate(3, 12, 90, 0, underfilled, 50));
+    }
+
+    @Test
+    void testRecord_ExportsDecisionMetrics() {
+        policy.record("vector", AdaptiveRecallPolicy.Decision.ACCEPTED, 0, 40, 300);
+
+        assertEquals(1.0, meterRegistry.get("search.knn.recall.decisions")
+                .tag("path", "vector").tag("decision", "accepted").counter().count());
+        assertEquals(40.0, meterRegistry.get("search.knn.recall.window").summary().totalAmount());
+    }
+
+    private List<SearchResult> results(double... scores) {
+        List<SearchResult> results = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) {
+            results.add(new SearchResult("file", i, "content", scores[i]));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,76 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.client.ApiRateLimiter;
+import com.mydemo.inferaflow.client.EmbeddingClient;
+import com.mydemo.inferaflow.entity.IngestEmbeddings;
+import com.mydemo.inferaflow.utils.VectorCodecUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * EmbeddingContentCacheService 的单元测试类
+ */
+class EmbeddingContentCacheServiceTest {
+
+    private EmbeddingContentCacheService service;
+    private EmbeddingClient embeddingClient;
+    private ValueOperations<String, byte[]> valueOperations;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        embeddingClient = mock(EmbeddingClient.class);
+        when(embeddingClient.getModelId()).thenReturn("test-model");
+        when(embeddingClient.getDimension()).thenReturn(2);
+        RedisTemplate<String, byte[]> redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        service = new EmbeddingContentCacheService();
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "ttlDays", 30L);
+        ReflectionTestUtils.setField(service, "embeddingClient", embeddingClient);
+        ReflectionTestUtils.setField(service, "binaryRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testEmbedAll_OnlyMissesSentToApi() {
+        // 第一个分块已缓存，后两个分块内容相同
+        when(valueOperations.multiGet(anyList())).thenReturn(
+                Arrays.asList(VectorCodecUtils.toHalfBytes(new float[]{1, 0}), null, null));
+        when(embeddingClient.embed(List.of("boilerplate"), ApiRateLimiter.Priority.BULK)).thenReturn(List.<float[]>of(new float[]{0, 1}));
+
+        IngestEmbeddings result = service.embedAll(List.of("cached", "boilerplate", "boilerplate"));
+
+        verify(embeddingClient).embed(List.of("boilerplate"), ApiRateLimiter.Priority.BULK);
+        assertEquals(1, result.getCacheHits());
+        assertEquals(1, result.getEmbedded());
+        assertArrayEquals(new float[]{1, 0}, result.getVectors().get(0));
+        assertArrayEquals(new float[]{0, 1}, result.getVectors().get(2));
+        assertEquals(1.0 / 3, result.hitRate(), 1e-9);
+    }
+
+    @Test
+    void testEmbedAll_AllHitsSkipApi() {
+        when(valueOperations.multiGet(anyList())).thenReturn(
+                List.of(VectorCodecUtils.toHalfBytes(new float[]{1, 0})));
+
+        IngestEmbeddings result = service.embedAll(List.of("cached"));
+
+        verify(embeddingClient, never()).embed(anyList(), any());
+        assertEquals(1.0, result.hitRate(), 1e-9);
+    }
+}
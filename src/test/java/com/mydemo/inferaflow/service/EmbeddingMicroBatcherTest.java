@@ -0,0 +1,83 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.client.EmbeddingClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * EmbeddingMicroBatcher 的单元测试类
+ */
+class EmbeddingMicroBatcherTest {
+
+    private EmbeddingMicroBatcher batcher;
+    private EmbeddingClient embeddingClient;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        embeddingClient = mock(EmbeddingClient.class);
+        // 每条文本的向量为 [文本长度]，便于校验回填顺序
+        when(embeddingClient.embedAsync(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return Mono.just(texts.stream().map(text -> new float[]{text.length()}).toList());
+        });
+        meterRegistry = new SimpleMeterRegistry();
+        batcher = new EmbeddingMicroBatcher();
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        ReflectionTestUtils.setField(batcher, "maxWaitMs", 1000L);
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", 3);
+        ReflectionTestUtils.setField(batcher, "embeddingClient", embeddingClient);
+        ReflectionTestUtils.setField(batcher, "meterRegistry", meterRegistry);
+        batcher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.shutdown();
+    }
+
+    @Test
+    void testSubmit_FullBatchSentAsOneCall() {
+        CompletableFuture<float[]> a = batcher.submit("a");
+        CompletableFuture<float[]> bb = batcher.submit("bb");
+        assertFalse(a.isDone());
+        CompletableFuture<float[]> ccc = batcher.submit("ccc");
+
+        assertEquals(1f, a.join()[0]);
+        assertEquals(2f, bb.join()[0]);
+        assertEquals(3f, ccc.join()[0]);
+        verify(embeddingClient, times(1)).embedAsync(List.of("a", "bb", "ccc"));
+        assertEquals(1.0, meterRegistry.get("embedding.microbatch.fill_ratio").summary().max(), 1e-9);
+    }
+
+    @Test
+    void testSubmit_PartialBatchFlushedAfterMaxWait() {
+        ReflectionTestUtils.setField(batcher, "maxWaitMs", 5L);
+
+        float[] vector = batcher.embed("abcd");
+
+        assertEquals(4f, vector[0]);
+        verify(embeddingClient, times(1)).embedAsync(List.of("abcd"));
+    }
+
+    @Test
+    void testSubmit_DuplicateTextsSentOnce() {
+        CompletableFuture<float[]> first = batcher.submit("same");
+        CompletableFuture<float[]> second = batcher.submit("same");
+        batcher.submit("other");
+
+        assertSame(first.join(), second.join());
+        verify(embeddingClient, times(1)).embedAsync(List.of("same", "other"));
+    }
+}
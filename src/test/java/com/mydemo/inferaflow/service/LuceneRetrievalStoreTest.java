@@ -0,0 +1,85 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.entity.EsDocument;
+import com.mydemo.inferaflow.entity.PermissionContext;
+import com.mydemo.inferaflow.entity.SearchResult;
+import com.mydemo.inferaflow.utils.AclPrincipalUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LuceneRetrievalStore 的单元测试类 (不依赖Spring Context)
+ */
+class LuceneRetrievalStoreTest {
+
+    private static final int DIMENSION = 2048;
+
+    @TempDir
+    Path indexDir;
+
+    private LuceneRetrievalStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new LuceneRetrievalStore();
+        ReflectionTestUtils.setField(store, "indexPath", indexDir.toString());
+        store.init();
+
+        store.bulkIndex(List.of(
+                new EsDocument("1", "md5-own", 1, "人工智能是未来科技发展的核心方向", vector(0), "test", "10", null, false),
+                new EsDocument("2", "md5-org", 1, "机器学习是人工智能的一个分支", vector(1), "test", "20", "dept-a", false),
+                new EsDocument("3", "md5-other", 1, "人工智能在医疗领域的应用", vector(2), "test", "30", "dept-b", false),
+                new EsDocument("4", "md5-public", 1, "公开的人工智能白皮书", vector(3), "test", "40", null, true)
+        ));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    void testLexicalSearch_AppliesAclFilter() {
+        List<SearchResult> results = store.lexicalSearch("人工智能", context("10", List.of("dept-a")), 10);
+
+        List<String> files = results.stream().map(SearchResult::getFileMd5).toList();
+        assertTrue(files.containsAll(List.of("md5-own", "md5-org", "md5-public")));
+        assertFalse(files.contains("md5-other"));
+    }
+
+    @Test
+    void testVectorSearch_HighDimensionAndAclFilter() {
+        List<SearchResult> results = store.vectorSearch(vector(2), context("10", List.of("dept-b")), 1, 10);
+
+        assertEquals(1, results.size());
+        assertEquals("md5-other", results.get(0).getFileMd5());
+    }
+
+    @Test
+    void testDeleteByFileMd5() {
+        store.deleteByFileMd5("md5-own");
+
+        List<SearchResult> results = store.vectorSearch(vector(0), context("10", List.of()), 4, 10);
+        assertTrue(results.stream().noneMatch(r -> "md5-own".equals(r.getFileMd5())));
+    }
+
+    private PermissionContext context(String userDbId, List<String> tags) {
+        return new PermissionContext(userDbId, "user-" + userDbId, tags,
+                AclPrincipalUtils.userPrincipals(userDbId, tags), null);
+    }
+
+    private float[] vector(int hot) {
+        float[] vector = new float[DIMENSION];
+        vector[hot] = 1.0f;
+        vector[DIMENSION - 1] = 0.1f;
+        return vector;
+    }
+}
@@ -152,4 +152,25 @@ class ParseServiceUnitTest {
         // 性能断言：处理时间应该在合理范围内
         assertTrue(duration < 5000, "处理时间过长: " + duration + "ms");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testLocateChildChunks_RecordsOriginalOffsets() throws Exception {
+        Method method = ParseService.class.getDeclaredMethod("locateChildChunks", String.class, List.class, int.class);
+        method.setAccessible(true);
+
+        String first = "第一段落的内容比较长一些，用来测试定位。";
+        String second = "第二段落同样需要足够长，才能验证首尾定位。";
+        String parent = first + "\n\n\n" + second + "\n\n" + "结尾。";
+
+        // 原样子串直接定位，偏移叠加父块起始位置
+        int[][] exact = (int[][]) method.invoke(parseService, parent, List.of(first, second, "结尾。"), 100);
+        assertArrayEquals(new int[]{100, 100 + first.length()}, exact[0]);
+        assertEquals(100 + first.length() + 3, exact[1][0]);
+        assertEquals(100 + parent.length(), exact[2][1]);
+
+        // 多个段落以单个空行重新拼接后不再是原样子串，按首尾片段定位到原文范围
+        String merged = first + "\n\n" + second;
+        int[][] approximate = (int[][]) method.invoke(parseService, parent, List.of(merged), 0);
+        assertArrayEquals(new int[]{0, first.length() + 3 + second.length()}, approximate[0]);
+    }
+}
@@ -0,0 +1,87 @@
+package com.mydemo.inferaflow.service;
+
+import com.mydemo.inferaflow.client.EmbeddingClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * QueryEmbeddingCacheService 的单元测试类
+ */
+class QueryEmbeddingCacheServiceTest {
+
+    private QueryEmbeddingCacheService service;
+    private EmbeddingClient embeddingClient;
+    private EmbeddingMicroBatcher embeddingMicroBatcher;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        embeddingClient = mock(EmbeddingClient.class);
+        when(embeddingClient.getModelId()).thenReturn("test-model");
+        when(embeddingClient.getDimension()).thenReturn(2);
+        embeddingMicroBatcher = mock(EmbeddingMicroBatcher.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        service = new QueryEmbeddingCacheService();
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "maxSize", 100L);
+        ReflectionTestUtils.setField(service, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(service, "redisEnabled", false);
+        ReflectionTestUtils.setField(service, "embeddingClient", embeddingClient);
+        ReflectionTestUtils.setField(service, "embeddingMicroBatcher", embeddingMicroBatcher);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        service.init();
+    }
+
+    @Test
+    void testNormalize_NfkcWhitespaceAndCase() {
+        // 全角字母与数字经 NFKC 转为半角，连续空白（含全角空格）合并，首尾空白去除
+        assertEquals("hello world 123", QueryEmbeddingCacheService.normalize("  ＨＥＬＬＯ　\t World\n１２３ "));
+        assertEquals("", QueryEmbeddingCacheService.normalize(null));
+    }
+
+    @Test
+    void testGetOrEmbed_SecondCallHitsL1() {
+        when(embeddingMicroBatcher.embed(anyString())).thenReturn(new float[]{1, 0});
+
+        float[] first = service.getOrEmbed("Hello  World");
+        // 归一化后相同的查询命中本地缓存
+        float[] second = service.getOrEmbed(" hello world ");
+
+        verify(embeddingMicroBatcher, times(1)).embed(anyString());
+        assertSame(first, second);
+        assertEquals(1.0, l1Count("hit"));
+        assertEquals(1.0, l1Count("miss"));
+    }
+
+    @Test
+    void testGetOrEmbedAll_OnlyMissesBatched() {
+        when(embeddingMicroBatcher.embed("cached")).thenReturn(new float[]{1, 0});
+        service.getOrEmbed("cached");
+        when(embeddingClient.embed(List.of("new query"))).thenReturn(List.<float[]>of(new float[]{0, 1}));
+
+        // 已缓存的查询不再调用 API，归一化后重复的未命中查询只生成一次
+        List<float[]> vectors = service.getOrEmbedAll(List.of("cached", "new query", "NEW  query"));
+
+        verify(embeddingClient, times(1)).embed(anyList());
+        verify(embeddingClient).embed(List.of("new query"));
+        assertArrayEquals(new float[]{1, 0}, vectors.get(0));
+        assertArrayEquals(new float[]{0, 1}, vectors.get(1));
+        assertArrayEquals(new float[]{0, 1}, vectors.get(2));
+        assertEquals(1.0, l1Count("hit"));
+    }
+
+    private double l1Count(String result) {
+        return meterRegistry.get("embedding.query.cache.requests")
+                .tag("level", "l1").tag("result", result).counter().count();
+    }
+}
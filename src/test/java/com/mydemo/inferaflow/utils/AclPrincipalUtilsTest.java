@@ -0,0 +1,29 @@
+package com.mydemo.inferaflow.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AclPrincipalUtils 的单元测试类
+ */
+class AclPrincipalUtilsTest {
+
+    @Test
+    void testDocumentPrincipals() {
+        assertEquals(List.of("u:12", "org:dept-a", "public"),
+                AclPrincipalUtils.documentPrincipals("12", "dept-a", true));
+        assertEquals(List.of("u:12"), AclPrincipalUtils.documentPrincipals("12", null, false));
+    }
+
+    @Test
+    void testUserPrincipals_MatchDocumentPrincipals() {
+        List<String> principals = AclPrincipalUtils.userPrincipals("12", List.of("dept-a", "dept-a", "root"));
+
+        assertEquals(List.of("u:12", "public", "org:dept-a", "org:root"), principals);
+        // 用户主体与同组织他人上传的文档主体存在交集
+        assertTrue(AclPrincipalUtils.documentPrincipals("34", "root", false).stream().anyMatch(principals::contains));
+    }
+}
@@ -0,0 +1,64 @@
+package com.mydemo.inferaflow.utils;
+
+import com.mydemo.inferaflow.entity.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DiversityUtils 的单元测试类
+ */
+class DiversityUtilsTest {
+
+    @Test
+    void testCollapse_KeepsBestHitPerKey() {
+        List<SearchResult> results = List.of(result("a", 1, 0.9), result("a", 2, 0.8), result("b", 1, 0.7));
+
+        List<SearchResult> collapsed = DiversityUtils.collapse(results, SearchResult::getFileMd5);
+
+        assertEquals(2, collapsed.size());
+        assertEquals(1, collapsed.get(0).getChunkId());
+        assertEquals("b", collapsed.get(1).getFileMd5());
+    }
+
+    @Test
+    void testMmr_SkipsNearDuplicateVectors() {
+        List<SearchResult> candidates = List.of(result("a", 1, 0.95), result("a", 2, 0.94), result("b", 1, 0.80));
+        List<float[]> vectors = List.of(new float[]{1, 0}, new float[]{0.99f, 0.01f}, new float[]{0, 1});
+
+        List<SearchResult> reranked = DiversityUtils.maximalMarginalRelevance(candidates, vectors, 0.5, 2);
+
+        // 第二个候选与第一个几乎相同，应让位于相关性较低但内容不同的候选
+        assertEquals(2, reranked.size());
+        assertEquals("a", reranked.get(0).getFileMd5());
+        assertEquals("b", reranked.get(1).getFileMd5());
+        assertEquals(0.80, reranked.get(1).getScore(), 1e-9);
+    }
+
+    @Test
+    void testMmr_LambdaOneKeepsRelevanceOrder() {
+        List<SearchResult> candidates = List.of(result("a", 1, 0.95), result("a", 2, 0.94), result("b", 1, 0.80));
+        List<float[]> vectors = List.of(new float[]{1, 0}, new float[]{1, 0}, new float[]{0, 1});
+
+        List<SearchResult> reranked = DiversityUtils.maximalMarginalRelevance(candidates, vectors, 1.0, 3);
+
+        assertEquals(List.of(1, 2, 1), reranked.stream().map(SearchResult::getChunkId).toList());
+    }
+
+    @Test
+    void testMmr_FallsBackToSameFileWithoutVectors() {
+        List<SearchResult> candidates = List.of(result("a", 1, 0.95), result("a", 2, 0.94), result("b", 1, 0.80));
+
+        List<SearchResult> reranked = DiversityUtils.maximalMarginalRelevance(
+                candidates, Arrays.asList(null, null, null), 0.5, 2);
+
+        assertEquals("b", reranked.get(1).getFileMd5());
+    }
+
+    private SearchResult result(String fileMd5, int chunkId, double score) {
+        return new SearchResult(fileMd5, chunkId, "content-" + fileMd5 + "-" + chunkId, score);
+    }
+}
@@ -0,0 +1,56 @@
+package com.mydemo.inferaflow.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EmbeddingResponseParser 的单元测试类
+ */
+class EmbeddingResponseParserTest {
+
+    private final JsonFactory factory = new JsonFactory();
+
+    @Test
+    void testParse_FloatArrays() throws Exception {
+        String body = "{\"object\":\"list\",\"data\":[" +
+                "{\"object\":\"embedding\",\"embedding\":[0.5,-1,2.25],\"index\":0}," +
+                "{\"embedding\":[1,2,3],\"index\":1,\"extra\":{\"nested\":[1,2]}}]," +
+                "\"model\":\"text-embedding-v4\",\"usage\":{\"total_tokens\":8}}";
+
+        List<float[]> vectors = parse(body, 3);
+
+        assertEquals(2, vectors.size());
+        assertArrayEquals(new float[]{0.5f, -1f, 2.25f}, vectors.get(0));
+        assertArrayEquals(new float[]{1f, 2f, 3f}, vectors.get(1));
+    }
+
+    @Test
+    void testParse_DimensionDiffersFromHint() throws Exception {
+        List<float[]> vectors = parse("{\"data\":[{\"embedding\":[1,2,3,4,5]},{\"embedding\":[1]}]}", 2);
+
+        assertEquals(5, vectors.get(0).length);
+        assertEquals(1, vectors.get(1).length);
+    }
+
+    @Test
+    void testParse_Base64Embedding() throws Exception {
+        float[] expected = {0.125f, -3.5f, 42f};
+        String body = "{\"data\":[{\"embedding\":\"" + VectorCodecUtils.toBase64(expected) + "\",\"index\":0}]}";
+
+        assertArrayEquals(expected, parse(body, 3).get(0));
+    }
+
+    @Test
+    void testParse_MissingDataFails() {
+        assertThrows(RuntimeException.class, () -> parse("{\"error\":{\"message\":\"bad\"}}", 3));
+    }
+
+    private List<float[]> parse(String body, int dimension) throws Exception {
+        return EmbeddingResponseParser.parse(factory, body.getBytes(StandardCharsets.UTF_8), dimension);
+    }
+}
@@ -0,0 +1,67 @@
+package com.mydemo.inferaflow.utils;
+
+import com.mydemo.inferaflow.entity.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RankFusionUtils 的单元测试类
+ */
+class RankFusionUtilsTest {
+
+    @Test
+    void testReciprocalRankFusion_PrefersDocumentsInBothLists() {
+        List<SearchResult> lexical = List.of(result("a", 1, 12.0), result("b", 1, 8.0), result("c", 1, 3.0));
+        List<SearchResult> vector = List.of(result("b", 1, 0.95), result("d", 1, 0.90), result("a", 1, 0.70));
+
+        List<SearchResult> fused = RankFusionUtils.reciprocalRankFusion(lexical, vector, 1.0, 1.0, 60, 3);
+
+        assertEquals(3, fused.size());
+        // a、b 同时出现在两路结果中，应排在前两位
+        assertTrue(List.of("a", "b").contains(fused.get(0).getFileMd5()));
+        assertTrue(List.of("a", "b").contains(fused.get(1).getFileMd5()));
+        assertTrue(fused.get(0).getScore() >= fused.get(1).getScore());
+    }
+
+    @Test
+    void testReciprocalRankFusion_KeepsSemanticOnlyHits() {
+        List<SearchResult> lexical = List.of();
+        List<SearchResult> vector = List.of(result("x", 2, 0.8));
+
+        List<SearchResult> fused = RankFusionUtils.reciprocalRankFusion(lexical, vector, 1.0, 1.0, 60, 5);
+
+        assertEquals(1, fused.size());
+        assertEquals("x", fused.get(0).getFileMd5());
+        assertEquals(1.0 / 61, fused.get(0).getScore(), 1e-9);
+    }
+
+    @Test
+    void testWeightedScoreFusion_NormalizesEachList() {
+        List<SearchResult> lexical = List.of(result("a", 1, 20.0), result("b", 1, 10.0));
+        List<SearchResult> vector = List.of(result("b", 1, 0.9), result("a", 1, 0.5));
+
+        List<SearchResult> fused = RankFusionUtils.weightedScoreFusion(lexical, vector, 0.3, 0.7, 2);
+
+        // 归一化后 a = 0.3 * 1 + 0.7 * 0，b = 0.3 * 0 + 0.7 * 1
+        assertEquals("b", fused.get(0).getFileMd5());
+        assertEquals(0.7, fused.get(0).getScore(), 1e-9);
+        assertEquals(0.3, fused.get(1).getScore(), 1e-9);
+    }
+
+    @Test
+    void testFusion_HandlesMissingLeg() {
+        List<SearchResult> lexical = List.of(result("a", 1, 5.0));
+
+        List<SearchResult> fused = RankFusionUtils.weightedScoreFusion(lexical, null, 1.0, 1.0, 10);
+
+        assertEquals(1, fused.size());
+        assertEquals(1.0, fused.get(0).getScore(), 1e-9);
+    }
+
+    private SearchResult result(String fileMd5, int chunkId, double score) {
+        return new SearchResult(fileMd5, chunkId, "content-" + fileMd5, score);
+    }
+}
@@ -0,0 +1,49 @@
+package com.mydemo.inferaflow.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * VectorCodecUtils 的单元测试类
+ */
+class VectorCodecUtilsTest {
+
+    @Test
+    void testHalfBytes_RoundTrip() {
+        float[] vector = {0f, 1f, -2.5f, 0.1f, 65504f};
+
+        byte[] bytes = VectorCodecUtils.toHalfBytes(vector);
+        float[] decoded = VectorCodecUtils.fromHalfBytes(bytes);
+
+        assertEquals(vector.length * 2, bytes.length);
+        assertEquals(1f, decoded[1]);
+        assertEquals(-2.5f, decoded[2]);
+        assertEquals(0.1f, decoded[3], 1e-4f);
+        assertEquals(65504f, decoded[4]);
+    }
+
+    @Test
+    void testHalfBytes_RelativeErrorWithinHalfPrecisionBound() {
+        // 规格化范围内的分量，舍入误差不超过 2^-11
+        float[] vector = {0.1f, -0.3333333f, 0.7071068f, 0.0123457f, 1e-3f, -0.999f, 7e-5f};
+        float bound = (float) Math.pow(2, -11);
+
+        float[] decoded = VectorCodecUtils.fromHalfBytes(VectorCodecUtils.toHalfBytes(vector));
+
+        for (int i = 0; i < vector.length; i++) {
+            assertTrue(Math.abs(decoded[i] - vector[i]) <= Math.abs(vector[i]) * bound,
+                    "分量 " + vector[i] + " 的相对误差超出 2^-11");
+        }
+    }
+
+    @Test
+    void testHalfBytes_RoundsToNearestEvenAndOverflowsToInfinity() {
+        // 1 + 2^-11 恰好位于 1 与 1 + 2^-10 中间，舍入到尾数为偶数的 1
+        float[] decoded = VectorCodecUtils.fromHalfBytes(
+                VectorCodecUtils.toHalfBytes(new float[]{1.00048828125f, 70000f}));
+
+        assertEquals(1f, decoded[0]);
+        assertEquals(Float.POSITIVE_INFINITY, decoded[1]);
+    }
+}
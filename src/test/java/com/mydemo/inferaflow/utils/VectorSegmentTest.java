@@ -0,0 +1,85 @@
+package com.mydemo.inferaflow.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * VectorSegment 与 FloatVectorMath 的单元测试类
+ */
+class VectorSegmentTest {
+
+    @Test
+    void testDotProduct_MatchesScalarIncludingTail() {
+        Random random = new Random(42);
+        // 维度不是 SIMD 宽度的整数倍，覆盖尾部处理
+        for (int dimension : new int[]{1, 7, 16, 33, 2048, 2051}) {
+            float[] a = randomVector(random, dimension);
+            float[] b = randomVector(random, dimension);
+            assertEquals(FloatVectorMath.scalarDot(a, b, 0, dimension), FloatVectorMath.dotProduct(a, b), 1e-3,
+                    "维度 " + dimension);
+        }
+    }
+
+    @Test
+    void testScores_EqualsCosineSimilarity() {
+        Random random = new Random(7);
+        List<float[]> rows = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            rows.add(randomVector(random, 130));
+        }
+        VectorSegment segment = VectorSegment.of(rows);
+        float[] query = rows.get(99).clone();
+        FloatVectorMath.normalize(query);
+
+        float[] scores = new float[segment.size()];
+        segment.scores(query, scores);
+
+        assertEquals(150, segment.size());
+        assertEquals(150L * 130 * Float.BYTES, segment.bytes());
+        assertEquals(1.0f, scores[99], 1e-5);
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(cosine(rows.get(99), rows.get(i)), scores[i], 1e-4);
+        }
+    }
+
+    @Test
+    void testTruncateAndNormalize_KeepsPrefixDirection() {
+        float[] vector = {3f, 4f, 12f, 1f};
+
+        float[] prefix = FloatVectorMath.truncateAndNormalize(vector, 2);
+
+        assertArrayEquals(new float[]{0.6f, 0.8f}, prefix, 1e-6f);
+        // 原向量不被修改
+        assertEquals(12f, vector[2]);
+        assertThrows(IllegalArgumentException.class, () -> FloatVectorMath.truncateAndNormalize(vector, 5));
+    }
+
+    @Test
+    void testOf_RejectsMixedDimensions() {
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorSegment.of(List.of(new float[4], new float[5])));
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}